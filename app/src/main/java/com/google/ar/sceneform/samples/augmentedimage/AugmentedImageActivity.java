@@ -21,6 +21,7 @@ import android.support.v7.app.AppCompatActivity;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
+import android.widget.TextView;
 
 import com.google.ar.core.AugmentedImage;
 import com.google.ar.core.Frame;
@@ -34,18 +35,26 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import wayfinding.FrameMetrics;
 import wayfinding.MapPlan;
 import wayfinding.VideoNode;
+import wayfinding.core.Marker;
+import wayfinding.core.MarkerRegistry;
 
 /**
  * This application demonstrates using augmented images to place anchor nodes. app to include image
  * tracking functionality.
  */
 public class AugmentedImageActivity extends AppCompatActivity {
-    private static final String VIDEO_CODE_FILE_NAME = "frame.png";
+    // Show the per-frame metrics (see FrameMetrics) over the camera view, refreshed every
+    // METRICS_REFRESH_FRAMES frames. They are dumped to a file in onPause() either way.
+    private static final boolean SHOW_METRICS = false;
+    private static final int METRICS_REFRESH_FRAMES = 30;
 
     private ArFragment arFragment;
     private ImageView fitToScanView;
+    private TextView metricsView;
+    private int framesSinceMetrics = 0;
     private AnchorNode foundNode = null;
 
     private MapPlan mapPlan;
@@ -62,6 +71,8 @@ public class AugmentedImageActivity extends AppCompatActivity {
 
         arFragment = (ArFragment) getSupportFragmentManager().findFragmentById(R.id.ux_fragment);
         fitToScanView = findViewById(R.id.image_view_fit_to_scan);
+        metricsView = findViewById(R.id.metrics_overlay);
+        metricsView.setVisibility(SHOW_METRICS ? View.VISIBLE : View.GONE);
         arFragment.getArSceneView().getScene().addOnUpdateListener(this::onUpdateFrame);
 
         this.video = new VideoNode(this, R.raw.dv_video);
@@ -76,12 +87,30 @@ public class AugmentedImageActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        FrameMetrics.getInstance().dump(this);
+    }
+
     /**
      * Registered with the Sceneform Scene object, this method is called at the start of each frame.
      *
      * @param frameTime - time since last frame.
      */
     private void onUpdateFrame(FrameTime frameTime) {
+        long start = System.nanoTime();
+        this.updateFrame(frameTime);
+        FrameMetrics metrics = FrameMetrics.getInstance();
+        metrics.recordFrame(System.nanoTime() - start, augmentedImageMap.size(), mapPlan.getUpdateCounters());
+        if (SHOW_METRICS && ++framesSinceMetrics >= METRICS_REFRESH_FRAMES) {
+            framesSinceMetrics = 0;
+            metricsView.setText(metrics.summary());
+        }
+    }
+
+    // the frame callback itself, timed by onUpdateFrame()
+    private void updateFrame(FrameTime frameTime) {
         Frame frame = arFragment.getArSceneView().getArFrame();
 
         // If there is no frame or ARCore is not tracking yet, just return.
@@ -92,6 +121,9 @@ public class AugmentedImageActivity extends AppCompatActivity {
         Collection<AugmentedImage> updatedAugmentedImages =
                 frame.getUpdatedTrackables(AugmentedImage.class);
 
+        // the map is updated once after the loop however many of its markers are tracked, and
+        // then only if the camera has moved enough (see MapPlan.update())
+        boolean isMapTracked = false;
 
         for (AugmentedImage augmentedImage : updatedAugmentedImages) {
             TrackingState trackingState = augmentedImage.getTrackingState();
@@ -108,10 +140,15 @@ public class AugmentedImageActivity extends AppCompatActivity {
                     fitToScanView.setVisibility(View.GONE);
                     // Create a new anchor for newly found images.
 
+                    // what the image is for, looked up by its index (see MapPlan.getMarkers())
+                    int slot = MapPlan.getMarkers().resolve(augmentedImage.getIndex(), augmentedImage.getName());
+                    if (slot == MarkerRegistry.NO_MARKER) {
+                        break;
+                    }
+                    Marker marker = MapPlan.getMarkers().get(slot);
+
                     if (augmentedImageMap.containsKey(augmentedImage)) {
-                        if (!VIDEO_CODE_FILE_NAME.equals(augmentedImage.getName())) {
-                            this.mapPlan.update(this);
-                        }
+                        isMapTracked |= marker.isAnchor();
                         break;
                     }
 
@@ -124,15 +161,14 @@ public class AugmentedImageActivity extends AppCompatActivity {
                     scene.addChild(foundNode);
 
                     // render either video or map.
-                    // ok, this filename based detection is crappy.
-                    if (VIDEO_CODE_FILE_NAME.equals(augmentedImage.getName())) {
+                    if (!marker.isAnchor()) {
                         // it's video.
                         video.render(foundNode);
                         break;
                     }
 
-                    // it's a map!
-                    this.mapPlan.showMap(scene, foundNode);
+                    // it's a map marker! Scanning another one moves the map to it.
+                    this.mapPlan.showMap(scene, foundNode, slot);
 //                    this.mapPlan.update(this);
                     break;
                 case STOPPED:
@@ -140,6 +176,9 @@ public class AugmentedImageActivity extends AppCompatActivity {
                     break;
             }
         }
+        if (isMapTracked) {
+            this.mapPlan.update(this);
+        }
     }
 
     public void chooseTarget(View v){ this.mapPlan.chooseTarget(((Button) v).getText().toString()); }
@@ -18,11 +18,10 @@ package com.google.ar.sceneform.samples.augmentedimage;
 
 import android.app.ActivityManager;
 import android.content.Context;
-import android.content.res.AssetManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -33,8 +32,12 @@ import com.google.ar.core.Config;
 import com.google.ar.core.Session;
 import com.google.ar.sceneform.samples.common.helpers.SnackbarHelper;
 import com.google.ar.sceneform.ux.ArFragment;
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import wayfinding.ImageDatabases;
+import wayfinding.StartupTrace;
+import wayfinding.core.Tracer;
 
 /**
  * Extend the ArFragment to customize the ARCore session configuration to include Augmented Images.
@@ -42,22 +45,30 @@ import java.io.InputStream;
 public class AugmentedImageFragment extends ArFragment {
   private static final String TAG = "AugmentedImageFragment";
 
-  // This is the name of the image in the sample database.  A copy of the image is in the assets
-  // directory.  Opening this image on your computer is a good quick way to test the augmented image
-  // matching.
-  private static final String DEFAULT_IMAGE_NAME = "default.jpg";
-
   // This is a pre-created database containing the sample image.
   private static final String SAMPLE_IMAGE_DATABASE = "myimages.imgdb";
 
+  // The images to build a database from and how wide each one is printed, see MarkerManifest.
+  // Give every image its width once it's printed: ARCore detects images of a known size sooner.
+  // It lists the sample image, default.jpg, which is in the assets directory, at the 20cm the
+  // README asks for it to be printed at. Opening it on your computer is a good quick way to test
+  // the augmented image matching, though then it's only found at the right size if shown 20cm wide.
+  private static final String MARKER_MANIFEST = "markers.json";
+
   // Augmented image configuration and rendering.
-  // Load a single image (true) or a pre-generated image database (false).
-  private static final boolean USE_SINGLE_IMAGE = false;
+  // Build the database from the images in MARKER_MANIFEST (true) or load the pre-generated
+  // image database (false). A built database is cached, so only the first run pays for it.
+  // This stays off until the video marker's image (frame.png, see MapPlan) is in the assets and
+  // the manifest: the pre-generated database is the only place it exists, so a database built
+  // from the manifest wouldn't play the video.
+  private static final boolean USE_IMAGE_MANIFEST = false;
 
   // Do a runtime check for the OpenGL level available at runtime to avoid Sceneform crashing the
   // application.
   private static final double MIN_OPENGL_VERSION = 3.0;
 
+  private final Executor mainThread = new Handler(Looper.getMainLooper())::post;
+
   @Override
   public void onAttach(Context context) {
     super.onAttach(context);
@@ -96,61 +107,49 @@ public class AugmentedImageFragment extends ArFragment {
   @Override
   protected Config getSessionConfiguration(Session session) {
     Config config = super.getSessionConfiguration(session);
-    if (!setupAugmentedImageDatabase(config, session)) {
-      SnackbarHelper.getInstance()
-          .showError(getActivity(), "Could not setup augmented image database");
-    }
-    return config;
-  }
-
-  private boolean setupAugmentedImageDatabase(Config config, Session session) {
-    AugmentedImageDatabase augmentedImageDatabase;
-
-    AssetManager assetManager = getContext() != null ? getContext().getAssets() : null;
-    if (assetManager == null) {
+    Context context = getContext();
+    if (context == null) {
       Log.e(TAG, "Context is null, cannot intitialize image database.");
-      return false;
+      return config;
     }
+    Context appContext = context.getApplicationContext();
 
     // There are two ways to configure an AugmentedImageDatabase:
     // 1. Add Bitmap to DB directly
     // 2. Load a pre-built AugmentedImageDatabase
-    // Option 2) has
-    // * shorter setup time
-    // * doesn't require images to be packaged in apk.
-    if (USE_SINGLE_IMAGE) {
-      Bitmap augmentedImageBitmap = loadAugmentedImageBitmap(assetManager, DEFAULT_IMAGE_NAME);
-      if (augmentedImageBitmap == null) {
-        return false;
-      }
-
-      augmentedImageDatabase = new AugmentedImageDatabase(session);
-      augmentedImageDatabase.addImage(DEFAULT_IMAGE_NAME, augmentedImageBitmap);
-      // If the physical size of the image is known, you can instead use:
-      //     augmentedImageDatabase.addImage("image_name", augmentedImageBitmap, widthInMeters);
-      // This will improve the initial detection speed. ARCore will still actively estimate the
-      // physical size of the image as it is viewed from multiple viewpoints.
-    } else {
-      // This is an alternative way to initialize an AugmentedImageDatabase instance,
-      // load a pre-existing augmented image database.
-      try (InputStream is = getContext().getAssets().open(SAMPLE_IMAGE_DATABASE)) {
-        augmentedImageDatabase = AugmentedImageDatabase.deserialize(session, is);
-      } catch (IOException e) {
-        Log.e(TAG, "IO exception loading augmented image database.", e);
-        return false;
-      }
-    }
-
-    config.setAugmentedImageDatabase(augmentedImageDatabase);
-    return true;
-  }
-
-  private Bitmap loadAugmentedImageBitmap(AssetManager assetManager, String filename) {
-    try (InputStream is = assetManager.open(filename)) {
-      return BitmapFactory.decodeStream(is);
-    } catch (IOException e) {
-      Log.e(TAG, "IO exception loading augmented image bitmap.", e);
-    }
-    return null;
+    // Either way the database is read or built off the main thread (and kept for the next session,
+    // see ImageDatabases), so the camera starts straight away and the session is configured again
+    // with the database once it's ready.
+    Tracer.Span span = StartupTrace.getInstance().begin("imageDatabase");
+    CompletableFuture<AugmentedImageDatabase> database =
+        USE_IMAGE_MANIFEST
+            ? ImageDatabases.getInstance().fromManifest(appContext, session, MARKER_MANIFEST)
+            : ImageDatabases.getInstance().fromAsset(appContext, session, SAMPLE_IMAGE_DATABASE);
+    // the trace is exported from the pool rather than the main thread, which is busy starting
+    // the session
+    database.whenCompleteAsync(
+        (augmentedImageDatabase, e) -> {
+          span.end();
+          StartupTrace.getInstance().export(appContext);
+        });
+    database.whenCompleteAsync(
+        (augmentedImageDatabase, e) -> {
+          if (e != null) {
+            Log.e(TAG, "Exception loading augmented image database.", e);
+          }
+          // the fragment may have been detached, or moved on to another session, in the meantime
+          if (!isAdded() || getArSceneView().getSession() != session) {
+            return;
+          }
+          if (e != null) {
+            SnackbarHelper.getInstance()
+                .showError(getActivity(), "Could not setup augmented image database");
+            return;
+          }
+          config.setAugmentedImageDatabase(augmentedImageDatabase);
+          session.configure(config);
+        },
+        mainThread);
+    return config;
   }
 }
@@ -1,47 +1,50 @@
 package wayfinding;
 
-import android.content.Context;
-import android.util.Log;
 import android.widget.LinearLayout;
 
 import com.google.ar.sceneform.Node;
-import com.google.ar.sceneform.Scene;
+import com.google.ar.sceneform.math.Quaternion;
 import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.rendering.Color;
 import com.google.ar.sceneform.rendering.Material;
-import com.google.ar.sceneform.rendering.MaterialFactory;
 import com.google.ar.sceneform.rendering.Renderable;
 import com.google.ar.sceneform.rendering.ViewRenderable;
 
-import java.util.Locale;
+import wayfinding.core.BoundedRegion;
+import wayfinding.core.UpdateCounters;
+import wayfinding.core.Visibility;
 
 class BoundedNode extends Node {
     private static final String TAG = "wayfinder.BoundedNode";
 
-    // offsets for the region within which this node is visible
-    private double forward;
-    private double backward;
-    private double left;
-    private double right;
+    // shared by every node, see MapPlan.getUpdateCounters()
+    static final UpdateCounters COUNTERS = new UpdateCounters();
+
+    // whether an update since the last takeUnsettled() left a node waiting on its material
+    private static boolean isUnsettled = false;
+
+    // where this node sits in its parent's space and the region within which it is visible,
+    // cached so that the per frame update can work out the node's opacity with primitive maths
+    private final BoundedRegion region;
     private Renderable model;
-    private boolean isVisible = false; // whether or not the node will be visible at all
 
-    private Material[] fadeTextures;
+    private Color color; // the colour we fade model in and out with, see FadeMaterials
+
+    // what we last handed to Sceneform, so we only touch the renderable and material on changes
+    private Renderable rendered = null;
+    private int appliedBucket = Visibility.HIDDEN;
 
-    BoundedNode(double forward, double backward, double left, double right, Renderable model, Material[] fadeTextures) {
+    BoundedNode(BoundedRegion region, Renderable model, Color color) {
         super();
-        this.forward = forward;
-        this.backward = backward;
-        this.left = left;
-        this.right = right;
+        this.region = region;
 
         this.model = model;
-        this.fadeTextures = fadeTextures;
+        this.color = color;
     }
 
 
-    BoundedNode(Material[] fadeTextures) {
-        this(5, 5, 5, 5, null, fadeTextures);
+    BoundedNode(Color color) {
+        this(BoundedRegion.navPoint(), null, color);
     }
 
     Renderable getModel() {
@@ -50,78 +53,79 @@ class BoundedNode extends Node {
 
     void setModel(Renderable model) {
         this.model = model;
+        this.appliedBucket = Visibility.HIDDEN;
+    }
+
+    // Whether any node is waiting on a material and needs updating again, even if the camera
+    // doesn't move, and clears it. Only called from the frame loop, like apply().
+    static boolean takeUnsettled() {
+        boolean was = isUnsettled;
+        isUnsettled = false;
+        return was;
     }
 
     void setVisible(boolean isVisible) {
-        this.isVisible = isVisible;
+        this.region.setVisible(isVisible);
     }
 
+    // sets the local position, remembering it for the visibility maths
+    void setPlacement(float x, float y, float z) {
+        this.region.setPlacement(x, z);
+        this.setLocalPosition(new Vector3(x, y, z));
+    }
+
+    // sets the local rotation about the y axis, remembering it for the visibility maths
+    void setYaw(float degrees) {
+        this.region.setYaw(degrees);
+        this.setLocalRotation(Quaternion.axisAngle(new Vector3(0f, 1f, 0), degrees));
+    }
+
+    // where the node is and where it's visible, which MapPlan's VisibilityWorker works out the
+    // node's opacity bucket from
+    BoundedRegion getRegion() { return this.region; }
+
     void changeColor(Color color) {
-        Material[] newTextures = new Material[this.fadeTextures.length];
-        for (int j = 0; j < this.fadeTextures.length; j++) {
-            newTextures[j] = this.fadeTextures[j].makeCopy();
-            newTextures[j].setFloat3(MaterialFactory.MATERIAL_COLOR, new Color(color.r, color.g, color.b, (float) j * 0.01f));
-        }
-        this.fadeTextures = newTextures;
+        this.color = color;
+        this.appliedBucket = Visibility.HIDDEN;
     }
 
-    void update(Context context, Scene scene) {
-        if (!this.isVisible) {
-            this.setRenderable(null);
+    // Shows the node at the opacity bucket the worker worked out for it, or hides it for
+    // Visibility.HIDDEN. This runs every frame for every active node, so it must not allocate: the
+    // renderable and material are only touched when the visibility or opacity bucket changes.
+    void apply(int bucket) {
+        COUNTERS.countEvaluated();
+        if (bucket == Visibility.HIDDEN) {
+            this.show(null);
             return;
         }
-        try {
-            Vector3 personLoc = worldToLocalPoint(scene.getCamera().getWorldPosition());
-            if ((personLoc.x <= this.left && personLoc.x >= -this.right) &&
-                    (personLoc.z <= this.forward && personLoc.z >= -this.backward)) {
-
-                // personLoc is (x1,z1) gradient is (z1/x1) as we can use origin as the other point
-                // formula for intersection of personLoc vector from origin and corners of the rectangle is
-                // (z1/x1)x = z
-
-                double horizontal = this.right;
-                if (personLoc.x > 0) {
-                    horizontal = this.left;
-                } // note the x axis is flipped here
-                double vertical = this.forward;
-                if (personLoc.z < 0) {
-                    vertical = this.backward;
-                }
-
-                Double boundaryHorizontal = Math.abs(personLoc.x / horizontal);
-                Double boundaryVertical = Math.abs(personLoc.z / vertical);
-
-                // opacity will fade the object in for the outside half of the rectangle.
-                // It is set to full for the inside half of the rectangle
-                // (which is actually only 1 quarter of the area, so maybe I might need to rejig the numbers a little)
-                float opacity = 2 * (1 - (float) Math.max(boundaryHorizontal, boundaryVertical));
-                this.setOpacity(context, opacity);
-
-                this.setRenderable(this.model);
-
-            } else {
-                this.setRenderable(null);
-            }
-        } catch (NullPointerException e) {
-            Log.e(TAG, String.format(Locale.ENGLISH, "Could not get world position of camera in scene, %s", e));
+        this.setOpacity(bucket);
+        this.show(this.model);
+    }
 
+    private void show(Renderable renderable) {
+        if (this.rendered == renderable) {
+            return;
         }
+        this.setRenderable(renderable);
+        this.rendered = renderable;
+        COUNTERS.countRenderableSwap();
     }
 
-    // opacity is a float from 0 to 1 -- numbers outside of that will be ignored
-    private void setOpacity(Context context, float opacity) {
-        if (opacity < 0) return;
-
-        if (opacity > 1) opacity = 1;
-        if (this.model instanceof ViewRenderable) {
-            ((LinearLayout) ((ViewRenderable) this.model).getView()).getChildAt(0).setAlpha(opacity);
+    private void setOpacity(int bucket) {
+        if (bucket == this.appliedBucket || this.model == null) {
             return;
         }
-
-        if (opacity < 1) {
-            this.model.setMaterial(fadeTextures[(int) (opacity * 100)]);
+        if (this.model instanceof ViewRenderable) {
+            ((LinearLayout) ((ViewRenderable) this.model).getView()).getChildAt(0).setAlpha(Visibility.opacityOf(bucket));
         } else {
-            this.model.setMaterial(fadeTextures[100]);
+            Material material = FadeMaterials.getInstance().get(this.color, bucket);
+            if (material == null) { // still loading, try again next frame
+                isUnsettled = true;
+                return;
+            }
+            this.model.setMaterial(material);
         }
+        this.appliedBucket = bucket;
+        COUNTERS.countMaterialSwap();
     }
 }
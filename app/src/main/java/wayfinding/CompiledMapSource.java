@@ -0,0 +1,60 @@
+package wayfinding;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import wayfinding.core.ContractionHierarchy;
+import wayfinding.core.Graph;
+import wayfinding.core.MapFile;
+import wayfinding.core.ShardSource;
+
+/**
+ * Loads map shards from the compiled map assets (see compileMap in app/build.gradle), where the
+ * shard with id "x" is the asset x.wfmap.
+ */
+class CompiledMapSource implements ShardSource {
+    static final String EXTENSION = ".wfmap";
+
+    private final Context context;
+
+    // the shard load() last mapped, so loadHierarchy() can read the same mapping
+    private String mappedId = null;
+    private ByteBuffer mapped = null;
+
+    CompiledMapSource(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public Graph load(String shardId) throws IOException {
+        ByteBuffer buffer = this.map(shardId);
+        Graph graph = MapFile.read(buffer);
+        this.mappedId = shardId;
+        this.mapped = buffer;
+        return graph;
+    }
+
+    // The contraction hierarchy compiled into the shard that graph was loaded from, or null. Call
+    // it straight after load() so it reads the mapping load() made rather than mapping it again.
+    ContractionHierarchy loadHierarchy(String shardId, Graph graph) throws IOException {
+        ByteBuffer buffer = shardId.equals(this.mappedId) ? this.mapped : this.map(shardId);
+        this.mappedId = null;
+        this.mapped = null;
+        return MapFile.readHierarchy(buffer, graph);
+    }
+
+    // The compiled map is stored uncompressed in the apk, so we can memory map it straight out of
+    // the apk file rather than reading it into the heap first.
+    private ByteBuffer map(String shardId) throws IOException {
+        try (AssetFileDescriptor descriptor = context.getAssets().openFd(shardId + EXTENSION);
+             FileInputStream stream = descriptor.createInputStream();
+             FileChannel channel = stream.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(), descriptor.getLength());
+        }
+    }
+}
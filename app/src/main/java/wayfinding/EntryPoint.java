@@ -1,45 +1,60 @@
 package wayfinding;
 
-import android.content.Context;
 import android.support.annotation.NonNull;
 
-import com.google.ar.sceneform.Scene;
-import com.google.ar.sceneform.math.Vector3;
-import com.google.ar.sceneform.rendering.Material;
+import com.google.ar.sceneform.rendering.Color;
 import com.google.ar.sceneform.rendering.ViewRenderable;
 
 import java.util.Locale;
 
+import wayfinding.core.BoundedRegion;
+import wayfinding.core.Graph;
+
 class EntryPoint extends NavPoint {
     private static final String TAG = "wayfinder.EntryPoint";
     private static final String STRING_FMT = "%s: roomName is %s, angleIn is %f, NavPoint is %s";
 
     private BoundedNode roomCardNode;
+    private ViewRenderable card; // only while we're near the camera, see RoomCards
+    private boolean wantsCard = false;
     private String roomName;
     private float angleIn;
 
-    EntryPoint(JSONPoint jsonPoint, Material[] fadeTextures){
-        super(jsonPoint, fadeTextures);
-        this.roomName = jsonPoint.roomName;
-        this.angleIn = jsonPoint.angleIn;
+    EntryPoint(Graph graph, int index, Color color){
+        super(graph, index, color);
+        this.roomName = graph.getRoomName(index);
+        this.angleIn = graph.getAngleIn(index);
 
-        this.roomCardNode = new BoundedNode(3,0,2,2, null, null);
+        this.roomCardNode = new BoundedNode(BoundedRegion.roomCard(), null, null);
         this.roomCardNode.setVisible(true);
         this.addChild(this.roomCardNode);
-        this.roomCardNode.setLocalPosition(new Vector3(0, 1,0));
+        this.roomCardNode.setPlacement(0, 1, 0);
     }
 
     @Override
-    public void update(Context context, Scene scene){
-        super.update(context, scene);
-        this.roomCardNode.update(context, scene);
+    void apply(int bucket, int cardBucket){
+        super.apply(bucket, cardBucket);
+        this.roomCardNode.apply(cardBucket);
     }
 
+    // the card's region, placed in our space, see VisibilityWorker
+    BoundedRegion getCardRegion(){ return this.roomCardNode.getRegion(); }
+
+    // null takes the card away
     void setCard(ViewRenderable card){
+        this.card = card;
         this.roomCardNode.setModel(card);
-        this.roomCardNode.setVisible(true);
+        this.roomCardNode.setVisible(card != null);
     }
 
+    ViewRenderable getCard(){ return this.card; }
+
+    // whether a card that's still being built should still come to us when it's ready
+    boolean wantsCard(){ return this.wantsCard; }
+    void setWantsCard(boolean wantsCard){ this.wantsCard = wantsCard; }
+
+    String getRoomName(){ return this.roomName; }
+
     void pointToRoom() {
         this.setRotation(this.angleIn);
     }
@@ -58,15 +73,3 @@ class EntryPoint extends NavPoint {
     }
 
 }
-
-// JSONPoint is just a helper class to help parse JSON using the gson library
-// We cannot parse directly into EntryPoint and NavPoint as they both extend the Node class which
-// has a method set as a variable or something -- gson can't handle that case on its own
-class JSONPoint {
-    String roomName;
-    float angleIn;
-    int id;
-    float x,z;
-
-    JSONPoint(){} // empty constructor needed for gson
-}
\ No newline at end of file
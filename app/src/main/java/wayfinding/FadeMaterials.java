@@ -0,0 +1,103 @@
+package wayfinding;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.ar.sceneform.rendering.Color;
+import com.google.ar.sceneform.rendering.Material;
+import com.google.ar.sceneform.rendering.MaterialFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import wayfinding.core.Visibility;
+
+/**
+ * A process wide cache of the materials we use to fade arrows in and out, keyed by colour and
+ * opacity bucket (see Visibility). Materials are only made the first time a node asks for a
+ * bucket, so nothing is built at startup and a highlighted destination doesn't need its own copy
+ * of every bucket. The cache holds at most MAX_MATERIALS, evicting the least recently used.
+ */
+final class FadeMaterials {
+    private static final String TAG = "wayfinder.FadeMaterials";
+    private static final FadeMaterials THE_INSTANCE = new FadeMaterials();
+
+    // a couple of colours' worth of buckets, which is all a single route ever shows
+    private static final int MAX_MATERIALS = 2 * (Visibility.OPAQUE + 1);
+
+    private Context context;
+    private final Map<Integer, CompletableFuture<Material>> materials =
+            new LinkedHashMap<Integer, CompletableFuture<Material>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, CompletableFuture<Material>> eldest) {
+                    return size() > MAX_MATERIALS;
+                }
+            };
+
+    static FadeMaterials getInstance() {
+        return THE_INSTANCE;
+    }
+
+    // materials are made with this context from now on
+    synchronized void attach(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    // Returns the material for the colour at the given opacity bucket, or null if it is still
+    // being made (in which case the caller should ask again next frame).
+    synchronized Material get(Color color, int bucket) {
+        return this.prepare(color, bucket).getNow(null);
+    }
+
+    // Starts making the material for the colour at the given opacity bucket if it isn't cached,
+    // returning a future that completes with it (or with null if it couldn't be made, in which case
+    // it's made again the next time it's asked for).
+    synchronized CompletableFuture<Material> prepare(Color color, int bucket) {
+        int key = keyOf(color, bucket);
+        CompletableFuture<Material> material = this.materials.get(key);
+        if (material == null) {
+            if (this.context == null) {
+                Log.e(TAG, "No context attached, cannot make fade materials.");
+                return CompletableFuture.completedFuture(null);
+            }
+            material = this.make(color, bucket)
+                    .exceptionally(e -> {
+                        Log.e(TAG, String.format(Locale.ENGLISH, "Unable to load custom material, %s", e));
+                        return null;
+                    });
+            this.materials.put(key, material);
+            CompletableFuture<Material> cached = material;
+            cached.thenAccept(m -> { if (m == null) { this.forget(key, cached); } }); // so the next get() tries again
+        }
+        return material;
+    }
+
+    // drops a material that couldn't be made, unless it has already been replaced
+    private synchronized void forget(int key, CompletableFuture<Material> material) {
+        this.materials.remove(key, material);
+    }
+
+    synchronized int size() {
+        return this.materials.size();
+    }
+
+    // the fully opaque bucket gets an opaque material since the transparent ones are all vaguely
+    // transparent
+    private CompletableFuture<Material> make(Color color, int bucket) {
+        if (bucket == Visibility.OPAQUE) {
+            return MaterialFactory.makeOpaqueWithColor(this.context, new Color(color.r, color.g, color.b));
+        }
+        return MaterialFactory.makeTransparentWithColor(this.context,
+                new Color(color.r, color.g, color.b, Visibility.opacityOf(bucket)));
+    }
+
+    // 8 bits for each colour channel and 8 for the bucket
+    private static int keyOf(Color color, int bucket) {
+        int r = Math.round(color.r * 255);
+        int g = Math.round(color.g * 255);
+        int b = Math.round(color.b * 255);
+        return (r << 24) | (g << 16) | (b << 8) | bucket;
+    }
+}
@@ -0,0 +1,91 @@
+package wayfinding;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import wayfinding.core.Histogram;
+import wayfinding.core.MetricsRegistry;
+import wayfinding.core.UpdateCounters;
+
+/**
+ * Per-frame histograms for the frame callback: how long it took, how many nodes MapPlan.update
+ * evaluated, how many renderables and materials it swapped, and how many images were being
+ * tracked. Recording is a handful of array increments, so it is always on; summary() is for the
+ * debug overlay and dump() writes the same table to METRICS_FILE in the app's external files
+ * directory.
+ */
+public final class FrameMetrics {
+    private static final String TAG = "wayfinder.FrameMetrics";
+    private static final FrameMetrics THE_INSTANCE = new FrameMetrics();
+    private static final String METRICS_FILE = "frame_metrics.txt";
+
+    // dumps are written one at a time, in order, off the caller's thread (which is the main thread
+    // when the activity pauses)
+    private static final Executor WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "wayfinder-frame-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final Histogram callbackMicros = registry.histogram("frame callback (us)");
+    private final Histogram nodesEvaluated = registry.histogram("nodes evaluated");
+    private final Histogram renderableSwaps = registry.histogram("renderable swaps");
+    private final Histogram materialSwaps = registry.histogram("material swaps");
+    private final Histogram trackedImages = registry.histogram("tracked images");
+
+    // the update counters' totals as of the last frame, so we can record each frame's share
+    private long lastEvaluated;
+    private long lastRenderableSwaps;
+    private long lastMaterialSwaps;
+
+    public static FrameMetrics getInstance() {
+        return THE_INSTANCE;
+    }
+
+    public MetricsRegistry getRegistry() { return this.registry; }
+
+    // Call once at the end of every frame callback, from the thread that runs it.
+    public void recordFrame(long callbackNanos, int tracked, UpdateCounters counters) {
+        this.callbackMicros.record(callbackNanos / 1000);
+        this.trackedImages.record(tracked);
+        this.nodesEvaluated.record(counters.getNodesEvaluated() - this.lastEvaluated);
+        this.renderableSwaps.record(counters.getRenderableSwaps() - this.lastRenderableSwaps);
+        this.materialSwaps.record(counters.getMaterialSwaps() - this.lastMaterialSwaps);
+        this.lastEvaluated = counters.getNodesEvaluated();
+        this.lastRenderableSwaps = counters.getRenderableSwaps();
+        this.lastMaterialSwaps = counters.getMaterialSwaps();
+    }
+
+    public String summary() {
+        return this.registry.summary();
+    }
+
+    // Overwrites the metrics file with the summary so far. The summary is taken straight away, from
+    // the thread that records frames, and written in the background.
+    public void dump(Context context) {
+        Context appContext = context.getApplicationContext();
+        String summary = this.summary();
+        WRITER.execute(() -> write(appContext, summary));
+    }
+
+    private static void write(Context context, String summary) {
+        File dir = context.getExternalFilesDir(null);
+        File file = new File(dir != null ? dir : context.getFilesDir(), METRICS_FILE);
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"))) {
+            out.write(summary);
+        } catch (IOException e) {
+            Log.e(TAG, String.format(Locale.ENGLISH, "Unable to write %s, %s", file, e));
+        }
+    }
+}
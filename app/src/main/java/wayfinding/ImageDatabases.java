@@ -0,0 +1,223 @@
+package wayfinding;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.google.ar.core.AugmentedImageDatabase;
+import com.google.ar.core.Session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import wayfinding.core.MarkerManifest;
+
+/**
+ * A process wide cache of the augmented image databases sessions are configured with. A database
+ * belongs to the session it was made for, so what's cached is the serialized database, which each
+ * new session deserializes off the main thread. A database built from a marker manifest (see
+ * MarkerManifest) is also written to the app's cache directory, keyed by the manifest and the apk,
+ * so it's only ever built once per install; building it decodes the images in parallel, shrunk to
+ * what ARCore needs, and adds them to the database on one background thread.
+ */
+public final class ImageDatabases {
+    private static final String TAG = "wayfinder.ImageDatabases";
+    private static final ImageDatabases THE_INSTANCE = new ImageDatabases();
+    private static final String CACHE_DIR = "image_databases";
+    private static final String EXTENSION = ".imgdb";
+
+    // ARCore needs images at least 300 pixels on a side, and finer detail than this doesn't help
+    // it find them, so bigger images are decoded at a power of two fraction of their size
+    // leaving the shorter side at least this long. Decoding the full size photo is most of the build.
+    private static final int MIN_IMAGE_SIDE = 480;
+
+    // the serialized databases by the asset they come from
+    private final Map<String, CompletableFuture<byte[]>> databases = new HashMap<>();
+
+    public static ImageDatabases getInstance() {
+        return THE_INSTANCE;
+    }
+
+    // The database built into the apk as the given asset, for the session.
+    public CompletableFuture<AugmentedImageDatabase> fromAsset(Context context, Session session, String asset) {
+        AssetManager assets = context.getAssets();
+        return this.serialized(asset, () -> CompletableFuture.supplyAsync(() -> {
+            try (InputStream in = assets.open(asset)) {
+                return readAll(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        })).thenApplyAsync(bytes -> deserialize(session, bytes));
+    }
+
+    // The database of the images in the given manifest asset, for the session. The first session
+    // to ask builds it, unless a previous run already left it in the cache directory.
+    public CompletableFuture<AugmentedImageDatabase> fromManifest(Context context, Session session, String manifestAsset) {
+        Context appContext = context.getApplicationContext();
+        return this.serialized(manifestAsset, () -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return loadOrBuild(appContext, session, manifestAsset);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        })).thenApplyAsync(bytes -> deserialize(session, bytes));
+    }
+
+    private synchronized CompletableFuture<byte[]> serialized(String asset, Supplier<CompletableFuture<byte[]>> load) {
+        CompletableFuture<byte[]> database = this.databases.get(asset);
+        if (database == null || database.isCompletedExceptionally()) { // a failed load is tried again
+            database = load.get();
+            this.databases.put(asset, database);
+        }
+        return database;
+    }
+
+    private static byte[] loadOrBuild(Context context, Session session, String manifestAsset) throws IOException {
+        MarkerManifest manifest;
+        try (Reader json = new InputStreamReader(context.getAssets().open(manifestAsset), Charset.forName("UTF-8"))) {
+            manifest = MarkerManifest.read(json);
+        }
+        File dir = new File(context.getCacheDir(), CACHE_DIR);
+        String prefix = manifestAsset + "-";
+        File cached = new File(dir, prefix + manifest.fingerprint() + "-" + installTime(context) + EXTENSION);
+        if (cached.isFile()) {
+            try (InputStream in = new FileInputStream(cached)) {
+                return readAll(in);
+            } catch (IOException e) {
+                Log.e(TAG, String.format(Locale.ENGLISH, "Unable to read %s, building it again, %s", cached, e));
+            }
+        }
+
+        byte[] bytes = build(context.getAssets(), session, manifest);
+        File[] stale = dir.listFiles((d, name) -> name.startsWith(prefix));
+        if (stale != null) {
+            for (File f : stale) { f.delete(); }
+        }
+        dir.mkdirs();
+        File partial = new File(dir, cached.getName() + ".partial"); // so a crash never leaves half a database
+        try (OutputStream out = new FileOutputStream(partial)) {
+            out.write(bytes);
+        } catch (IOException e) {
+            Log.e(TAG, String.format(Locale.ENGLISH, "Unable to cache %s, %s", cached, e));
+            partial.delete();
+            return bytes;
+        }
+        if (!partial.renameTo(cached)) { // the next run builds it again
+            partial.delete();
+        }
+        return bytes;
+    }
+
+    // Decodes the manifest's images in parallel, then adds them to a new database one at a time
+    // (a database isn't thread safe) and serializes it. An image ARCore can't use is logged and left
+    // out rather than losing the rest.
+    private static byte[] build(AssetManager assets, Session session, MarkerManifest manifest) throws IOException {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Bitmap>[] bitmaps = new CompletableFuture[manifest.size()];
+        for (int i = 0; i < manifest.size(); i++) {
+            String image = manifest.getImage(i);
+            bitmaps[i] = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return decode(assets, image);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        int next = 0; // the first image not yet added
+        try {
+            AugmentedImageDatabase database = new AugmentedImageDatabase(session);
+            while (next < manifest.size()) {
+                int i = next++;
+                Bitmap bitmap = null;
+                try {
+                    bitmap = bitmaps[i].join(); // throws a CompletionException if it couldn't be decoded
+                    if (manifest.hasWidth(i)) {
+                        database.addImage(manifest.getImage(i), bitmap, manifest.getWidth(i));
+                    } else {
+                        database.addImage(manifest.getImage(i), bitmap);
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, String.format(Locale.ENGLISH, "Unable to add %s to the image database, %s", manifest.getImage(i), e));
+                } finally {
+                    if (bitmap != null) { bitmap.recycle(); }
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            database.serialize(out);
+            return out.toByteArray();
+        } finally {
+            // if the build stopped early, the images it didn't get to are recycled as they finish
+            for (int j = next; j < bitmaps.length; j++) { bitmaps[j].thenAccept(Bitmap::recycle); }
+        }
+    }
+
+    private static Bitmap decode(AssetManager assets, String image) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = assets.open(image)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight);
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap;
+        try (InputStream in = assets.open(image)) {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Unable to decode " + image);
+        }
+        return bitmap;
+    }
+
+    // the largest power of two to shrink an image by that leaves its shorter side MIN_IMAGE_SIDE
+    private static int sampleSize(int width, int height) {
+        int side = Math.min(width, height);
+        int sample = 1;
+        while (side / (2 * sample) >= MIN_IMAGE_SIDE) { sample *= 2; }
+        return sample;
+    }
+
+    private static AugmentedImageDatabase deserialize(Session session, byte[] bytes) {
+        try {
+            return AugmentedImageDatabase.deserialize(session, new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // changes whenever the apk is installed or updated, and with it the images in the assets
+    private static long installTime(Context context) throws IOException {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16 * 1024];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) { out.write(buffer, 0, n); }
+        return out.toByteArray();
+    }
+}
@@ -1,44 +1,60 @@
 package wayfinding;
 
 import android.content.Context;
-import android.support.annotation.NonNull;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
-import android.util.SparseArray;
-import android.view.LayoutInflater;
-import android.view.View;
-import android.view.ViewGroup;
-import android.widget.LinearLayout;
-import android.widget.ScrollView;
-import android.widget.TextView;
 
 
 import com.google.ar.sceneform.Node;
 import com.google.ar.sceneform.NodeParent;
 import com.google.ar.sceneform.Scene;
+import com.google.ar.sceneform.math.Matrix;
 import com.google.ar.sceneform.math.Quaternion;
 import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.rendering.Color;
-import com.google.ar.sceneform.rendering.Material;
-import com.google.ar.sceneform.rendering.MaterialFactory;
 import com.google.ar.sceneform.rendering.ModelRenderable;
 import com.google.ar.sceneform.rendering.ViewRenderable;
 import com.google.ar.sceneform.samples.augmentedimage.R;
 import com.google.ar.sceneform.samples.common.helpers.SnackbarHelper;
-import com.google.gson.Gson;
 
 
-import java.io.InputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.Comparator;
+import java.io.Reader;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import wayfinding.core.BatchRouter;
+import wayfinding.core.BatchRoutes;
+import wayfinding.core.BoundedRegion;
+import wayfinding.core.ContractionHierarchy;
+import wayfinding.core.DynamicShortestPathTree;
+import wayfinding.core.EdgeCosts;
+import wayfinding.core.Graph;
+import wayfinding.core.GraphLoader;
+import wayfinding.core.HierarchyRouter;
+import wayfinding.core.IntList;
+import wayfinding.core.Marker;
+import wayfinding.core.MarkerRegistry;
+import wayfinding.core.ResolvedRoute;
+import wayfinding.core.RoomIndex;
+import wayfinding.core.RouteCache;
+import wayfinding.core.Router;
+import wayfinding.core.ShortestPathTree;
+import wayfinding.core.Tracer;
+import wayfinding.core.UpdateCounters;
+import wayfinding.core.UpdateGate;
+import wayfinding.core.Visibility;
+import wayfinding.core.VisibilityWorker;
+import wayfinding.core.Waypoint;
 
 
 /**
@@ -51,16 +67,57 @@ import java.util.concurrent.ExecutionException;
 public class MapPlan extends Node {
 
     private static final String TAG = "wayfinder.MapPlan";
-    private static final Vector3 RELATIVE_MAP_POS = new Vector3(18.5f, 0, 22f);
-
-    // We have all of the data for the map graph in the three json files, but we put the root node data here
-    // This is so that when we move the position of the image it is easier to move the root node around
-    private static final int ROOT_NAV = 0; // the id of the root node
-    private static final int[] ROOT_EDGES = new int[] {2,21,22,23,24,25,3}; // the nodes that this root node is connected to
+    private static final String VIDEO_IMAGE_NAME = "frame.png";
+
+    // The images in myimages.imgdb and what scanning them does. We have all of the data for the
+    // map graph in the three json files, but the markers live here so that when we move an image
+    // it is easier to move its node around. Each anchor marker is added to the graph as a point of
+    // its own (the original one, id 0, is the root node) joined to the given nodes, and gets its own
+    // shortest path tree so that scanning it can route straight away. Every image but the video
+    // is the root marker, since that's how the database has always been used.
+    private static final MarkerRegistry MARKERS = MarkerRegistry.builder()
+            .setFallback(Marker.anchor("root", new Waypoint(0, 18.5f, 22f), 0, 2, 21, 22, 23, 24, 25, 3))
+            .add(Marker.content(VIDEO_IMAGE_NAME))
+            .build();
+
+    // the shard we show, compiled from the map json at build time into map.wfmap, see
+    // compileMap in app/build.gradle and CompiledMapSource
+    private static final String MAP_SHARD = "map";
+
+    // Route from the nav point nearest the camera with an A* search (true), or along the shortest
+    // path tree from the marker we were placed at (false). We fall back to the tree if the camera
+    // isn't available.
+    private static final boolean ROUTE_FROM_CAMERA = true;
+
+    // How many routes (with their arrow bearings) to keep around for rooms the user goes back to.
+    // Routes from the camera are keyed by the nav point nearest it, so these fill up as people walk.
+    private static final int ROUTE_CACHE_SIZE = 64;
 
     private static final Color NAV_COLOR = new Color(0, 0.2f, 0.9f);
     private static final Color DEST_COLOR = new Color(0.2f, 0.9f, 0.1f);
 
+    // The active set and the visibility maths for its nodes run here rather than in the frame
+    // callback, see VisibilityWorker. It's a thread of its own so that a frame's job never waits
+    // behind routing on the common pool.
+    private static final Executor VISIBILITY_THREAD = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "wayfinder-visibility");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Set to true to add the allocations made by the update loop to getUpdateCounters(). This uses
+    // Debug's thread allocation counting, which slows everything down, so it is for debugging only.
+    private static final boolean COUNT_ALLOCATIONS = false;
+
+    // The node update is skipped for frames where the camera has moved less than
+    // UPDATE_MIN_TRANSLATION metres and turned less than UPDATE_MIN_ROTATION degrees since the last
+    // one, and runs at most UPDATE_MAX_RATE times a second (0 for every frame), see UpdateGate.
+    // Nodes fade over metres, so a few centimetres of drift while the user stands still changes
+    // nothing they can see but would otherwise cost a full update every frame.
+    private static final float UPDATE_MIN_TRANSLATION = 0.05f;
+    private static final float UPDATE_MIN_ROTATION = 2f;
+    private static final float UPDATE_MAX_RATE = 30f;
+
     private static final Vector3 MENU_SCALE = new Vector3(0.3f,0.3f,0.3f);
     private static final Vector3 MENU_POSITION = new Vector3(0,0.10f,0);
 
@@ -69,28 +126,165 @@ public class MapPlan extends Node {
     private ModelRenderable mapModel;
     private ModelRenderable navArrow;
     private ModelRenderable destArrow;
-    private ViewRenderable roomMenu;
-    private final CountDownLatch latch = new CountDownLatch(1);
 
+    // Startup is staged so that nothing blocks the main thread or the frame loop: the graph is
+    // loaded and routed over in the background, then the scene nodes, menu and room cards are built
+    // back on the main thread while the models and materials load. Each stage has a readiness
+    // future, and showMap() places whatever is ready and fills in the rest as it arrives.
+    private final Executor mainThread;
+    private final CompletableFuture<Graph> graphReady;
+    private final CompletableFuture<Void> nodesReady;
+    private final CompletableFuture<Void> modelsReady;
+    private final CompletableFuture<Void> materialsReady;
+    private final CompletableFuture<ViewRenderable> menuReady;
+    private boolean isBuilt = false; // whether the scene nodes exist yet, only used on the main thread
+
+    private final UpdateGate updateGate = new UpdateGate(UPDATE_MIN_TRANSLATION, UPDATE_MIN_ROTATION, UPDATE_MAX_RATE);
+    private final RoomCards roomCards; // cards for the rooms near the camera, see this.update()
+    private RoomMenu roomMenu; // made by loadMenu()
+    private volatile RoomIndex roomIndex; // for finding rooms by what the user types, set by the loader thread
+    private final IntList searchResults = new IntList(); // scratch list for chooseTarget()
     private Map<String, EntryPoint> entries = new HashMap<>(); // stores all entry points in the map
-    private SparseArray<NavPoint> navs = new SparseArray<>(); // stores all navigation points in the map
-    private Map<NavPoint, DijkstraPoint> navToDijkstra = new HashMap<>(); // converter for navPoints to Dijkstra points -- it's a bit ugly
-    private final Material[] fadeTextures = new Material[101]; // array of textures at different opacities
+    private NavPoint[] navs = new NavPoint[0]; // stores all navigation points in the map, by their index in the graph
+    private Graph graph; // the headless graph that navs are built from, used for routing
+    private Router router; // reusable search state for routing over graph
+    private ContractionHierarchy hierarchy; // stored with the compiled map for fast routing, or null
+    private VisibilityWorker visibilityWorker; // works out which navs to show, see this.update()
+    private final Matrix worldToMap = new Matrix(); // inverse of our world transform, set in showMap()
+    private boolean isPlaced = false; // whether showMap() has put us in the scene yet
+    private float cameraX; // camera position in our local space, see this.locateCamera()
+    private float cameraZ;
+    private ShortestPathTree[] markerTrees; // shortest paths from each anchor marker by slot, see this.makeSPT()
+    private int[] markerIds; // the id each anchor marker's point has in graph by slot, see this.loadGraph()
+    private int marker = MarkerRegistry.NO_MARKER; // the slot of the marker we were last placed at
+    private EdgeCosts costs; // what each edge costs now, only read once graphReady is done
+    private String targetRoom; // the room chooseTarget() last showed the way to, or null
+    private RouteCache routeCache; // resolved routes over graph, see this.findRoute()
+    private BatchRouter batchRouter; // for routeBatch(), made with costs as they were at batchVersion
+    private long batchVersion;
 
     public MapPlan(Context context) {
         super();
-        this.loadGraphFromJSON(context);
-        this.loadModels(context);
-        this.setUpModels();
-        this.makeSPT();
+        if (COUNT_ALLOCATIONS) { Debug.startAllocCounting(); }
+        Tracer.Span startup = StartupTrace.getInstance().begin("MapPlan");
+        Handler handler = new Handler(Looper.getMainLooper());
+        this.mainThread = handler::post;
+        Context appContext = context.getApplicationContext();
+        FadeMaterials.getInstance().attach(context); // fade materials are made lazily, as nodes need them
+        this.roomCards = new RoomCards(context, updateGate::invalidate);
+
+        this.graphReady = CompletableFuture.supplyAsync(() -> {
+            try (Tracer.Span span = startup.child("loadGraph")) { this.loadGraph(appContext, span); }
+            try (Tracer.Span span = startup.child("makeSPT")) { this.makeSPT(); }
+            return this.graph;
+        });
+        this.nodesReady = graphReady.thenAcceptAsync(loaded -> {
+            try (Tracer.Span span = startup.child("buildNodes")) { this.buildNodes(); }
+            try (Tracer.Span span = startup.child("setUpModels")) { this.setUpModels(); }
+            if (this.targetRoom != null) { this.chooseTarget(this.targetRoom); } // chosen while we were building
+        }, mainThread);
+        this.modelsReady = endWhenDone(startup.child("loadModels"), this.loadModels(context));
+        this.materialsReady = endWhenDone(startup.child("loadMaterials"), this.loadMaterials());
+        this.menuReady = nodesReady.thenComposeAsync(aVoid -> this.loadMenu(context, startup), mainThread);
+        nodesReady.runAfterBothAsync(modelsReady, () -> {
+            try (Tracer.Span span = startup.child("applyModels")) { this.applyModels(); }
+        }, mainThread);
+
+        this.whenReady().whenCompleteAsync((aVoid, e) -> {
+            if (e != null) {
+                Log.e(TAG, String.format(Locale.ENGLISH, "Unable to set up the map, %s", e));
+            }
+            startup.end();
+            StartupTrace.getInstance().export(appContext);
+        });
+    }
+
+    // readiness of each startup stage, see the constructor
+    public CompletableFuture<Graph> getGraphReady(){ return this.graphReady; }
+    public CompletableFuture<Void> getModelsReady(){ return this.modelsReady; }
+    public CompletableFuture<Void> getMaterialsReady(){ return this.materialsReady; }
+    public CompletableFuture<ViewRenderable> getMenuReady(){ return this.menuReady; }
+
+    // completes once every stage has, or exceptionally if any of them failed
+    public CompletableFuture<Void> whenReady(){
+        return CompletableFuture.allOf(graphReady, nodesReady, modelsReady, materialsReady, menuReady);
     }
 
+    // Applies the latest node visibility the worker has finished (see VisibilityWorker), then hands
+    // it the camera position if the camera has moved enough since the last one to make a difference
+    // (see UPDATE_MIN_TRANSLATION). Only the nodes in the active set are in a frame, rather than
+    // every nav in the map. A node that drops out of the set gets one last update, which hides it
+    // since the camera is out of its bounds, and entry points give their room cards back as they
+    // leave. Call this at most once a frame. It doesn't allocate, except to build a card for a room
+    // whose entry point has just come into the set with no spare card to reuse.
     public void update(Context context){
-        Scene scene = getScene(); // save a million unneeded function calls
-        for (int j = 0; j < navs.size(); j++) { navs.valueAt(j).update(context, scene); }
+        long allocations = COUNT_ALLOCATIONS ? Debug.getThreadAllocCount() : 0;
+        if (!this.isBuilt) {
+            return;
+        }
+        VisibilityWorker.Frame frame = visibilityWorker.poll();
+        if (frame != null) {
+            for (int j = 0; j < frame.size(); j++) {
+                int i = frame.pointAt(j);
+                if (graph.isEntry(i)) { // rooms only have cards while they're in the active set
+                    if (frame.isActive(j)) {
+                        roomCards.show((EntryPoint) navs[i]);
+                    } else {
+                        roomCards.release((EntryPoint) navs[i]);
+                    }
+                }
+                navs[i].apply(frame.bucketAt(j), frame.childBucketAt(j));
+            }
+            if (BoundedNode.takeUnsettled()) { // a material was still loading, so try again next frame
+                updateGate.invalidate();
+            }
+            BoundedNode.COUNTERS.countFrame();
+        }
+
+        // a frame the worker finished since the poll() above makes it busy until the next update()
+        // has applied it, so the nodes that just left the active set always get their last update
+        if (this.locateCamera() && !visibilityWorker.isBusy()) {
+            float[] camera = getScene().getCamera().getWorldModelMatrix().data; // the camera looks down -z
+            if (updateGate.shouldUpdate(System.nanoTime(), camera[12], camera[13], camera[14], -camera[8], -camera[9], -camera[10])) {
+                // nav points sit at the inverse of their map position, see NavPoint.setParent()
+                visibilityWorker.submit(-cameraX, -cameraZ, cameraX, cameraZ);
+            } else {
+                BoundedNode.COUNTERS.countSkippedFrame();
+            }
+        }
+        if (COUNT_ALLOCATIONS) { BoundedNode.COUNTERS.countAllocations(Debug.getThreadAllocCount() - allocations); }
+    }
+
+    // totals for the work done by update(), shared by every MapPlan
+    public UpdateCounters getUpdateCounters(){ return BoundedNode.COUNTERS; }
+
+    // Works out where the camera is in our local space from the camera's world matrix and the
+    // inverse world transform cached by showMap(). Sceneform hands back its cached matrices here,
+    // so unlike worldToLocalPoint(getWorldPosition()) this doesn't allocate any vectors.
+    private boolean locateCamera(){
+        Scene scene = getScene();
+        if (!isPlaced || scene == null) {
+            return false;
+        }
+        float[] camera = scene.getCamera().getWorldModelMatrix().data;
+        float[] m = worldToMap.data; // column major, translation in 12..14
+        cameraX = m[0] * camera[12] + m[4] * camera[13] + m[8] * camera[14] + m[12];
+        cameraZ = m[2] * camera[12] + m[6] * camera[13] + m[10] * camera[14] + m[14];
+        return true;
     }
 
-    public void showMap(NodeParent parent, Node seeder){
+    // the markers the map can be placed at, see showMap()
+    public static MarkerRegistry getMarkers(){ return MARKERS; }
+
+    // Places the map at the anchor marker in the given slot (see getMarkers()), which is seeder.
+    // Scanning a different marker places the map again at that one, and shows the way to the
+    // current target from there.
+    public void showMap(NodeParent parent, Node seeder, int slot){
+        Marker placedAt = MARKERS.get(slot);
+        if (!placedAt.isAnchor()) {
+            Log.e(TAG, String.format(Locale.ENGLISH, "%s isn't a map marker.", placedAt.getImageName()));
+            return;
+        }
         // Upon construction, start loading the models for the floor plan. TODO remove this since we don't want the floor plan in the end product
 
         // we create a temporary node within the local space of the augmentedImage that is detected
@@ -105,9 +299,13 @@ public class MapPlan extends Node {
         // in the AR device, as opposed to more complicated (and less accurate) world mapping
         // algorithms used to remember where the augmentedImage is in AR space
 
+        // the marker's yaw turns the map's axes from the image's before we move along them
+        Node yawNode = new Node();
+        yawNode.setParent(seeder);
+        yawNode.setLocalRotation(Quaternion.axisAngle(new Vector3(0f, 1f, 0f), placedAt.getYaw()));
         Node localMapNode = new Node();
-        localMapNode.setParent(seeder);
-        localMapNode.setLocalPosition(RELATIVE_MAP_POS);
+        localMapNode.setParent(yawNode);
+        localMapNode.setLocalPosition(new Vector3(placedAt.getPoint().getX(), 0, placedAt.getPoint().getZ()));
         Vector3 mapLocalPos = localMapNode.getWorldPosition();
         mapLocalPos.y = seeder.getWorldPosition().y;
         Quaternion mapLocalRotation = localMapNode.getWorldRotation();
@@ -117,8 +315,13 @@ public class MapPlan extends Node {
         this.setParent(parent);
         this.setLocalPosition(mapLocalPos);
 //      this.setRenderable(mapModel);
+        Matrix.invert(this.getWorldModelMatrix(), worldToMap);
+        this.isPlaced = true;
+        this.marker = slot;
+        updateGate.invalidate();
+        yawNode.setParent(null);
 
-
+        if (this.menuNode != null) { menuNode.setParent(null); } // the menu follows us to the new marker
         this.menuNode = new Node();
         menuNode.setParent(seeder);
         menuNode.setLocalPosition(MENU_POSITION);
@@ -135,134 +338,189 @@ public class MapPlan extends Node {
 
         }
 
-        // wait for models to finish loading before doing this part -- blocking operation but I don't want to make a whole runnable thing just for it
-        try{
-            latch.await();
-            menuNode.setRenderable(roomMenu);
-            for (int j = 0; j < navs.size(); j++) { navs.valueAt(j).setModel(navArrow.makeCopy()); }
-            for (EntryPoint p : entries.values().toArray(new EntryPoint[]{})){ p.setModel(destArrow.makeCopy()); }
-        } catch (InterruptedException e) {
-            Log.e(TAG, String.format(Locale.ENGLISH, "Couldn't wait for renderables, %s", e));
+        // the menu shows up as soon as it's built, which is straight away unless startup is still
+        // running. If we're showing the way to a room again, or one is chosen before the menu is
+        // built, it stays hidden, as chooseTarget() leaves it. The arrows are given to the nodes
+        // by applyModels() whenever they're ready.
+        if (this.targetRoom != null && this.isBuilt) {
+            this.chooseTarget(this.targetRoom);
+        } else {
+            Node menu = this.menuNode;
+            menuReady.thenAcceptAsync(renderable -> {
+                if (this.targetRoom == null) { menu.setRenderable(renderable); }
+            }, mainThread);
         }
+    }
 
-
+    // Puts up to limit rooms matching the query (names, prefixes of them or of their words, and
+    // near misses, see RoomIndex) into out, best first, and returns how many. Use
+    // getRoomIndex().getName() to get their names. This is quick enough to run on every keystroke
+    // and doesn't allocate, but must be called on the main thread. Nothing matches until the graph
+    // has loaded.
+    public int searchRooms(CharSequence query, int limit, IntList out){
+        RoomIndex index = this.roomIndex;
+        if (index == null) {
+            out.clear();
+            return 0;
+        }
+        return index.search(query, limit, out);
     }
 
-    // Traverses the linked list provided for by this.makeSPT() for the target, makes arrows appear
-    // at each node in the linked list before rotating them to point at each other
-    public void chooseTarget(String roomName){
-        for (int j = 0; j < navs.size(); j++) { navs.valueAt(j).setVisible(false); }
-        this.menuNode.setRenderable(null);
+    // the room search index, or null until the graph has loaded
+    public RoomIndex getRoomIndex(){ return this.roomIndex; }
 
+    // Finds a route to the target (see this.findRoute()), makes arrows appear at each node on the
+    // path before rotating them to point at each other. A name that isn't a room is looked up with
+    // searchRooms(), so typed names and aliases work too. A room chosen before the scene nodes are
+    // built is shown once they are, see the constructor.
+    public void chooseTarget(String roomName){
+        if (!entries.containsKey(roomName)) {
+            if (this.searchRooms(roomName, 1, searchResults) == 0) {
+                Log.e(TAG, String.format(Locale.ENGLISH, "No room matches %s.", roomName));
+                return;
+            }
+            roomName = roomIndex.getName(searchResults.get(0));
+        }
+        if (!this.isBuilt) {
+            this.targetRoom = roomName;
+            return;
+        }
         EntryPoint target = entries.get(roomName);
+        if (target == null) {
+            Log.e(TAG, String.format(Locale.ENGLISH, "Room %s has no entry point.", roomName));
+            return;
+        }
+        for (NavPoint n : navs) { n.setVisible(false); }
+        if (this.menuNode != null) { this.menuNode.setRenderable(null); } // not placed yet if null
+        updateGate.invalidate();
+
+        this.targetRoom = roomName;
         target.setVisible(true);
         target.changeColor(DEST_COLOR);
-        DijkstraPoint current =  navToDijkstra.get(navs.get(target.getId()));
-
-        while (current.prev != null){
-            // calculate the smaller of the two angles between the default direction of the arrow
-            // and the direction we want the arrow to be pointing in
-            float angleTo = Vector3.angleBetweenVectors(
-                Vector3.subtract(
-                    new Vector3(current.prev.point.getX(),0,current.prev.point.getZ()+1), //this might be able to be the vector (0,0,1)
-                    new Vector3(current.prev.point.getX(),0,current.prev.point.getZ())
-                ),
-                Vector3.subtract(
-                    new Vector3(current.point.getX(),0,current.point.getZ()),
-                    new Vector3(current.prev.point.getX(),0,current.prev.point.getZ())
-                )
-            );
-            // account for the fact that our rotations are only in the clockwise direction by
-            // making an obtuse rotation if needed (since angleBetweenVectors only gives value
-            // in the range [0,180])
-            if(current.point.getX() < current.prev.point.getX()) { // note that Android Studio uses RHS axes
-                angleTo = 360 - angleTo;
-            }
-            current.prev.point.setRotation(angleTo);
-            current.prev.point.setVisible(true);
 
-            current = current.prev;
+        ResolvedRoute route = this.findRoute(target.getIndex());
+        // the arrow at each point turns to the bearing of the edge to the next one, which the
+        // graph worked out when it was loaded (see Graph.edgeBearing())
+        for (int j = 0; j + 1 < route.size(); j++){
+            NavPoint prev = navs[route.pointAt(j)];
+            prev.setRotation(route.bearingAt(j));
+            prev.setVisible(true);
         }
     }
 
-    // pull the JSON data from nav_points.json, edges.json and entry_points.json
-    private void loadGraphFromJSON(@org.jetbrains.annotations.NotNull Context context){
-        Gson gson = new Gson();
+    // Routes from the user's live position to the target starting at the nav point nearest the
+    // camera. If that's a marker (as it is straight after one is scanned) we walk its shortest path
+    // tree from this.makeSPT(), otherwise we search through the contraction hierarchy if the map
+    // has one (and no corridors are closed) or with A*. If we can't tell where the camera is, we
+    // walk the tree of the marker we were placed at instead. Either way the route comes out of
+    // routeCache if we've been asked for it before.
+    private ResolvedRoute findRoute(int target){
+        if (ROUTE_FROM_CAMERA && this.locateCamera()) {
+            // nav points sit at the inverse of their map position, see NavPoint.setParent()
+            int nearest = graph.nearestPoint(-cameraX, -cameraZ);
+            for (ShortestPathTree tree : markerTrees) {
+                if (tree != null && tree.getRoot() == nearest) { return routeCache.route(tree, target); }
+            }
+            ResolvedRoute route = routeCache.route(nearest, target);
+            if (route.isFound()) {
+                return route;
+            }
+        }
+        return routeCache.route(this.markerTree(), target);
+    }
 
-        // load entry points (nodes which are in the doorway of a room)
-        InputStream inputStream = context.getResources().openRawResource(R.raw.entry_points);
-        JSONPoint[] jsonNavs = gson.fromJson(new InputStreamReader(inputStream), JSONPoint[].class);
+    // the tree for the marker we were placed at, or the first anchor marker if we haven't been yet
+    private ShortestPathTree markerTree(){
+        if (this.marker != MarkerRegistry.NO_MARKER) {
+            return markerTrees[this.marker];
+        }
+        for (ShortestPathTree tree : markerTrees) {
+            if (tree != null) { return tree; }
+        }
+        return null;
+    }
 
-        for (JSONPoint p : jsonNavs) {
-            EntryPoint newEntry = new EntryPoint(p, fadeTextures);
-            entries.put(p.roomName, newEntry);
-            navs.put(p.id, newEntry);
+    // Loads the map compiled at build time (see compileMap in app/build.gradle), with its
+    // contraction hierarchy, falling back to the json sources if it isn't there, then adds the
+    // anchor markers. This runs in the background.
+    private void loadGraph(@org.jetbrains.annotations.NotNull Context context, Tracer.Span trace){
+        Graph loaded;
+        ContractionHierarchy loadedHierarchy = null;
+        try (Tracer.Span span = trace.child("loadCompiledGraph")) {
+            CompiledMapSource source = new CompiledMapSource(context);
+            loaded = source.load(MAP_SHARD);
+            loadedHierarchy = source.loadHierarchy(MAP_SHARD, loaded);
+        } catch (IOException e) {
+            Log.e(TAG, String.format(Locale.ENGLISH, "Unable to load shard %s, falling back to json, %s", MAP_SHARD, e));
+            try (Tracer.Span span = trace.child("loadGraphFromJSON")) { loaded = loadGraphFromJSON(context); }
         }
 
-        // load nav points (the other nodes in our graph)
-        inputStream = context.getResources().openRawResource(R.raw.nav_points);
-        jsonNavs = gson.fromJson(new InputStreamReader(inputStream), JSONPoint[].class);
-
-        for (JSONPoint p : jsonNavs) navs.put(p.id, new NavPoint(p, fadeTextures));
-
-        // add the required data for the root node and insert into the graph
-        navs.put(ROOT_NAV, new NavPoint(ROOT_NAV, RELATIVE_MAP_POS.x, RELATIVE_MAP_POS.z, fadeTextures));
-        for (int rootEdge : ROOT_EDGES){
-            try {
-                navs.get(ROOT_NAV).addEdge(navs.get(rootEdge));
-                navs.get(rootEdge).addEdge(navs.get(ROOT_NAV));
-            } catch (NullPointerException ex) {
-                Log.e(TAG, String.format(Locale.ENGLISH,
-                        "NullPointerException when assigning an edge between the root and %d.", rootEdge));
+        // add a point for each anchor marker and join it to the graph
+        Graph attached = loaded;
+        this.markerIds = new int[MARKERS.size()];
+        int anchors = 0;
+        for (int slot = 0; slot < MARKERS.size(); slot++) {
+            Marker m = MARKERS.get(slot);
+            if (!m.isAnchor()) { continue; }
+            IntList markerEdges = new IntList();
+            for (int markerEdge : m.getAttachIds()){
+                if (loaded.indexOf(markerEdge) == Graph.NO_POINT) {
+                    Log.e(TAG, String.format(Locale.ENGLISH,
+                            "Could not assign an edge between marker %s and %d.", m.getImageName(), markerEdge));
+                } else {
+                    markerEdges.add(markerEdge);
+                }
             }
+            // a marker whose id the map already uses is given another, see Graph.withAttachedPoint()
+            this.markerIds[slot] = attached.unusedId(m.getPoint().getId());
+            attached = attached.withAttachedPoint(m.getPoint(), markerEdges.toArray());
+            anchors++;
         }
+        this.graph = attached;
+        // a hierarchy can only take one attached point, so with more markers we route with A*
+        if (loadedHierarchy != null && anchors == 1) {
+            this.hierarchy = loadedHierarchy.withAttachedPoint(this.graph);
+        }
+        try (Tracer.Span span = trace.child("buildRoomIndex")) { this.roomIndex = RoomIndex.of(this.graph); }
+    }
 
-        // populate graph with edges
-        inputStream = context.getResources().openRawResource(R.raw.edges);
-        JSONEdge[] jsonEdges = gson.fromJson(new InputStreamReader(inputStream), JSONEdge[].class);
-        for (JSONEdge e : jsonEdges) {
-            try {
-                navs.get(e.from).addEdge(navs.get(e.to));
-                navs.get(e.to).addEdge(navs.get(e.from));
-            } catch (NullPointerException ex) {
-                Log.e(TAG, String.format(Locale.ENGLISH,
-                        "NullPointerException when assigning edges %d and %d.", e.from, e.to));
-            }
+    // builds the scene nodes for every point in the graph, on the main thread
+    private void buildNodes(){
+        this.navs = new NavPoint[graph.size()];
+        for (int j = 0; j < navs.length; j++) {
+            navs[j] = graph.isEntry(j) ? new EntryPoint(graph, j, NAV_COLOR) : new NavPoint(graph, j, NAV_COLOR);
+        }
+        for (String room : graph.getRoomNames()) { entries.put(room, (EntryPoint) navs[graph.indexOfEntry(room)]); }
+        for (NavPoint n : navs) { n.setParent(this); }
+        BoundedRegion[] regions = new BoundedRegion[navs.length];
+        BoundedRegion[] cardRegions = new BoundedRegion[navs.length];
+        for (int j = 0; j < navs.length; j++) {
+            regions[j] = navs[j].getRegion();
+            cardRegions[j] = graph.isEntry(j) ? ((EntryPoint) navs[j]).getCardRegion() : null;
+        }
+        this.visibilityWorker = new VisibilityWorker(graph, regions, cardRegions, VisibilityWorker.ACTIVE_MARGIN, VISIBILITY_THREAD);
+        this.isBuilt = true;
+    }
+
+    // pull the JSON data from nav_points.json, edges.json and entry_points.json
+    private static Graph loadGraphFromJSON(Context context){
+        Graph.Builder builder = Graph.builder();
+        try (Reader entryPoints = openRawReader(context, R.raw.entry_points);
+             Reader navPoints = openRawReader(context, R.raw.nav_points);
+             Reader edges = openRawReader(context, R.raw.edges)) {
+            builder = GraphLoader.load(entryPoints, navPoints, edges);
+        } catch (IOException e) {
+            Log.e(TAG, String.format(Locale.ENGLISH, "Unable to close map json, %s", e));
         }
-        for (int j = 0; j < navs.size(); j++) { navs.valueAt(j).setParent(this); }
+        return builder.build();
+    }
 
+    private static Reader openRawReader(Context context, int id){
+        return new InputStreamReader(context.getResources().openRawResource(id));
     }
 
     // load the models (floor plan, blue and green arrows) -- the floor plan is only needed for debugging, however
-    private void loadModels(Context context){
-        // prepare to generate the menu we use to choose our target
-        LayoutInflater menuInflater = ((AppCompatActivity) context).getLayoutInflater();
-        LinearLayout menuWrapper = new LinearLayout(context);
-        View dvMapWrapper = menuInflater.inflate(R.layout.room_menu,menuWrapper,true);
-        ScrollView roomMenu = dvMapWrapper.findViewById(R.id.dvMenu);
-        ViewGroup roomMenuLayout = (ViewGroup) roomMenu.getChildAt(0);
-
-        // the menu is generated dynamically from the contents of navs
-        for (String room: entries.keySet()){
-            View menuItemWrapper =  menuInflater.inflate(R.layout.menu_item, roomMenuLayout, false);
-            TextView newLine = menuItemWrapper.findViewById(R.id.menuItem);
-            newLine.setText(room);
-            roomMenuLayout.addView(newLine);
-
-            // prepare the room cards that we display in front of every room before passing the models to the relevant EntryPoint objects
-            // it turns out I could have actually made a bunch of the same ViewRenderables and changed the view using makeCopy() and getView()...oh well
-            LayoutInflater roomInflater = ((AppCompatActivity) context).getLayoutInflater();
-            LinearLayout roomCardWrapper = new LinearLayout(context);
-            View roomCard = roomInflater.inflate(R.layout.room_card, roomCardWrapper, true);
-            TextView cardText = roomCard.findViewById(R.id.room_card);
-            cardText.setText(room);
-            ViewRenderable.builder().setView(context, roomCardWrapper).build()
-                    .thenAccept( renderable -> entries.get(room).setCard(renderable))
-                    .exceptionally(e -> {
-                        Log.e(TAG, String.format(Locale.ENGLISH, "Unable to load renderable, %s", e));
-                        return null;
-                    });
-        }
+    private CompletableFuture<Void> loadModels(Context context){
         CompletableFuture<ModelRenderable> mapModelFuture =
                 ModelRenderable.builder()
                         .setSource(context, R.raw.initial)
@@ -276,122 +534,165 @@ public class MapPlan extends Node {
                         .setSource(context, R.raw.green_arrow)
                         .build();
 
-        CompletableFuture<ViewRenderable> roomMenuFuture =
-                ViewRenderable.builder().setView(context, menuWrapper).build();
-
-        CompletableFuture.allOf(mapModelFuture, navArrowFuture, destArrowFuture, roomMenuFuture)
-                .handle(
-                        (aVoid, throwable) -> {
-                            if (throwable != null) {
-                                Log.e(TAG, String.format(Locale.ENGLISH, "Unable to load renderable, %s", throwable));
-                                SnackbarHelper.getInstance().showMessage((AppCompatActivity) context, "Failed to load renderables!");
-                            }
-                            try {
-                                this.mapModel = mapModelFuture.get();
-                                this.navArrow = navArrowFuture.get();
-                                this.destArrow = destArrowFuture.get();
-                                this.roomMenu = roomMenuFuture.get();
-                                this.latch.countDown();
-                            } catch (InterruptedException | ExecutionException ex) {
-                                Log.e(TAG, String.format(Locale.ENGLISH, "Unable to get renderable, %s", ex));
-                                SnackbarHelper.getInstance().showMessage((AppCompatActivity) context, "Failed to get renderables!");
-                            }
-                            return null;
-                        });
-
-        for(int j = 0; j < fadeTextures.length; j++){
-            generateAlphaMaterial(context, j);
-        }
-        MaterialFactory // we set the last fadeTexture to be an opaque one since all the transparent textures are all vaguely transparent
-                .makeOpaqueWithColor(context, NAV_COLOR)
-                .thenAccept( material -> this.fadeTextures[this.fadeTextures.length-1] = material)
-                .exceptionally(e -> {
-                    Log.e(TAG, String.format(Locale.ENGLISH, "Unable to load custom material, %s", e));
-                    return null;
+        return CompletableFuture.allOf(mapModelFuture, navArrowFuture, destArrowFuture)
+                .thenRun(() -> {
+                    this.mapModel = mapModelFuture.join();
+                    this.navArrow = navArrowFuture.join();
+                    this.destArrow = destArrowFuture.join();
+                })
+                .whenComplete((aVoid, throwable) -> {
+                    if (throwable != null) {
+                        Log.e(TAG, String.format(Locale.ENGLISH, "Unable to load renderable, %s", throwable));
+                        SnackbarHelper.getInstance().showMessage((AppCompatActivity) context, "Failed to load renderables!");
+                    }
                 });
+    }
 
-
+    // Start making the opaque material for both arrow colours, since every shown arrow ends up
+    // using one. The other buckets are still made lazily, see FadeMaterials.
+    private CompletableFuture<Void> loadMaterials(){
+        FadeMaterials materials = FadeMaterials.getInstance();
+        return CompletableFuture.allOf(
+                materials.prepare(NAV_COLOR, Visibility.OPAQUE),
+                materials.prepare(DEST_COLOR, Visibility.OPAQUE));
     }
 
-    // this is a separate function so we wouldn't run into concurrency issues running multiple async functions within a loop
-    // also java didn't like me using non final variables inside here
-    private void generateAlphaMaterial(Context context, int matSlot){
-        MaterialFactory
-                .makeTransparentWithColor(context, new Color(NAV_COLOR.r, NAV_COLOR.g, NAV_COLOR.b , (float) matSlot*0.01f))
-                .thenAccept( material -> this.fadeTextures[matSlot] = material)
-                .exceptionally(e -> {
-                    Log.e(TAG, String.format(Locale.ENGLISH, "Unable to load custom material, %s", e));
-                    return null;
+    // Builds the menu we use to choose our target, which needs the room names from the graph. Only
+    // a page of the menu is inflated (see RoomMenu), and room cards are built as the user walks up
+    // to each room rather than here (see RoomCards), so this costs the same however many rooms
+    // there are. This runs on the main thread once the nodes have been built.
+    private CompletableFuture<ViewRenderable> loadMenu(Context context, Tracer.Span trace){
+        Tracer.Span inflation = trace.child("loadMenu");
+        this.roomMenu = new RoomMenu((AppCompatActivity) context, graph.getRoomNames());
+        inflation.end();
+
+        return endWhenDone(trace.child("menuRenderable"), ViewRenderable.builder().setView(context, roomMenu.getView()).build())
+                .whenComplete((menu, throwable) -> {
+                    if (throwable != null) {
+                        Log.e(TAG, String.format(Locale.ENGLISH, "Unable to load the room menu, %s", throwable));
+                        SnackbarHelper.getInstance().showMessage((AppCompatActivity) context, "Failed to load the room menu!");
+                    }
                 });
     }
 
+    // ends the span when the future completes, however it completes
+    private static <T> CompletableFuture<T> endWhenDone(Tracer.Span span, CompletableFuture<T> future){
+        future.whenComplete((result, e) -> span.end());
+        return future;
+    }
+
+    // gives every node its arrow, once both the nodes and the arrow models exist
+    private void applyModels(){
+        for (NavPoint n : navs) { n.setModel(navArrow.makeCopy()); }
+        for (EntryPoint p : entries.values()){ p.setModel(destArrow.makeCopy()); }
+        updateGate.invalidate();
+    }
+
     // setUpModels is supposed to do some last minute processing before we display the menu, but
     // right now only makes all destination arrows point to their room
     private void setUpModels(){
         for(EntryPoint e: entries.values().toArray(new EntryPoint[]{})){ e.pointToRoom(); }
     }
 
-    // This is a helper class which we use to build our SPT (Shortest Path Tree) out of the graph
-    // that we have stored in this.navs
-    private class DijkstraPoint {
-        NavPoint point;
-        DijkstraPoint prev;
-        double dist;
-        private final double INF = 9999;
-
-        private DijkstraPoint(NavPoint point) {
-            this.point = point;
-            this.prev = null;
-            this.dist = INF;
-        }
-        @NonNull
-        public String toString(){
-            return String.format(Locale.ENGLISH, "DijkstraPoint for: %s, Prev: %s, Dist: %f",
-                    this.point.getId(), this.prev, this.dist);
-        }
+    // Closes the corridor between the points with the given ids (from the map json), e.g. for
+    // cleaning or an event. Routes avoid it from now on, and the route on show is found again.
+    public boolean closeCorridor(int fromId, int toId){
+        return this.changeCorridor(fromId, toId, true, Float.NaN);
     }
 
-    private class DijkstraComparator implements Comparator<DijkstraPoint> {
-        @Override
-        public int compare(DijkstraPoint first, DijkstraPoint second){
-//            if (first.dist == second.dist){ return 0;}
-//            if (first.dist < second.dist){ return -1;}
-            return Double.compare(first.dist, second.dist);
+    // Reopens a closed corridor, at whatever cost it had before.
+    public boolean openCorridor(int fromId, int toId){
+        return this.changeCorridor(fromId, toId, false, Float.NaN);
+    }
+
+    // Makes walking the corridor between two points cost the given number of metres (at least its
+    // length), to steer routes away from it without closing it.
+    public boolean setCorridorCost(int fromId, int toId, float cost){
+        return this.changeCorridor(fromId, toId, false, cost);
+    }
+
+    // Routes from originIds[i] to destinationIds[i] (ids from the map json) for every i, spread over
+    // the common ForkJoinPool, e.g. to precompute a kiosk's routes or to see which corridors get the
+    // most use (see BatchRoutes.countEdgeUses()). Corridors are taken as they are when this is
+    // called. Ids that aren't in the map give routes that aren't found.
+    public CompletableFuture<BatchRoutes> routeBatch(int[] originIds, int[] destinationIds){
+        return graphReady.thenApplyAsync(loaded -> this.getBatchRouter(), mainThread)
+                .thenApplyAsync(batch -> batch.route(indicesOf(batch.getGraph(), originIds),
+                        indicesOf(batch.getGraph(), destinationIds)));
+    }
+
+    // The route from every origin to every room, in the order of graph.getRoomNames(): the route
+    // from originIds[i] to room j is number i * (number of rooms) + j.
+    public CompletableFuture<BatchRoutes> routeToEveryRoom(int[] originIds){
+        return graphReady.thenApplyAsync(loaded -> this.getBatchRouter(), mainThread)
+                .thenApplyAsync(batch -> {
+                    Graph g = batch.getGraph();
+                    IntList rooms = new IntList();
+                    for (String room : g.getRoomNames()) { rooms.add(g.indexOfEntry(room)); }
+                    return batch.routeAll(indicesOf(g, originIds), rooms.toArray());
+                });
+    }
+
+    // only on the main thread, where costs change; the batch router is kept until they do
+    private BatchRouter getBatchRouter(){
+        if (this.batchRouter == null || this.batchVersion != costs.getVersion()) {
+            this.batchRouter = new BatchRouter(graph, costs, hierarchy, ForkJoinPool.commonPool());
+            this.batchVersion = costs.getVersion();
         }
+        return this.batchRouter;
     }
-    // Implementation of Dijkstra's algothrim for the graph. Can be made more efficient
-    // by having it stop once the target is found but this allows the user to maybe come back and
-    // choose a different one.
-    private void makeSPT(){
-        // initialise our vertex set and add the root node to it
-        Queue<DijkstraPoint> unexplored = new PriorityQueue<>(new DijkstraComparator());
-        DijkstraPoint rootDijkstra = new DijkstraPoint(navs.valueAt(ROOT_NAV));
-        rootDijkstra.dist = 0;
-        unexplored.add(rootDijkstra);
-        // add the remaining nodes
-        for (int j = 1; j < navs.size(); j++) {
-            NavPoint n = navs.valueAt(j);
-            unexplored.add(new DijkstraPoint(n));
+
+    private static int[] indicesOf(Graph graph, int[] ids){
+        int[] indices = new int[ids.length];
+        for (int j = 0; j < ids.length; j++) { indices[j] = graph.indexOf(ids[j]); }
+        return indices;
+    }
+
+    // The tree is repaired by the DynamicShortestPathTree listening to costs, and routeCache
+    // notices the costs have changed, so all that's left is to show the new route. costs is set
+    // on the loader thread before the trees are listening to it, so we wait for graphReady, which
+    // completes after makeSPT() and publishes all of it to this thread.
+    private boolean changeCorridor(int fromId, int toId, boolean close, float cost){
+        if (!graphReady.isDone() || graphReady.isCompletedExceptionally()) {
+            Log.e(TAG, "Can't change corridors before the map has loaded.");
+            return false;
         }
-        for (DijkstraPoint d: unexplored){
-            this.navToDijkstra.put(d.point, d);
+        int from = graph.indexOf(fromId);
+        int to = graph.indexOf(toId);
+        if (from == Graph.NO_POINT || to == Graph.NO_POINT) {
+            Log.e(TAG, String.format(Locale.ENGLISH, "No corridor between %d and %d.", fromId, toId));
+            return false;
         }
-        while (unexplored.size() > 0){
-            DijkstraPoint current = unexplored.poll();
-
-            for (Edge e : current.point.getEdges()){
-                DijkstraPoint to = this.navToDijkstra.get(e.getTo());
-                if(!unexplored.contains(to)){continue;}
-                double alt = current.dist + e.getDistance();
-                if (alt < to.dist){
-                    to.dist = alt;
-                    to.prev = current;
-                    unexplored.remove(to); // not doing this means the unexplored priority queue loses order
-                    unexplored.add(to);    // it's ugly but does the job for now and a more efficient algorithm will take more time
-                }
+        boolean changed;
+        if (close) {
+            changed = costs.block(from, to);
+        } else if (Float.isNaN(cost)) {
+            changed = costs.unblock(from, to);
+        } else {
+            changed = costs.reweight(from, to, cost);
+        }
+        if (changed && this.targetRoom != null && this.isBuilt) {
+            this.chooseTarget(this.targetRoom);
+        }
+        return changed;
+    }
+
+    // Builds an SPT (Shortest Path Tree) from each anchor marker out of the graph. These cover the
+    // whole graph rather than stopping at a target so that the user can come back and choose a
+    // different one, or scan a different marker. The trees are kept up to date as corridors close
+    // and open, see this.closeCorridor().
+    private void makeSPT(){
+        this.costs = new EdgeCosts(graph);
+        this.router = new Router(graph, costs);
+        this.markerTrees = new ShortestPathTree[MARKERS.size()];
+        for (int slot = 0; slot < MARKERS.size(); slot++) {
+            Marker m = MARKERS.get(slot);
+            if (m.isAnchor()) {
+                markerTrees[slot] = new DynamicShortestPathTree(costs, graph.indexOf(markerIds[slot])).getTree();
             }
         }
+        this.routeCache = new RouteCache(router,
+                hierarchy == null ? null : new HierarchyRouter(hierarchy), ROUTE_CACHE_SIZE);
     }
 
 }
-
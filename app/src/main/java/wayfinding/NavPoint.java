@@ -2,44 +2,44 @@ package wayfinding;
 
 import com.google.ar.sceneform.Node;
 import com.google.ar.sceneform.NodeParent;
-import com.google.ar.sceneform.math.Quaternion;
-import com.google.ar.sceneform.math.Vector3;
-import com.google.ar.sceneform.rendering.Material;
+import com.google.ar.sceneform.rendering.Color;
 
-import java.util.HashSet;
 import java.util.Locale;
-import java.util.Set;
-import java.util.stream.Collectors;
+
+import wayfinding.core.Graph;
 
 class NavPoint extends BoundedNode {
     private static final String TAG = "wayfinder.NavPoint";
-    private static final String STRING_FMT = "%s: id is %d, (x,z) is (%f,%f), edges are %s";
+    private static final String STRING_FMT = "%s: id is %d, (x,z) is (%f,%f)";
     private static final float HOVER_HEIGHT = 0f;
 
+    private final int index; // dense index of this point in the Graph
     private final int id;
     private final float x;
     private final float z;
 
-    private Set<Edge> edges = new HashSet<>();
-
-
-    NavPoint(int id, float x, float z, Material[] fadeTextures){
-        super(fadeTextures);
-        this.id = id;
-        this.x = x;
-        this.z = z;
+    NavPoint(Graph graph, int index, Color color){
+        super(color);
+        this.index = index;
+        this.id = graph.getId(index);
+        this.x = graph.getX(index);
+        this.z = graph.getZ(index);
     }
 
-    NavPoint(JSONPoint jsonPoint, Material[] fadeTextures) { this(jsonPoint.id, jsonPoint.x, jsonPoint.z, fadeTextures); }
-
 
     public void setParent(NodeParent parent){
         super.setParent(parent);
-        this.setLocalPosition(new Vector3(-this.x, HOVER_HEIGHT, -this.z)); // inverse of the initial translation of the map node
+        this.setPlacement(-this.x, HOVER_HEIGHT, -this.z); // inverse of the initial translation of the map node
     }
 
     void setRotation(float degrees){
-        this.setLocalRotation(Quaternion.axisAngle(new Vector3(0f, 1f, 0), degrees));
+        this.setYaw(degrees);
+    }
+
+    // applies a frame's buckets for this point and its child (see VisibilityWorker), which plain
+    // nav points don't have
+    void apply(int bucket, int childBucket){
+        this.apply(bucket);
     }
 
     protected String getNodeString(){ return super.toString(); }
@@ -47,15 +47,10 @@ class NavPoint extends BoundedNode {
     @Override
     public String toString(){
         return String.format(Locale.ENGLISH, STRING_FMT,
-            TAG, this.id, this.x, this.z,
-            this.edges.stream().map(Edge::toString).collect(Collectors.joining("|")));
-    }
-
-    void addEdge(NavPoint to){
-        this.edges.add(new Edge(this, to));
+            TAG, this.id, this.x, this.z);
     }
-    Edge[] getEdges(){ return this.edges.toArray(new Edge[]{}); }
 
+    public int getIndex(){ return this.index; }
     public int getId(){ return this.id; }
     public float getX(){ return this.x; }
     public float getZ(){ return this.z; }
@@ -0,0 +1,92 @@
+package wayfinding;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import com.google.ar.sceneform.rendering.ViewRenderable;
+import com.google.ar.sceneform.samples.augmentedimage.R;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Gives room cards to the entry points near the camera and takes them back as it moves away, so
+ * only a handful of cards exist at a time rather than one per room. Cards that are taken back are
+ * kept (up to MAX_SPARE_CARDS) and relabelled for the next entry point that needs one, so walking
+ * round a venue mostly doesn't build new ViewRenderables at all. Only used on the main thread.
+ */
+class RoomCards {
+    private static final String TAG = "wayfinder.RoomCards";
+    private static final int MAX_SPARE_CARDS = 8;
+
+    private final Context context;
+    private final Runnable onCardReady; // a bound card only shows once the nodes are next updated
+    private final ArrayDeque<ViewRenderable> spare = new ArrayDeque<>();
+    private final Set<EntryPoint> building = new HashSet<>(); // waiting on a new card
+
+    RoomCards(Context context, Runnable onCardReady){
+        this.context = context;
+        this.onCardReady = onCardReady;
+    }
+
+    // Makes sure the entry point has a card, relabelling a spare one if there is one. Entry points
+    // that already have a card (or are waiting for one) are left alone, so this is cheap to call
+    // every frame.
+    void show(EntryPoint entry){
+        entry.setWantsCard(true);
+        if (entry.getCard() != null || this.building.contains(entry)) {
+            return;
+        }
+        ViewRenderable card = this.spare.poll();
+        if (card != null) {
+            bind(card, entry);
+            this.onCardReady.run();
+            return;
+        }
+        this.building.add(entry);
+        LinearLayout wrapper = new LinearLayout(this.context);
+        LayoutInflater.from(this.context).inflate(R.layout.room_card, wrapper, true);
+        ViewRenderable.builder().setView(this.context, wrapper).build()
+                .thenAccept(made -> {
+                    this.building.remove(entry);
+                    if (entry.wantsCard()) {
+                        bind(made, entry);
+                        this.onCardReady.run();
+                    } else {
+                        this.recycle(made);
+                    }
+                })
+                .exceptionally(e -> {
+                    this.building.remove(entry);
+                    Log.e(TAG, String.format(Locale.ENGLISH, "Unable to load renderable, %s", e));
+                    return null;
+                });
+    }
+
+    // takes the entry point's card back, if it has one
+    void release(EntryPoint entry){
+        entry.setWantsCard(false);
+        ViewRenderable card = entry.getCard();
+        if (card != null) {
+            entry.setCard(null);
+            this.recycle(card);
+        }
+    }
+
+    private void recycle(ViewRenderable card){
+        if (this.spare.size() < MAX_SPARE_CARDS) {
+            this.spare.add(card);
+        }
+    }
+
+    // the card's view is room_card.xml in a LinearLayout, see BoundedNode.setOpacity()
+    private static void bind(ViewRenderable card, EntryPoint entry){
+        ((TextView) ((LinearLayout) card.getView()).getChildAt(0)).setText(entry.getRoomName());
+        entry.setCard(card);
+    }
+}
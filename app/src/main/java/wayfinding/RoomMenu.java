@@ -0,0 +1,76 @@
+package wayfinding;
+
+import android.support.v7.app.AppCompatActivity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import com.google.ar.sceneform.samples.augmentedimage.R;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The menu we choose our target from, a page of rooms at a time. Only one page of menu_items is
+ * ever inflated however many rooms the venue has: turning the page just rebinds their text, and
+ * the ViewRenderable showing the menu redraws it. Each item still calls chooseTarget on the
+ * activity with its text when tapped, see menu_item.xml. Only used on the main thread.
+ */
+class RoomMenu {
+    private static final int PAGE_SIZE = 5; // as many menu_items as fit above the page buttons
+
+    private final List<String> rooms;
+    private final LinearLayout view;
+    private final TextView[] items = new TextView[PAGE_SIZE];
+    private final View previous;
+    private final View next;
+    private final TextView pageLabel;
+    private int page = 0;
+
+    RoomMenu(AppCompatActivity activity, Iterable<String> roomNames){
+        this.rooms = new ArrayList<>();
+        for (String room : roomNames) { this.rooms.add(room); }
+        Collections.sort(this.rooms, String.CASE_INSENSITIVE_ORDER);
+
+        LayoutInflater inflater = activity.getLayoutInflater();
+        this.view = new LinearLayout(activity);
+        View menu = inflater.inflate(R.layout.room_menu, this.view, true);
+        ViewGroup itemLayout = menu.findViewById(R.id.menuItems);
+        for (int j = 0; j < PAGE_SIZE; j++) {
+            this.items[j] = (TextView) inflater.inflate(R.layout.menu_item, itemLayout, false);
+            itemLayout.addView(this.items[j]);
+        }
+        this.previous = menu.findViewById(R.id.menuPrevious);
+        this.next = menu.findViewById(R.id.menuNext);
+        this.pageLabel = menu.findViewById(R.id.menuPage);
+        this.previous.setOnClickListener(v -> this.showPage(this.page - 1));
+        this.next.setOnClickListener(v -> this.showPage(this.page + 1));
+        this.showPage(0);
+    }
+
+    // the view to build the menu's ViewRenderable from
+    View getView(){ return this.view; }
+
+    int getPageCount(){ return Math.max(1, (this.rooms.size() + PAGE_SIZE - 1) / PAGE_SIZE); }
+
+    // binds the items to the given page's rooms, clamped to the pages there are
+    void showPage(int page){
+        this.page = Math.max(0, Math.min(page, this.getPageCount() - 1));
+        for (int j = 0; j < PAGE_SIZE; j++) {
+            int r = this.page * PAGE_SIZE + j;
+            if (r < this.rooms.size()) {
+                this.items[j].setText(this.rooms.get(r));
+                this.items[j].setVisibility(View.VISIBLE);
+            } else {
+                this.items[j].setVisibility(View.INVISIBLE);
+            }
+        }
+        this.previous.setEnabled(this.page > 0);
+        this.next.setEnabled(this.page + 1 < this.getPageCount());
+        this.pageLabel.setText(String.format(Locale.ENGLISH, "%d / %d", this.page + 1, this.getPageCount()));
+    }
+}
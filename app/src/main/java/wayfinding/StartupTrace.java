@@ -0,0 +1,66 @@
+package wayfinding;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import wayfinding.core.Tracer;
+
+/**
+ * The process wide trace of how long startup takes (loading the map, building the scene nodes and
+ * menu, loading models and materials, and the image database). export() logs the summary and
+ * writes it to TRACE_FILE in the app's external files directory, which can be pulled off the device
+ * without root, e.g. adb pull /sdcard/Android/data/[package]/files/startup_trace.txt
+ */
+public final class StartupTrace {
+    private static final String TAG = "wayfinder.StartupTrace";
+    private static final StartupTrace THE_INSTANCE = new StartupTrace();
+    private static final String TRACE_FILE = "startup_trace.txt";
+
+    // exports are written one at a time, in order, and never on the caller's thread (which is
+    // often the main thread while the AR session starts)
+    private static final Executor WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "wayfinder-startup-trace");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Tracer tracer = new Tracer();
+
+    public static StartupTrace getInstance() {
+        return THE_INSTANCE;
+    }
+
+    public Tracer.Span begin(String name) {
+        return this.tracer.begin(name);
+    }
+
+    // Logs the trace so far and overwrites the trace file with it, in the background. Startup
+    // finishes in more than one place (the map and the image database are independent), so each
+    // calls this when it's done and the last one leaves the whole trace behind.
+    public void export(Context context) {
+        Context appContext = context.getApplicationContext();
+        WRITER.execute(() -> write(appContext, this.tracer.summary())); // the latest trace as it's written
+    }
+
+    private static void write(Context context, String summary) {
+        for (String line : summary.split("\n")) { Log.i(TAG, line); }
+
+        File dir = context.getExternalFilesDir(null);
+        File file = new File(dir != null ? dir : context.getFilesDir(), TRACE_FILE);
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"))) {
+            out.write(summary);
+        } catch (IOException e) {
+            Log.e(TAG, String.format(Locale.ENGLISH, "Unable to write %s, %s", file, e));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package wayfinding.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import wayfinding.core.BatchRouter;
+import wayfinding.core.BatchRoutes;
+import wayfinding.core.Graph;
+import wayfinding.core.IntList;
+import wayfinding.core.SyntheticVenue;
+
+/**
+ * A batch of random point-to-point routes, and every route from a handful of origins to every
+ * room, through a BatchRouter on a pool of the given number of threads. Comparing thread counts
+ * shows how well batches scale; one thread is the same work as that many RoutingBenchmark.route
+ * calls in a row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBenchmark {
+    private static final int PAIRS = 4096;
+    private static final int ORIGINS = 16;
+
+    @Param({"10000", "100000"})
+    public int points;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private BatchRouter router;
+    private final int[] origins = new int[PAIRS];
+    private final int[] destinations = new int[PAIRS];
+    private int[] rooms;
+
+    @Setup
+    public void setUp() {
+        Graph graph = SyntheticVenue.generate(this.points, 1).toGraph();
+        this.pool = new ForkJoinPool(this.threads);
+        this.router = new BatchRouter(graph, null, null, this.pool);
+        Random random = new Random(2);
+        for (int q = 0; q < PAIRS; q++) {
+            this.origins[q] = random.nextInt(graph.size());
+            this.destinations[q] = random.nextInt(graph.size());
+        }
+        IntList rooms = new IntList();
+        for (String room : graph.getRoomNames()) { rooms.add(graph.indexOfEntry(room)); }
+        this.rooms = rooms.toArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    @Benchmark
+    public BatchRoutes route() {
+        return this.router.route(this.origins, this.destinations);
+    }
+
+    @Benchmark
+    public BatchRoutes routeAll() {
+        int[] origins = new int[ORIGINS];
+        System.arraycopy(this.origins, 0, origins, 0, ORIGINS);
+        return this.router.routeAll(origins, this.rooms);
+    }
+}
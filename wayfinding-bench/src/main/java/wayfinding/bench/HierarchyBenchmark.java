@@ -0,0 +1,66 @@
+package wayfinding.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import wayfinding.core.ContractionHierarchy;
+import wayfinding.core.Graph;
+import wayfinding.core.HierarchyRouter;
+import wayfinding.core.Route;
+import wayfinding.core.SyntheticVenue;
+
+/**
+ * Point-to-point queries through a contraction hierarchy, over the same venues and random pairs
+ * as RoutingBenchmark.route so the two can be compared. The hierarchy is built in the setup, which
+ * takes a while for the biggest venues (MapCompiler does it once at build time).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HierarchyBenchmark {
+    private static final int QUERIES = 1024; // a power of two, see next()
+
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public int points;
+
+    private HierarchyRouter router;
+    private final int[] origins = new int[QUERIES];
+    private final int[] destinations = new int[QUERIES];
+    private int query = 0;
+
+    @Setup
+    public void setUp() {
+        Graph graph = SyntheticVenue.generate(this.points, 1).toGraph();
+        this.router = new HierarchyRouter(ContractionHierarchy.build(graph));
+        Random random = new Random(2);
+        for (int q = 0; q < QUERIES; q++) {
+            this.origins[q] = random.nextInt(graph.size());
+            this.destinations[q] = random.nextInt(graph.size());
+        }
+    }
+
+    @Benchmark
+    public Route route() {
+        int q = this.next();
+        return this.router.route(this.origins[q], this.destinations[q]);
+    }
+
+    private int next() {
+        return this.query++ & (QUERIES - 1);
+    }
+}
@@ -0,0 +1,70 @@
+package wayfinding.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import wayfinding.core.Graph;
+import wayfinding.core.GraphLoader;
+import wayfinding.core.MapFile;
+import wayfinding.core.SyntheticVenue;
+
+/**
+ * How long it takes to get a venue into memory: parsing the three json files (what MapPlan falls
+ * back to), reading a compiled map (what it does normally) and laying out a graph from points and
+ * edges that are already parsed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public int points;
+
+    private SyntheticVenue venue;
+    private String entryPoints;
+    private String navPoints;
+    private String edges;
+    private ByteBuffer compiled;
+
+    @Setup
+    public void setUp() {
+        this.venue = SyntheticVenue.generate(this.points, 1);
+        this.entryPoints = this.venue.entryPointsJson();
+        this.navPoints = this.venue.navPointsJson();
+        this.edges = this.venue.edgesJson();
+        this.compiled = this.venue.toMapFile();
+    }
+
+    @Benchmark
+    public Graph loadJson() {
+        return GraphLoader.load(new StringReader(this.entryPoints), new StringReader(this.navPoints),
+                new StringReader(this.edges)).build();
+    }
+
+    @Benchmark
+    public Graph readCompiled() throws IOException {
+        return MapFile.read(this.compiled);
+    }
+
+    @Benchmark
+    public Graph buildGraph() {
+        return this.venue.toGraph();
+    }
+}
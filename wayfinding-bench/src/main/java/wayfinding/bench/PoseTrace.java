@@ -0,0 +1,117 @@
+package wayfinding.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import wayfinding.core.Graph;
+
+/**
+ * A camera path to replay, one (x,z) position in map space per frame. Traces are either read from
+ * a csv file with a "millis,x,z" line per frame (blank lines and lines starting with # are
+ * skipped), or made up by walk(), which walks a path through a graph at walking pace.
+ */
+final class PoseTrace {
+    private static final float WALKING_SPEED = 1.4f; // metres per second
+    private static final float SWAY = 0.15f; // metres either side of the path
+    private static final float DWELL_SECONDS = 2f; // time spent standing at the end of a walk
+
+    private final long[] millis;
+    private final float[] xs;
+    private final float[] zs;
+
+    private PoseTrace(long[] millis, float[] xs, float[] zs) {
+        this.millis = millis;
+        this.xs = xs;
+        this.zs = zs;
+    }
+
+    int size() { return this.xs.length; }
+    long getMillis(int frame) { return this.millis[frame]; }
+    float getX(int frame) { return this.xs[frame]; }
+    float getZ(int frame) { return this.zs[frame]; }
+
+    static PoseTrace read(Path csv) throws IOException {
+        long[] millis = new long[1024];
+        float[] xs = new float[1024];
+        float[] zs = new float[1024];
+        int n = 0;
+        try (BufferedReader reader = Files.newBufferedReader(csv, Charset.forName("UTF-8"))) {
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) { continue; }
+                String[] fields = line.split(",");
+                if (fields.length < 3) {
+                    throw new IOException(String.format(Locale.ENGLISH, "%s:%d: expected millis,x,z", csv, lineNumber));
+                }
+                if (n == xs.length) {
+                    millis = Arrays.copyOf(millis, 2 * n);
+                    xs = Arrays.copyOf(xs, 2 * n);
+                    zs = Arrays.copyOf(zs, 2 * n);
+                }
+                try {
+                    millis[n] = Long.parseLong(fields[0].trim());
+                    xs[n] = Float.parseFloat(fields[1].trim());
+                    zs[n] = Float.parseFloat(fields[2].trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException(String.format(Locale.ENGLISH, "%s:%d: %s", csv, lineNumber, e.getMessage()));
+                }
+                n++;
+            }
+        }
+        return new PoseTrace(Arrays.copyOf(millis, n), Arrays.copyOf(xs, n), Arrays.copyOf(zs, n));
+    }
+
+    // Walks the path (graph indices) at walking pace, swaying from side to side a little, then
+    // stands at the end for a couple of seconds.
+    static PoseTrace walk(Graph graph, int[] path, float fps, long seed) {
+        float step = WALKING_SPEED / fps;
+        float length = 0;
+        for (int j = 1; j < path.length; j++) { length += distance(graph, path[j - 1], path[j]); }
+        int frames = (int) (length / step) + (int) (DWELL_SECONDS * fps) + 1;
+
+        long[] millis = new long[frames];
+        float[] xs = new float[frames];
+        float[] zs = new float[frames];
+        Random random = new Random(seed);
+        float phase = random.nextFloat() * 6.28f;
+        int leg = 1;
+        float along = 0; // metres along the current leg
+        for (int f = 0; f < frames; f++) {
+            millis[f] = (long) (f * 1000 / fps);
+            while (leg < path.length && along > distance(graph, path[leg - 1], path[leg])) {
+                along -= distance(graph, path[leg - 1], path[leg]);
+                leg++;
+            }
+            if (leg >= path.length) { // at the end, just stand there
+                xs[f] = graph.getX(path[path.length - 1]);
+                zs[f] = graph.getZ(path[path.length - 1]);
+                continue;
+            }
+            int from = path[leg - 1];
+            int to = path[leg];
+            float d = distance(graph, from, to);
+            float t = d == 0 ? 1 : along / d;
+            float dx = (graph.getX(to) - graph.getX(from)) / Math.max(d, 1e-6f);
+            float dz = (graph.getZ(to) - graph.getZ(from)) / Math.max(d, 1e-6f);
+            float sway = SWAY * (float) Math.sin(phase + f * 2 * Math.PI / fps); // a step a second
+            xs[f] = graph.getX(from) + t * (graph.getX(to) - graph.getX(from)) - dz * sway;
+            zs[f] = graph.getZ(from) + t * (graph.getZ(to) - graph.getZ(from)) + dx * sway;
+            along += step;
+        }
+        return new PoseTrace(millis, xs, zs);
+    }
+
+    private static float distance(Graph graph, int from, int to) {
+        float dx = graph.getX(to) - graph.getX(from);
+        float dz = graph.getZ(to) - graph.getZ(from);
+        return (float) Math.sqrt(dx * dx + dz * dz);
+    }
+}
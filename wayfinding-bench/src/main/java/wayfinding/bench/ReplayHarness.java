@@ -0,0 +1,194 @@
+package wayfinding.bench;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+import wayfinding.core.Graph;
+import wayfinding.core.GraphLoader;
+import wayfinding.core.Histogram;
+import wayfinding.core.MapFile;
+import wayfinding.core.MetricsRegistry;
+import wayfinding.core.ResolvedRoute;
+import wayfinding.core.RouteCache;
+import wayfinding.core.Router;
+import wayfinding.core.ShortestPathTree;
+import wayfinding.core.SyntheticVenue;
+import wayfinding.core.UpdateCounters;
+import wayfinding.core.UpdateGate;
+
+/**
+ * Replays a camera trace through the per-frame visibility and opacity pipeline off-device, against
+ * a {@link ReplayScene}, and reports what each frame cost, how many nodes changed state and how
+ * much the frame loop allocated (which should be nothing). Run it with
+ *
+ * <pre>
+ *   ./gradlew :wayfinding-bench:replay -PreplayArgs='--json app/src/main/res/raw --trace walk.csv'
+ * </pre>
+ *
+ * Options:
+ * <pre>
+ *   --points N       replay over a synthetic venue of at least N points (the default, 10000)
+ *   --map FILE       replay over a compiled map
+ *   --json DIR       replay over the map json (entry_points.json, nav_points.json, edges.json) in DIR
+ *   --trace FILE     replay a recorded "millis,x,z" trace, otherwise walk to the room
+ *   --room NAME      the room to show the route to (defaults to the furthest from the start)
+ *   --passes N       how many times to replay the trace after a warm up pass (default 5)
+ *   --gate T,R,RATE  skip frames like MapPlan.update() does, see UpdateGate (metres, degrees,
+ *                    updates a second), e.g. 0.05,2,30; by default every frame updates
+ * </pre>
+ */
+public final class ReplayHarness {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final float FPS = 60;
+
+    private ReplayHarness() {}
+
+    public static void main(String[] args) throws IOException {
+        int points = 10000;
+        String map = null;
+        String json = null;
+        String trace = null;
+        String room = null;
+        int passes = 5;
+        UpdateGate gate = null;
+        for (int a = 0; a + 1 < args.length; a += 2) {
+            switch (args[a]) {
+                case "--points": points = Integer.parseInt(args[a + 1]); break;
+                case "--map": map = args[a + 1]; break;
+                case "--json": json = args[a + 1]; break;
+                case "--trace": trace = args[a + 1]; break;
+                case "--room": room = args[a + 1]; break;
+                case "--passes": passes = Integer.parseInt(args[a + 1]); break;
+                case "--gate": gate = parseGate(args[a + 1]); break;
+                default:
+                    System.err.println("unknown option " + args[a]);
+                    System.exit(2);
+            }
+        }
+
+        Graph graph = map != null ? readMap(Paths.get(map))
+                : json != null ? readJson(Paths.get(json))
+                : SyntheticVenue.generate(points, 1).toGraph();
+        Router router = new Router(graph);
+        PoseTrace poses = trace != null ? PoseTrace.read(Paths.get(trace)) : null;
+        int origin = poses != null && poses.size() > 0 ? graph.nearestPoint(poses.getX(0), poses.getZ(0)) : 0;
+        int destination = room != null ? graph.indexOfEntry(room) : furthestEntry(graph, router.shortestPathTree(origin));
+        if (destination == Graph.NO_POINT) {
+            System.err.println("no such room " + room);
+            System.exit(2);
+        }
+        ResolvedRoute route = new RouteCache(router, 1).route(origin, destination);
+        if (poses == null) {
+            poses = PoseTrace.walk(graph, route.getRoute().toArray(), FPS, 1);
+        }
+
+        ReplayScene scene = new ReplayScene(graph);
+        scene.setGate(gate);
+        scene.showPath(route);
+        long passMillis = poses.getMillis(poses.size() - 1) + (long) (1000 / FPS); // passes follow on in time
+        replay(scene, poses, 0, null, null); // warm up, so the measured passes are jit compiled
+
+        MetricsRegistry metrics = new MetricsRegistry();
+        Histogram frameNanos = metrics.histogram("frame (ns)");
+        Histogram evaluated = metrics.histogram("nodes evaluated");
+        Histogram renderableSwaps = metrics.histogram("renderable swaps");
+        Histogram materialSwaps = metrics.histogram("material swaps");
+        Histogram[] perFrame = new Histogram[] {evaluated, renderableSwaps, materialSwaps};
+        long before = allocatedBytes();
+        long skippedBefore = scene.getCounters().getSkippedFrames();
+        for (int pass = 0; pass < passes; pass++) {
+            replay(scene, poses, (pass + 1) * passMillis, frameNanos, perFrame);
+        }
+        long skipped = scene.getCounters().getSkippedFrames() - skippedBefore;
+        long allocated = before < 0 ? -1 : allocatedBytes() - before;
+
+        System.out.println(String.format(Locale.ENGLISH,
+                "replayed %d frames (%d passes) over %d points, route of %d points to %s",
+                poses.size() * passes, passes, graph.size(), route.size(), graph.getRoomName(destination)));
+        System.out.print(metrics.summary());
+        if (gate != null) {
+            System.out.println(String.format(Locale.ENGLISH, "gated: %d of %d frames skipped",
+                    skipped, poses.size() * passes));
+        }
+        System.out.println(allocated < 0 ? "allocations: not available on this jvm" : String.format(Locale.ENGLISH,
+                "allocations: %d bytes, %.2f bytes per frame", allocated, (double) allocated / (poses.size() * passes)));
+    }
+
+    // Plays every pose through the scene, recording each frame's duration and its share of the
+    // scene's counters if histograms are given. This is the measured loop, so it mustn't allocate.
+    private static void replay(ReplayScene scene, PoseTrace poses, long startMillis, Histogram frameNanos, Histogram[] perFrame) {
+        UpdateCounters counters = scene.getCounters();
+        for (int f = 0; f < poses.size(); f++) {
+            long evaluated = counters.getNodesEvaluated();
+            long renderableSwaps = counters.getRenderableSwaps();
+            long materialSwaps = counters.getMaterialSwaps();
+            long start = System.nanoTime();
+            scene.frame((startMillis + poses.getMillis(f)) * 1000000, poses.getX(f), poses.getZ(f));
+            long took = System.nanoTime() - start;
+            if (frameNanos != null) {
+                frameNanos.record(took);
+                perFrame[0].record(counters.getNodesEvaluated() - evaluated);
+                perFrame[1].record(counters.getRenderableSwaps() - renderableSwaps);
+                perFrame[2].record(counters.getMaterialSwaps() - materialSwaps);
+            }
+        }
+    }
+
+    // "minTranslation,minRotation,maxRate"
+    private static UpdateGate parseGate(String spec) {
+        String[] parts = spec.split(",");
+        if (parts.length != 3) {
+            System.err.println("--gate takes metres,degrees,rate");
+            System.exit(2);
+        }
+        return new UpdateGate(Float.parseFloat(parts[0]), Float.parseFloat(parts[1]), Float.parseFloat(parts[2]));
+    }
+
+    // the room whose entry point is furthest (but still reachable) from the tree's root
+    private static int furthestEntry(Graph graph, ShortestPathTree tree) {
+        int furthest = Graph.NO_POINT;
+        for (String name : graph.getRoomNames()) {
+            int entry = graph.indexOfEntry(name);
+            if (tree.isReachable(entry) && (furthest == Graph.NO_POINT || tree.distanceTo(entry) > tree.distanceTo(furthest))) {
+                furthest = entry;
+            }
+        }
+        return furthest;
+    }
+
+    // bytes allocated by this thread so far, or -1 if the jvm can't tell us
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static Graph readMap(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            return MapFile.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static Graph readJson(Path dir) throws IOException {
+        try (Reader entryPoints = open(dir.resolve("entry_points.json"));
+             Reader navPoints = open(dir.resolve("nav_points.json"));
+             Reader edges = open(dir.resolve("edges.json"))) {
+            return GraphLoader.load(entryPoints, navPoints, edges).build();
+        }
+    }
+
+    private static Reader open(Path path) throws IOException {
+        return new InputStreamReader(Files.newInputStream(path), UTF_8);
+    }
+}
@@ -0,0 +1,120 @@
+package wayfinding.bench;
+
+import wayfinding.core.BoundedRegion;
+import wayfinding.core.Graph;
+import wayfinding.core.ResolvedRoute;
+import wayfinding.core.UpdateCounters;
+import wayfinding.core.UpdateGate;
+import wayfinding.core.Visibility;
+import wayfinding.core.VisibilityWorker;
+
+/**
+ * A stand in for MapPlan's scene with no Sceneform behind it: a node per point of the graph (and a
+ * room card per entry point) with the same bounds and placement the app gives them, updated from
+ * a {@link VisibilityWorker} each frame. The worker runs its jobs on the calling thread here, so
+ * each frame applies its own results rather than the last frame's. Each node counts the renderable
+ * and material changes BoundedNode would make, assuming every material is already loaded.
+ */
+final class ReplayScene {
+    private final Graph graph;
+    private final StubNode[] nodes;
+    private final StubNode[] cards; // null for points that aren't entry points
+    private final VisibilityWorker worker;
+    private final UpdateCounters counters = new UpdateCounters();
+    private UpdateGate gate; // null to update every frame
+
+    ReplayScene(Graph graph) {
+        this.graph = graph;
+        this.nodes = new StubNode[graph.size()];
+        this.cards = new StubNode[graph.size()];
+        BoundedRegion[] regions = new BoundedRegion[graph.size()];
+        BoundedRegion[] cardRegions = new BoundedRegion[graph.size()];
+        for (int i = 0; i < graph.size(); i++) {
+            StubNode node = new StubNode(BoundedRegion.navPoint());
+            node.region.setPlacement(-graph.getX(i), -graph.getZ(i)); // see NavPoint.setParent()
+            if (graph.isEntry(i)) {
+                node.region.setYaw(graph.getAngleIn(i)); // see EntryPoint.pointToRoom()
+                StubNode card = new StubNode(BoundedRegion.roomCard());
+                card.region.setVisible(true);
+                this.cards[i] = card;
+                cardRegions[i] = card.region;
+            }
+            this.nodes[i] = node;
+            regions[i] = node.region;
+        }
+        this.worker = new VisibilityWorker(graph, regions, cardRegions, VisibilityWorker.ACTIVE_MARGIN, Runnable::run);
+    }
+
+    UpdateCounters getCounters() { return this.counters; }
+
+    // gates frames the way MapPlan.update() does, or not at all if null
+    void setGate(UpdateGate gate) { this.gate = gate; }
+
+    // shows the arrows along the route the way MapPlan.chooseTarget() does
+    void showPath(ResolvedRoute route) {
+        for (StubNode node : this.nodes) { node.region.setVisible(false); }
+        if (this.gate != null) { this.gate.invalidate(); }
+        if (!route.isFound()) {
+            return;
+        }
+        StubNode target = this.nodes[route.pointAt(route.size() - 1)];
+        target.region.setVisible(true);
+        target.appliedBucket = Visibility.HIDDEN; // changeColor() forgets the applied material
+        for (int j = 0; j + 1 < route.size(); j++) {
+            StubNode prev = this.nodes[route.pointAt(j)];
+            prev.region.setYaw(route.bearingAt(j));
+            prev.region.setVisible(true);
+        }
+    }
+
+    // one frame of MapPlan.update() with the camera at (x,z) in map space at time nanos. The trace
+    // has no camera direction, so a gate only sees movement.
+    void frame(long nanos, float x, float z) {
+        if (this.gate != null && !this.gate.shouldUpdate(nanos, x, 0, z, 0, 0, 0)) {
+            this.counters.countSkippedFrame();
+            return;
+        }
+        // MapPlan's local space is the map flipped, see NavPoint.setParent()
+        this.worker.submit(x, z, -x, -z);
+        VisibilityWorker.Frame frame = this.worker.poll();
+        for (int j = 0; j < frame.size(); j++) {
+            int i = frame.pointAt(j);
+            this.nodes[i].apply(frame.bucketAt(j));
+            if (this.cards[i] != null) {
+                this.cards[i].apply(frame.childBucketAt(j));
+            }
+        }
+        this.counters.countFrame();
+    }
+
+    // the part of BoundedNode.apply() that decides what to hand to Sceneform
+    private final class StubNode {
+        final BoundedRegion region;
+        boolean rendered = false;
+        int appliedBucket = Visibility.HIDDEN;
+
+        StubNode(BoundedRegion region) {
+            this.region = region;
+        }
+
+        void apply(int bucket) {
+            counters.countEvaluated();
+            if (bucket == Visibility.HIDDEN) {
+                this.show(false);
+                return;
+            }
+            if (bucket != this.appliedBucket) {
+                this.appliedBucket = bucket;
+                counters.countMaterialSwap();
+            }
+            this.show(true);
+        }
+
+        private void show(boolean render) {
+            if (this.rendered != render) {
+                this.rendered = render;
+                counters.countRenderableSwap();
+            }
+        }
+    }
+}
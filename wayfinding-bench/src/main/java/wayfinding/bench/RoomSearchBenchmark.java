@@ -0,0 +1,74 @@
+package wayfinding.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import wayfinding.core.Graph;
+import wayfinding.core.IntList;
+import wayfinding.core.RoomIndex;
+import wayfinding.core.SyntheticVenue;
+
+/**
+ * Searching a venue's rooms as if someone were typing random room names one keystroke at a time,
+ * with a typo in every fourth name, so each query is a prefix of a name (or of a misspelt one).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoomSearchBenchmark {
+    private static final int NAMES = 64;
+    private static final int RESULTS = 8; // about as many as fit on a menu page
+
+    @Param({"1000", "10000", "100000"})
+    public int points;
+
+    private RoomIndex index;
+    private final IntList results = new IntList(RESULTS);
+    private String[] keystrokes;
+    private int query = 0;
+
+    @Setup
+    public void setUp() {
+        Graph graph = SyntheticVenue.generate(this.points, 1).toGraph();
+        this.index = RoomIndex.of(graph);
+        List<String> names = new ArrayList<>();
+        for (String name : graph.getRoomNames()) { names.add(name); }
+        Random random = new Random(2);
+        List<String> keystrokes = new ArrayList<>();
+        for (int q = 0; q < NAMES; q++) {
+            StringBuilder name = new StringBuilder(names.get(random.nextInt(names.size())));
+            if (q % 4 == 0) { // swap two letters
+                int at = 1 + random.nextInt(name.length() - 2);
+                char c = name.charAt(at);
+                name.setCharAt(at, name.charAt(at + 1));
+                name.setCharAt(at + 1, c);
+            }
+            for (int length = 1; length <= name.length(); length++) { keystrokes.add(name.substring(0, length)); }
+        }
+        this.keystrokes = keystrokes.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public int search() {
+        String q = this.keystrokes[this.query];
+        this.query = (this.query + 1) % this.keystrokes.length;
+        return this.index.search(q, RESULTS, this.results);
+    }
+}
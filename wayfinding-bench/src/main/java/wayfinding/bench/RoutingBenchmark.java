@@ -0,0 +1,105 @@
+package wayfinding.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import wayfinding.core.DynamicShortestPathTree;
+import wayfinding.core.EdgeCosts;
+import wayfinding.core.Graph;
+import wayfinding.core.Route;
+import wayfinding.core.Router;
+import wayfinding.core.ShortestPathTree;
+import wayfinding.core.SyntheticVenue;
+
+/**
+ * Routing over a venue: building the shortest path tree from the root (MapPlan.makeSPT), a single
+ * A* query between two random points (MapPlan.findPath from the camera), and walking the tree back
+ * from a random room to get its path (what chooseTarget does with the tree), and closing then
+ * reopening a random corridor with the tree repaired after each (MapPlan.closeCorridor), to compare
+ * with building the tree again. Queries cycle through a fixed set of random pairs so every run does
+ * the same work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+    private static final int QUERIES = 1024; // a power of two, see next()
+
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public int points;
+
+    private Graph graph;
+    private Router router;
+    private int root;
+    private ShortestPathTree spt;
+    private EdgeCosts costs;
+    private DynamicShortestPathTree dynamicTree;
+    private final int[] origins = new int[QUERIES];
+    private final int[] destinations = new int[QUERIES];
+    private int query = 0;
+
+    @Setup
+    public void setUp() {
+        SyntheticVenue venue = SyntheticVenue.generate(this.points, 1);
+        this.graph = venue.toGraph();
+        this.router = new Router(this.graph);
+        this.root = this.graph.indexOf(venue.getRootId());
+        this.spt = this.router.shortestPathTree(this.root);
+        this.costs = new EdgeCosts(this.graph);
+        this.dynamicTree = new DynamicShortestPathTree(this.costs, this.root);
+        Random random = new Random(2);
+        for (int q = 0; q < QUERIES; q++) {
+            this.origins[q] = random.nextInt(this.graph.size());
+            this.destinations[q] = random.nextInt(this.graph.size());
+        }
+    }
+
+    @Benchmark
+    public ShortestPathTree shortestPathTree() {
+        return this.router.shortestPathTree(this.root);
+    }
+
+    @Benchmark
+    public Route route() {
+        int q = this.next();
+        return this.router.route(this.origins[q], this.destinations[q]);
+    }
+
+    @Benchmark
+    public int[] pathFromTree() {
+        return this.spt.pathTo(this.destinations[this.next()]);
+    }
+
+    @Benchmark
+    public int closeAndReopenCorridor() {
+        int q = this.next();
+        int from = this.origins[q];
+        if (this.graph.firstEdge(from) == this.graph.endEdge(from)) {
+            return 0;
+        }
+        int to = this.graph.edgeTarget(this.graph.firstEdge(from));
+        this.costs.block(from, to);
+        int repaired = this.dynamicTree.getLastRepairSize();
+        this.costs.unblock(from, to);
+        return repaired + this.dynamicTree.getLastRepairSize();
+    }
+
+    private int next() {
+        return this.query++ & (QUERIES - 1);
+    }
+}
@@ -0,0 +1,60 @@
+package wayfinding.core;
+
+/**
+ * The points of a {@link Graph} whose visible regions could contain the camera, so that only
+ * their nodes need updating each frame. Points join the set within reach + margin of the camera
+ * and leave it beyond reach + 2 * margin, so a user standing on the boundary doesn't make points
+ * flicker in and out of the set. Nothing is allocated once the set has grown to fit.
+ */
+public final class ActiveSet {
+    private final Graph graph;
+    private final float enter;
+    private final float leave;
+    private final boolean[] isActive;
+    private final IntList active = new IntList();
+    private final IntList nearby = new IntList(); // scratch list for spatial queries
+    private final IntList updated = new IntList();
+
+    // reach is the furthest any point's visible region reaches from it
+    public ActiveSet(Graph graph, float reach, float margin) {
+        this.graph = graph;
+        this.enter = reach + margin;
+        this.leave = reach + 2 * margin;
+        this.isActive = new boolean[graph.size()];
+    }
+
+    // Moves the set to the camera at (x,z) in map space and returns the points to update this
+    // frame: everything in the set, plus the points that just left it, which need one last update
+    // to hide them. The returned list is reused by the next call.
+    public IntList update(float x, float z) {
+        this.nearby.clear();
+        this.graph.getSpatialIndex().withinRadius(x, z, this.enter, this.nearby);
+        for (int j = 0; j < this.nearby.size(); j++) {
+            int i = this.nearby.get(j);
+            if (!this.isActive[i]) {
+                this.isActive[i] = true;
+                this.active.add(i);
+            }
+        }
+
+        this.updated.clear();
+        int kept = 0;
+        for (int j = 0; j < this.active.size(); j++) {
+            int i = this.active.get(j);
+            this.updated.add(i);
+            float dx = this.graph.getX(i) - x;
+            float dz = this.graph.getZ(i) - z;
+            if (dx * dx + dz * dz > this.leave * this.leave) {
+                this.isActive[i] = false;
+            } else {
+                this.active.set(kept++, i);
+            }
+        }
+        this.active.truncate(kept);
+        return this.updated;
+    }
+
+    public int size() { return this.active.size(); }
+
+    public boolean contains(int index) { return this.isActive[index]; }
+}
@@ -0,0 +1,194 @@
+package wayfinding.core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Routes thousands of (origin, destination) pairs at once across a ForkJoinPool, e.g. to
+ * precompute the routes from every marker to every room, or to see which corridors the most
+ * routes use. The queries are split into chunks that the pool's workers steal from each other.
+ * Each chunk borrows a set of search state (a {@link Router}, or a {@link HierarchyRouter} if there
+ * is a hierarchy and no edge costs have changed, and a shortest path tree to refill) from the
+ * BatchRouter and gives it back when it's done. There are never more sets than chunks running at
+ * once, they're reused for as long as the BatchRouter lives, and they go with it rather than
+ * staying behind on the pool's threads. So nothing proportional to the graph is allocated per
+ * query. Results come back as {@link BatchRoutes}.
+ *
+ * A BatchRouter takes a copy of the edge costs it's given, so they can go on changing while a batch
+ * runs; make a new one to route with the new costs. It can be used from any number of threads.
+ */
+public final class BatchRouter {
+    private static final int PAIRS_PER_CHUNK = 64; // small enough to balance, big enough to not matter
+
+    private final Graph graph;
+    private final EdgeCosts costs; // null if the edges cost their lengths
+    private final ContractionHierarchy hierarchy; // null if there isn't one or it doesn't apply
+    private final ForkJoinPool pool;
+    private final ConcurrentLinkedQueue<Searches> idle = new ConcurrentLinkedQueue<>();
+
+    public BatchRouter(Graph graph) { this(graph, null, null, ForkJoinPool.commonPool()); }
+
+    // costs and hierarchy may be null
+    public BatchRouter(Graph graph, EdgeCosts costs, ContractionHierarchy hierarchy, ForkJoinPool pool) {
+        if (costs != null && costs.getGraph() != graph) {
+            throw new IllegalArgumentException("costs are for a different graph");
+        }
+        if (hierarchy != null && hierarchy.getGraph() != graph) {
+            throw new IllegalArgumentException("The hierarchy is for a different graph");
+        }
+        this.graph = graph;
+        this.costs = costs == null || costs.isUnchanged() ? null : costs.copy();
+        this.hierarchy = this.costs == null ? hierarchy : null;
+        this.pool = pool;
+    }
+
+    public Graph getGraph() { return this.graph; }
+
+    // The route from origins[i] to destinations[i] for every i. Points that are NO_POINT give
+    // routes that aren't found.
+    public BatchRoutes route(final int[] origins, final int[] destinations) {
+        if (origins.length != destinations.length) {
+            throw new IllegalArgumentException("There must be as many origins as destinations");
+        }
+        return this.run(origins.length, 1, PAIRS_PER_CHUNK, (unit, searches, points, sizes, lengths) -> {
+            Route route = this.hierarchy != null
+                    ? searches.hierarchyRouter().route(origins[unit], destinations[unit])
+                    : searches.router.route(origins[unit], destinations[unit]);
+            sizes[unit] = add(route, points);
+            lengths[unit] = route.getLength();
+        });
+    }
+
+    // The route from every origin to every destination, origin by origin: the route from
+    // origins[i] to destinations[j] is number i * destinations.length + j. Each origin's routes
+    // are read off one shortest path tree, so this is cheaper than route() for many destinations.
+    public BatchRoutes routeAll(final int[] origins, final int[] destinations) {
+        final int count = destinations.length;
+        return this.run(origins.length, count, 1, (unit, searches, points, sizes, lengths) -> {
+            ShortestPathTree tree = searches.tree(origins[unit]);
+            for (int j = 0; j < count; j++) {
+                int i = unit * count + j;
+                int destination = destinations[j];
+                if (origins[unit] == Graph.NO_POINT || destination == Graph.NO_POINT || !tree.isReachable(destination)) {
+                    sizes[i] = 0;
+                    lengths[i] = Double.POSITIVE_INFINITY;
+                    continue;
+                }
+                int size = 0;
+                int start = points.size();
+                for (int p = destination; p != Graph.NO_POINT; p = tree.prevOf(p)) {
+                    points.add(p);
+                    size++;
+                }
+                reverse(points, start, points.size() - 1);
+                sizes[i] = size;
+                lengths[i] = tree.distanceTo(destination);
+            }
+        });
+    }
+
+    private static int add(Route route, IntList points) {
+        for (int j = 0; j < route.size(); j++) { points.add(route.pointAt(j)); }
+        return route.size();
+    }
+
+    private static void reverse(IntList values, int from, int to) {
+        for (; from < to; from++, to--) {
+            int swap = values.get(from);
+            values.set(from, values.get(to));
+            values.set(to, swap);
+        }
+    }
+
+    // routes the results for one unit of work (a pair, or an origin), see run()
+    private interface Unit {
+        void route(int unit, Searches searches, IntList points, int[] sizes, double[] lengths);
+    }
+
+    private Searches borrow() {
+        Searches searches = this.idle.poll();
+        return searches != null ? searches : new Searches();
+    }
+
+    // one chunk's search state, see the class comment
+    private final class Searches {
+        final Router router = new Router(graph, costs);
+        private HierarchyRouter hierarchyRouter = null;
+        private ShortestPathTree tree = null;
+
+        HierarchyRouter hierarchyRouter() {
+            if (this.hierarchyRouter == null) { this.hierarchyRouter = new HierarchyRouter(hierarchy); }
+            return this.hierarchyRouter;
+        }
+
+        // the shortest path tree from root, over the same arrays as the last one
+        ShortestPathTree tree(int root) {
+            this.tree = this.tree == null ? this.router.shortestPathTree(root) : this.router.shortestPathTree(root, this.tree);
+            return this.tree;
+        }
+    }
+
+    // Splits units 0..units-1 (each giving resultsPerUnit routes) into chunks of at most grain
+    // units, routes them on the pool, and packs the chunks' points together in order.
+    private BatchRoutes run(int units, int resultsPerUnit, int grain, Unit unit) {
+        int results = units * resultsPerUnit;
+        int[] sizes = new int[results];
+        double[] lengths = new double[results];
+        IntList[] chunks = new IntList[units]; // the points routed by the chunk starting at each unit
+        this.pool.invoke(new Chunk(this, unit, 0, units, grain, chunks, sizes, lengths));
+
+        int[] offsets = new int[results + 1];
+        for (int i = 0; i < results; i++) { offsets[i + 1] = offsets[i] + sizes[i]; }
+        int[] points = new int[offsets[results]];
+        for (int u = 0; u < units; u++) {
+            IntList chunk = chunks[u];
+            if (chunk != null) {
+                for (int j = 0; j < chunk.size(); j++) { points[offsets[u * resultsPerUnit] + j] = chunk.get(j); }
+            }
+        }
+        return new BatchRoutes(offsets, points, lengths);
+    }
+
+    private static final class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BatchRouter batch;
+        private final Unit unit;
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final IntList[] chunks;
+        private final int[] sizes;
+        private final double[] lengths;
+
+        Chunk(BatchRouter batch, Unit unit, int from, int to, int grain, IntList[] chunks, int[] sizes, double[] lengths) {
+            this.batch = batch;
+            this.unit = unit;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.chunks = chunks;
+            this.sizes = sizes;
+            this.lengths = lengths;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= this.grain) {
+                IntList points = new IntList(256);
+                Searches searches = this.batch.borrow();
+                try {
+                    for (int u = this.from; u < this.to; u++) { this.unit.route(u, searches, points, this.sizes, this.lengths); }
+                } finally {
+                    this.batch.idle.add(searches);
+                }
+                this.chunks[this.from] = points;
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new Chunk(this.batch, this.unit, this.from, middle, this.grain, this.chunks, this.sizes, this.lengths),
+                    new Chunk(this.batch, this.unit, middle, this.to, this.grain, this.chunks, this.sizes, this.lengths));
+        }
+    }
+}
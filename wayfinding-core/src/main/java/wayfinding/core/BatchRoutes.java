@@ -0,0 +1,54 @@
+package wayfinding.core;
+
+/**
+ * The routes found by a {@link BatchRouter}, in the order they were asked for, packed into flat
+ * primitive arrays: route i is the points getPoints()[getOffsets()[i]] until getOffsets()[i + 1]
+ * (dense graph indices, origin first) and has length getLengths()[i]. A route that couldn't be
+ * found has no points and an infinite length. The arrays are shared rather than copied, so they
+ * mustn't be changed.
+ */
+public final class BatchRoutes {
+    private final int[] offsets;
+    private final int[] points;
+    private final double[] lengths;
+
+    BatchRoutes(int[] offsets, int[] points, double[] lengths) {
+        this.offsets = offsets;
+        this.points = points;
+        this.lengths = lengths;
+    }
+
+    public int size() { return this.lengths.length; }
+
+    public boolean isFound(int i) { return this.offsets[i + 1] > this.offsets[i]; }
+
+    public double getLength(int i) { return this.lengths[i]; }
+
+    // how many points route i goes through
+    public int routeSize(int i) { return this.offsets[i + 1] - this.offsets[i]; }
+
+    public int pointAt(int i, int j) { return this.points[this.offsets[i] + j]; }
+
+    public int[] toArray(int i) {
+        int[] out = new int[this.routeSize(i)];
+        System.arraycopy(this.points, this.offsets[i], out, 0, out.length);
+        return out;
+    }
+
+    public int[] getOffsets() { return this.offsets; }
+    public int[] getPoints() { return this.points; }
+    public double[] getLengths() { return this.lengths; }
+
+    // How many of the routes walk each edge slot of the graph, e.g. to rank how busy corridors
+    // would be if everyone took these routes. Both directions of a corridor are counted apart.
+    public int[] countEdgeUses(Graph graph) {
+        int[] uses = new int[graph.edgeCount()];
+        for (int i = 0; i < this.size(); i++) {
+            for (int p = this.offsets[i]; p + 1 < this.offsets[i + 1]; p++) {
+                int edge = graph.edgeBetween(this.points[p], this.points[p + 1]);
+                if (edge != Graph.NO_EDGE) { uses[edge]++; }
+            }
+        }
+        return uses;
+    }
+}
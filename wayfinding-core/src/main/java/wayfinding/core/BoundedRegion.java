@@ -0,0 +1,136 @@
+package wayfinding.core;
+
+import java.util.List;
+
+/**
+ * Where a bounded node sits (its position and yaw in its parent's space) and the rectangle around
+ * it within which it is visible, see {@link Visibility}. update() takes the camera position in the
+ * parent's space and works out the node's opacity bucket with primitive maths, so this is the
+ * whole per-frame visibility decision for a node without any scene behind it; the app's
+ * BoundedNode and the replay harness both run it.
+ *
+ * The setters can be called while a {@link VisibilityWorker} job is running update() on another
+ * thread, so once a region is attached to a worker they only stage the change, and the worker
+ * publishes it to update() at its next submit(). A job never sees a placement or yaw half written.
+ */
+public final class BoundedRegion {
+    // The bounds the app gives its nodes, see navPoint() and roomCard(). An arrow shows within
+    // NAV_REACH of its point in every direction, and a room card up to CARD_FORWARD in front of
+    // its door (none behind it) and CARD_SIDE to either side.
+    public static final float NAV_REACH = 5;
+    public static final float CARD_FORWARD = 3;
+    public static final float CARD_SIDE = 2;
+
+    // offsets for the region within which the node is visible
+    private final float forward;
+    private final float backward;
+    private final float left;
+    private final float right;
+    private boolean isVisible = false; // whether or not the node will be visible at all
+
+    private float posX = 0;
+    private float posZ = 0;
+    private float yawCos = 1;
+    private float yawSin = 0;
+
+    // what the setters last set, which update() sees once it's published
+    private boolean nextVisible = false;
+    private float nextPosX = 0;
+    private float nextPosZ = 0;
+    private float nextYawCos = 1;
+    private float nextYawSin = 0;
+
+    // the worker's list of regions to publish at its next submit(), null to publish straight away
+    private List<BoundedRegion> changes = null;
+    private boolean isChanged = false; // whether this region is in changes
+
+    // the camera position in the node's local space, as of the last update
+    private float cameraX;
+    private float cameraZ;
+
+    public BoundedRegion(float forward, float backward, float left, float right) {
+        this.forward = forward;
+        this.backward = backward;
+        this.left = left;
+        this.right = right;
+    }
+
+    // the region for a nav point's arrow
+    public static BoundedRegion navPoint() {
+        return new BoundedRegion(NAV_REACH, NAV_REACH, NAV_REACH, NAV_REACH);
+    }
+
+    // the region for an entry point's room card
+    public static BoundedRegion roomCard() {
+        return new BoundedRegion(CARD_FORWARD, 0, CARD_SIDE, CARD_SIDE);
+    }
+
+    public void setVisible(boolean isVisible) {
+        this.nextVisible = isVisible;
+        this.changed();
+    }
+
+    // as last set, whether or not update() has seen it yet
+    public boolean isVisible() { return this.nextVisible; }
+
+    public void setPlacement(float x, float z) {
+        this.nextPosX = x;
+        this.nextPosZ = z;
+        this.changed();
+    }
+
+    // the rotation about the y axis, in degrees
+    public void setYaw(float degrees) {
+        double radians = Math.toRadians(degrees);
+        this.nextYawCos = (float) Math.cos(radians);
+        this.nextYawSin = (float) Math.sin(radians);
+        this.changed();
+    }
+
+    private void changed() {
+        if (this.changes == null) {
+            this.publish();
+        } else if (!this.isChanged) {
+            this.isChanged = true;
+            this.changes.add(this);
+        }
+    }
+
+    // makes the setters' changes visible to update(), see VisibilityWorker.submit()
+    void publish() {
+        this.isVisible = this.nextVisible;
+        this.posX = this.nextPosX;
+        this.posZ = this.nextPosZ;
+        this.yawCos = this.nextYawCos;
+        this.yawSin = this.nextYawSin;
+        this.isChanged = false;
+    }
+
+    // from now on changes wait in the given list to be published
+    void attach(List<BoundedRegion> changes) {
+        this.publish();
+        this.changes = changes;
+    }
+
+    // how far from the node's origin its visible region can reach, in any direction
+    public float getReach() {
+        return (float) Math.hypot(Math.max(this.forward, this.backward), Math.max(this.left, this.right));
+    }
+
+    public float getCameraX() { return this.cameraX; }
+    public float getCameraZ() { return this.cameraZ; }
+
+    // (x,z) is the camera position in the node's parent space. Returns the opacity bucket the node
+    // should be shown at, or Visibility.HIDDEN.
+    public int update(float x, float z) {
+        float dx = x - this.posX;
+        float dz = z - this.posZ;
+        this.cameraX = Visibility.localX(dx, dz, this.yawCos, this.yawSin);
+        this.cameraZ = Visibility.localZ(dx, dz, this.yawCos, this.yawSin);
+        if (!this.isVisible) {
+            return Visibility.HIDDEN;
+        }
+        return Visibility.opacityBucket(this.cameraX, this.cameraZ,
+                this.forward, this.backward, this.left, this.right);
+    }
+}
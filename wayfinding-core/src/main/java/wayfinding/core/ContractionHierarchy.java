@@ -0,0 +1,488 @@
+package wayfinding.core;
+
+import java.util.Arrays;
+
+/**
+ * A contraction hierarchy over a {@link Graph}, for answering point-to-point routes on big venues
+ * in microseconds with a {@link HierarchyRouter}. Points are contracted one at a time, least
+ * important first (by how many shortcuts removing them would need): contracting a point adds a
+ * shortcut between each pair of its remaining neighbours whose shortest path went through it, and
+ * the point's edges to the points still left become its "up" edges (out to more important points)
+ * and "down" edges (in from more important points). Any shortest path is then an up path from the
+ * origin meeting a down path to the destination, which two tiny searches find. Shortcuts remember
+ * the point they skip over so routes can be unpacked back into graph edges. The hierarchy's arrays
+ * are laid out by rank, most important point first, rather than by graph index, so the points at
+ * the top that every query visits sit next to each other in memory.
+ *
+ * Building takes a while (seconds for hundreds of thousands of points), so it's done at build time
+ * by {@link MapCompiler} and stored with the compiled map, see {@link MapFile}. A hierarchy is
+ * immutable and can be shared between threads. It describes the graph's edge lengths, so it can't
+ * be used while any {@link EdgeCosts} differ from them.
+ */
+public final class ContractionHierarchy {
+    // Witness searches (looking for a path around the point being contracted that makes a
+    // shortcut unnecessary) give up after settling this many points. Giving up only means adding
+    // a shortcut that wasn't needed, so this trades a slightly bigger hierarchy for build time.
+    private static final int WITNESS_SETTLE_LIMIT = 256;
+
+    private final Graph graph; // the graph the hierarchy was built over
+    private final int[] ranks; // the rank of each graph point, 0 being the most important
+    private final int[] points; // the graph point with each rank
+
+    // The rest are by rank rather than graph index.
+    // up edges of point v go out to more important points: upOffsets[v] until upOffsets[v + 1]
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final double[] upWeights;
+    private final int[] upMiddles; // the point a shortcut skips, or NO_POINT for a graph edge
+
+    // down edges of point v come in from more important points: downOffsets[v] until downOffsets[v + 1]
+    private final int[] downOffsets;
+    private final int[] downSources;
+    private final double[] downWeights;
+    private final int[] downMiddles;
+
+    // A point added to the graph after the hierarchy was built, see withAttachedPoint(). Queries
+    // are in the indices of attachedGraph, which is the graph itself if nothing was attached.
+    private final Graph attachedGraph;
+    private final int attachedAt;
+
+    // by attachedGraph index: the length of the shortest route to the attached point, and the next
+    // point along it (NO_POINT at the attached point and wherever it can't be reached from)
+    private final double[] toAttached;
+    private final int[] towardsAttached;
+
+    ContractionHierarchy(Graph graph, int[] ranks, int[] upOffsets, int[] upTargets, double[] upWeights, int[] upMiddles,
+                         int[] downOffsets, int[] downSources, double[] downWeights, int[] downMiddles) {
+        this(graph, ranks, upOffsets, upTargets, upWeights, upMiddles,
+                downOffsets, downSources, downWeights, downMiddles, graph, Graph.NO_POINT, null, null);
+    }
+
+    private ContractionHierarchy(Graph graph, int[] ranks, int[] upOffsets, int[] upTargets, double[] upWeights, int[] upMiddles,
+                                 int[] downOffsets, int[] downSources, double[] downWeights, int[] downMiddles,
+                                 Graph attachedGraph, int attachedAt, double[] toAttached, int[] towardsAttached) {
+        this.graph = graph;
+        this.ranks = ranks;
+        this.points = new int[ranks.length];
+        for (int i = 0; i < ranks.length; i++) { this.points[ranks[i]] = i; }
+        this.upOffsets = upOffsets;
+        this.upTargets = upTargets;
+        this.upWeights = upWeights;
+        this.upMiddles = upMiddles;
+        this.downOffsets = downOffsets;
+        this.downSources = downSources;
+        this.downWeights = downWeights;
+        this.downMiddles = downMiddles;
+        this.attachedGraph = attachedGraph;
+        this.attachedAt = attachedAt;
+        this.toAttached = toAttached;
+        this.towardsAttached = towardsAttached;
+    }
+
+    public static ContractionHierarchy build(Graph graph) {
+        return new Contractor(graph).contract();
+    }
+
+    // the graph that routes are found over, including the attached point if there is one
+    public Graph getGraph() { return this.attachedGraph; }
+
+    // the graph the hierarchy was built over, which is what gets stored in a MapFile
+    public Graph getBaseGraph() { return this.graph; }
+
+    public int getShortcutCount() {
+        int shortcuts = 0;
+        for (int middle : this.upMiddles) { if (middle != Graph.NO_POINT) { shortcuts++; } }
+        for (int middle : this.downMiddles) { if (middle != Graph.NO_POINT) { shortcuts++; } }
+        return shortcuts;
+    }
+
+    // roughly how much heap the hierarchy's arrays take up, on top of the graph's
+    public long estimateBytes() {
+        long n = this.graph.size();
+        return 2 * n * 4 + 2 * (n + 1) * 4 + (long) (this.upTargets.length + this.downSources.length) * (4 + 8 + 4);
+    }
+
+    // Returns this hierarchy for attached, a copy of its graph with one more point (see
+    // Graph.withAttachedPoint()). The point isn't contracted. Instead this works out every point's
+    // shortest route to it (a Dijkstra search over the whole graph, so this takes about as long as
+    // a ShortestPathTree), and HierarchyRouter starts its searches from the point's neighbours as
+    // well, which lets one search find routes from and through it. That keeps a hierarchy stored
+    // with a compiled map usable when code adds a point to the map, like MapPlan's root node.
+    public ContractionHierarchy withAttachedPoint(Graph attached) {
+        if (this.attachedAt != Graph.NO_POINT) {
+            throw new IllegalStateException("The hierarchy already has an attached point");
+        }
+        int n = this.graph.size();
+        if (attached.size() != n + 1) {
+            throw new IllegalArgumentException("Graph isn't this hierarchy's graph with one point attached");
+        }
+        int at = 0;
+        while (at < n && attached.getId(at) == this.graph.getId(at)) { at++; }
+        for (int i = at; i < n; i++) {
+            if (attached.getId(i + 1) != this.graph.getId(i)) {
+                throw new IllegalArgumentException("Graph isn't this hierarchy's graph with one point attached");
+            }
+        }
+        double[] toAttached = new double[n + 1];
+        int[] towardsAttached = new int[n + 1];
+        routesTo(attached, at, toAttached, towardsAttached);
+        return new ContractionHierarchy(this.graph, this.ranks, this.upOffsets, this.upTargets, this.upWeights, this.upMiddles,
+                this.downOffsets, this.downSources, this.downWeights, this.downMiddles, attached, at, toAttached, towardsAttached);
+    }
+
+    // Dijkstra back along the graph's edges from target, filling in each point's distance to it
+    // and the next point on the way
+    private static void routesTo(Graph graph, int target, double[] dist, int[] next) {
+        int n = graph.size();
+        int[] offsets = new int[n + 1]; // the edges reversed, as CSR by the point they go to
+        for (int e = 0; e < graph.edgeCount(); e++) { offsets[graph.edgeTarget(e) + 1]++; }
+        for (int i = 0; i < n; i++) { offsets[i + 1] += offsets[i]; }
+        int[] fill = Arrays.copyOf(offsets, n);
+        int[] sources = new int[graph.edgeCount()];
+        float[] weights = new float[graph.edgeCount()];
+        for (int from = 0; from < n; from++) {
+            for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++) {
+                int slot = fill[graph.edgeTarget(e)]++;
+                sources[slot] = from;
+                weights[slot] = graph.edgeWeight(e);
+            }
+        }
+
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(next, Graph.NO_POINT);
+        IndexedMinHeap heap = new IndexedMinHeap(n);
+        dist[target] = 0;
+        heap.insertOrDecrease(target, 0);
+        while (!heap.isEmpty()) {
+            int v = heap.poll();
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int u = sources[e];
+                double alt = dist[v] + weights[e];
+                if (alt < dist[u]) {
+                    dist[u] = alt;
+                    next[u] = v;
+                    heap.insertOrDecrease(u, alt);
+                }
+            }
+        }
+    }
+
+    int getAttachedAt() { return this.attachedAt; }
+
+    // the length of the shortest route from a point of getGraph() to the attached point, infinite
+    // if there's no route or nothing is attached
+    double distanceToAttached(int point) {
+        return this.toAttached == null ? Double.POSITIVE_INFINITY : this.toAttached[point];
+    }
+
+    // the next point on the shortest route from a point to the attached point, see distanceToAttached()
+    int towardsAttached(int point) { return this.towardsAttached[point]; }
+
+    int rankOf(int point) { return this.ranks[point]; }
+    int pointOf(int rank) { return this.points[rank]; }
+
+    int firstUp(int point) { return this.upOffsets[point]; }
+    int endUp(int point) { return this.upOffsets[point + 1]; }
+    int upTarget(int edge) { return this.upTargets[edge]; }
+    double upWeight(int edge) { return this.upWeights[edge]; }
+    int upMiddle(int edge) { return this.upMiddles[edge]; }
+
+    int firstDown(int point) { return this.downOffsets[point]; }
+    int endDown(int point) { return this.downOffsets[point + 1]; }
+    int downSource(int edge) { return this.downSources[edge]; }
+    double downWeight(int edge) { return this.downWeights[edge]; }
+    int downMiddle(int edge) { return this.downMiddles[edge]; }
+
+    // the up edge from point to target, which must exist
+    int findUp(int point, int target) {
+        for (int e = this.upOffsets[point]; e < this.upOffsets[point + 1]; e++) {
+            if (this.upTargets[e] == target) { return e; }
+        }
+        throw new IllegalStateException("Missing hierarchy edge from " + point + " to " + target);
+    }
+
+    // the down edge into point from source, which must exist
+    int findDown(int point, int source) {
+        for (int e = this.downOffsets[point]; e < this.downOffsets[point + 1]; e++) {
+            if (this.downSources[e] == source) { return e; }
+        }
+        throw new IllegalStateException("Missing hierarchy edge from " + source + " to " + point);
+    }
+
+    int[] getRanks() { return this.ranks; }
+    int[] getUpOffsets() { return this.upOffsets; }
+    int[] getUpTargets() { return this.upTargets; }
+    double[] getUpWeights() { return this.upWeights; }
+    int[] getUpMiddles() { return this.upMiddles; }
+    int[] getDownOffsets() { return this.downOffsets; }
+    int[] getDownSources() { return this.downSources; }
+    double[] getDownWeights() { return this.downWeights; }
+    int[] getDownMiddles() { return this.downMiddles; }
+
+    /**
+     * Does the contraction, over a mutable copy of the graph's adjacency (both directions, so
+     * one-way edges work) that shrinks as points are contracted. Points are picked with a lazily
+     * updated priority queue: the point on top is re-scored before it's contracted and put back if
+     * it's no longer the least important.
+     */
+    private static final class Contractor {
+        private final Graph graph;
+        private final int n;
+        private final Adjacency out;
+        private final Adjacency in;
+        private final int[] contractedNeighbours;
+        private final int[] levels; // one more than the highest level of any contracted neighbour
+
+        // the witness search
+        private final IndexedMinHeap witnessHeap;
+        private final double[] witnessDist;
+        private final int[] witnessSeen;
+        private int generation = 0;
+
+        // up and down edges in the order points are contracted, laid out as CSR at the end
+        private final EdgeList up = new EdgeList();
+        private final EdgeList down = new EdgeList();
+
+        Contractor(Graph graph) {
+            this.graph = graph;
+            this.n = graph.size();
+            this.out = new Adjacency(this.n);
+            this.in = new Adjacency(this.n);
+            for (int from = 0; from < this.n; from++) {
+                for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++) {
+                    this.out.add(from, graph.edgeTarget(e), graph.edgeWeight(e), Graph.NO_POINT);
+                    this.in.add(graph.edgeTarget(e), from, graph.edgeWeight(e), Graph.NO_POINT);
+                }
+            }
+            this.contractedNeighbours = new int[this.n];
+            this.levels = new int[this.n];
+            this.witnessHeap = new IndexedMinHeap(this.n);
+            this.witnessDist = new double[this.n];
+            this.witnessSeen = new int[this.n];
+        }
+
+        ContractionHierarchy contract() {
+            IndexedMinHeap queue = new IndexedMinHeap(this.n);
+            for (int v = 0; v < this.n; v++) { queue.insertOrDecrease(v, this.priority(v)); }
+            int[] ranks = new int[this.n];
+            int next = this.n;
+            while (!queue.isEmpty()) {
+                int v = queue.poll();
+                double priority = this.priority(v);
+                if (!queue.isEmpty() && priority > queue.keyOf(queue.peek())) {
+                    queue.insertOrDecrease(v, priority);
+                    continue;
+                }
+                this.contract(v);
+                ranks[v] = --next; // the last point contracted is the most important
+            }
+
+            int[] upOffsets = new int[this.n + 1];
+            int[] downOffsets = new int[this.n + 1];
+            EdgeList up = this.up.renumbered(ranks).sortedBy(upOffsets);
+            EdgeList down = this.down.renumbered(ranks).sortedBy(downOffsets);
+            return new ContractionHierarchy(this.graph, ranks, upOffsets, up.others, up.weights, up.middles,
+                    downOffsets, down.others, down.weights, down.middles);
+        }
+
+        // Edge difference (shortcuts added less edges removed) plus how many neighbours have
+        // already gone and how high up the hierarchy the point would be, which spread contraction
+        // evenly over the graph and keep the hierarchy shallow, so queries see fewer points.
+        private double priority(int v) {
+            int shortcuts = this.shortcuts(v, false);
+            return 2 * (shortcuts - this.out.count[v] - this.in.count[v]) + this.contractedNeighbours[v] + this.levels[v];
+        }
+
+        private void contract(int v) {
+            this.shortcuts(v, true);
+            Adjacency out = this.out;
+            Adjacency in = this.in;
+            for (int j = 0; j < out.count[v]; j++) {
+                int w = out.others[v][j];
+                this.up.add(v, w, out.weights[v][j], out.middles[v][j]);
+                in.remove(w, v);
+                this.contractedNeighbours[w]++;
+                this.levels[w] = Math.max(this.levels[w], this.levels[v] + 1);
+            }
+            for (int j = 0; j < in.count[v]; j++) {
+                int u = in.others[v][j];
+                this.down.add(v, u, in.weights[v][j], in.middles[v][j]);
+                out.remove(u, v);
+                this.contractedNeighbours[u]++;
+                this.levels[u] = Math.max(this.levels[u], this.levels[v] + 1);
+            }
+            out.count[v] = 0;
+            in.count[v] = 0;
+        }
+
+        // How many shortcuts contracting v needs, adding them if apply is true. A shortcut from u
+        // to w is needed unless the witness search from u finds a way to w that avoids v and is
+        // no longer than going through it.
+        private int shortcuts(int v, boolean apply) {
+            Adjacency out = this.out;
+            Adjacency in = this.in;
+            int shortcuts = 0;
+            for (int i = 0; i < in.count[v]; i++) {
+                int u = in.others[v][i];
+                double toV = in.weights[v][i];
+                double furthest = -1;
+                for (int j = 0; j < out.count[v]; j++) {
+                    if (out.others[v][j] != u) { furthest = Math.max(furthest, toV + out.weights[v][j]); }
+                }
+                if (furthest < 0) { continue; } // v only leads back to u
+                this.witnessSearch(u, v, furthest);
+                for (int j = 0; j < out.count[v]; j++) {
+                    int w = out.others[v][j];
+                    if (w == u) { continue; }
+                    double through = toV + out.weights[v][j];
+                    if (this.witnessSeen[w] == this.generation && this.witnessDist[w] <= through) { continue; }
+                    shortcuts++;
+                    if (apply) {
+                        out.addOrImprove(u, w, through, v);
+                        in.addOrImprove(w, u, through, v);
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        // Dijkstra from u over the points left, not going through skip or further than limit
+        private void witnessSearch(int u, int skip, double limit) {
+            if (++this.generation == 0) {
+                Arrays.fill(this.witnessSeen, 0);
+                this.generation = 1;
+            }
+            IndexedMinHeap heap = this.witnessHeap;
+            heap.clear();
+            this.witnessSeen[u] = this.generation;
+            this.witnessDist[u] = 0;
+            heap.insertOrDecrease(u, 0);
+            int settled = 0;
+            while (!heap.isEmpty() && settled++ < WITNESS_SETTLE_LIMIT) {
+                int current = heap.poll();
+                double dist = this.witnessDist[current];
+                if (dist > limit) { break; }
+                for (int j = 0; j < this.out.count[current]; j++) {
+                    int to = this.out.others[current][j];
+                    if (to == skip) { continue; }
+                    double alt = dist + this.out.weights[current][j];
+                    if (this.witnessSeen[to] != this.generation || alt < this.witnessDist[to]) {
+                        this.witnessSeen[to] = this.generation;
+                        this.witnessDist[to] = alt;
+                        heap.insertOrDecrease(to, alt);
+                    }
+                }
+            }
+            heap.clear();
+        }
+    }
+
+    // per point lists of (other point, weight, middle) that can grow and shrink
+    private static final class Adjacency {
+        final int[][] others;
+        final double[][] weights;
+        final int[][] middles;
+        final int[] count;
+
+        Adjacency(int n) {
+            this.others = new int[n][];
+            this.weights = new double[n][];
+            this.middles = new int[n][];
+            this.count = new int[n];
+        }
+
+        void add(int v, int other, double weight, int middle) {
+            int c = this.count[v];
+            if (this.others[v] == null) {
+                this.others[v] = new int[4];
+                this.weights[v] = new double[4];
+                this.middles[v] = new int[4];
+            } else if (c == this.others[v].length) {
+                this.others[v] = Arrays.copyOf(this.others[v], 2 * c);
+                this.weights[v] = Arrays.copyOf(this.weights[v], 2 * c);
+                this.middles[v] = Arrays.copyOf(this.middles[v], 2 * c);
+            }
+            this.others[v][c] = other;
+            this.weights[v][c] = weight;
+            this.middles[v][c] = middle;
+            this.count[v] = c + 1;
+        }
+
+        // keeps one edge per pair of points, the shortest
+        void addOrImprove(int v, int other, double weight, int middle) {
+            for (int j = 0; j < this.count[v]; j++) {
+                if (this.others[v][j] == other) {
+                    if (weight < this.weights[v][j]) {
+                        this.weights[v][j] = weight;
+                        this.middles[v][j] = middle;
+                    }
+                    return;
+                }
+            }
+            this.add(v, other, weight, middle);
+        }
+
+        void remove(int v, int other) {
+            for (int j = 0; j < this.count[v]; j++) {
+                if (this.others[v][j] == other) {
+                    int last = --this.count[v];
+                    this.others[v][j] = this.others[v][last];
+                    this.weights[v][j] = this.weights[v][last];
+                    this.middles[v][j] = this.middles[v][last];
+                    return;
+                }
+            }
+        }
+    }
+
+    // a growable list of edges keyed by the point they belong to
+    private static final class EdgeList {
+        int[] points = new int[16];
+        int[] others = new int[16];
+        double[] weights = new double[16];
+        int[] middles = new int[16];
+        int size = 0;
+
+        void add(int point, int other, double weight, int middle) {
+            if (this.size == this.points.length) {
+                this.points = Arrays.copyOf(this.points, 2 * this.size);
+                this.others = Arrays.copyOf(this.others, 2 * this.size);
+                this.weights = Arrays.copyOf(this.weights, 2 * this.size);
+                this.middles = Arrays.copyOf(this.middles, 2 * this.size);
+            }
+            this.points[this.size] = point;
+            this.others[this.size] = other;
+            this.weights[this.size] = weight;
+            this.middles[this.size++] = middle;
+        }
+
+        // the edges with every point replaced by its rank
+        EdgeList renumbered(int[] ranks) {
+            for (int j = 0; j < this.size; j++) {
+                this.points[j] = ranks[this.points[j]];
+                this.others[j] = ranks[this.others[j]];
+                this.middles[j] = this.middles[j] == Graph.NO_POINT ? Graph.NO_POINT : ranks[this.middles[j]];
+            }
+            return this;
+        }
+
+        // the edges grouped by point (a counting sort), filling in offsets for the CSR layout
+        EdgeList sortedBy(int[] offsets) {
+            for (int j = 0; j < this.size; j++) { offsets[this.points[j] + 1]++; }
+            for (int i = 0; i + 1 < offsets.length; i++) { offsets[i + 1] += offsets[i]; }
+            int[] fill = Arrays.copyOf(offsets, offsets.length - 1);
+            EdgeList sorted = new EdgeList();
+            sorted.others = new int[this.size];
+            sorted.weights = new double[this.size];
+            sorted.middles = new int[this.size];
+            for (int j = 0; j < this.size; j++) {
+                int slot = fill[this.points[j]]++;
+                sorted.others[slot] = this.others[j];
+                sorted.weights[slot] = this.weights[j];
+                sorted.middles[slot] = this.middles[j];
+            }
+            sorted.size = this.size;
+            return sorted;
+        }
+    }
+}
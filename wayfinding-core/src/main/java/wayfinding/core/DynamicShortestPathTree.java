@@ -0,0 +1,163 @@
+package wayfinding.core;
+
+import java.util.Arrays;
+
+/**
+ * A {@link ShortestPathTree} that stays right as the {@link EdgeCosts} it was built with change,
+ * by repairing only the part of the tree a change affects rather than running Dijkstra again.
+ * When an edge gets cheaper (or reopens), the points it now gives a shorter path to are lowered
+ * with a Dijkstra search that starts from the edge and stops where distances stop improving. When
+ * a tree edge gets dearer (or closes), only the subtree hanging off it can be affected: those
+ * points are cut loose, each is given the best distance it can get from an edge into it from the
+ * rest of the tree, and a Dijkstra search over just the subtree settles them. Edges that aren't
+ * in the tree getting dearer change nothing. Either way the work is proportional to the points
+ * whose paths change and their edges, which for a closed corridor is usually a small part of the
+ * venue. Must not be shared between threads, like EdgeCosts.
+ */
+public final class DynamicShortestPathTree implements EdgeCosts.Listener {
+    private final Graph graph;
+    private final EdgeCosts costs;
+    private final ShortestPathTree tree;
+
+    // the edges into each point, as a CSR over the edge slots, so repairs can look back along them
+    private final int[] inOffsets;
+    private final int[] inEdges;
+    private final int[] sources; // the point each edge slot leaves from
+
+    private final IndexedMinHeap heap;
+    private final int[] cut; // a point is in the subtree being repaired if cut[point] == generation
+    private final IntList subtree = new IntList(16);
+    private int generation = 0;
+    private int lastRepairSize = 0;
+
+    // builds the whole tree from root with a Router over costs, and listens for changes to them
+    public DynamicShortestPathTree(EdgeCosts costs, int root) {
+        Graph graph = costs.getGraph();
+        int n = graph.size();
+        int m = graph.edgeCount();
+        this.graph = graph;
+        this.costs = costs;
+        this.tree = new Router(graph, costs).shortestPathTree(root);
+        this.heap = new IndexedMinHeap(n);
+        this.cut = new int[n];
+
+        this.sources = new int[m];
+        this.inOffsets = new int[n + 1];
+        this.inEdges = new int[m];
+        for (int from = 0; from < n; from++) {
+            for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++) {
+                this.sources[e] = from;
+                this.inOffsets[graph.edgeTarget(e) + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) { this.inOffsets[i + 1] += this.inOffsets[i]; }
+        int[] fill = new int[n];
+        for (int e = 0; e < m; e++) {
+            int to = graph.edgeTarget(e);
+            this.inEdges[this.inOffsets[to] + fill[to]++] = e;
+        }
+        costs.addListener(this);
+    }
+
+    // the tree, which is updated in place as costs change
+    public ShortestPathTree getTree() { return this.tree; }
+
+    // how many points the last repair had to look at, to compare with a rebuild's graph.size()
+    public int getLastRepairSize() { return this.lastRepairSize; }
+
+    // stops following the costs, leaving the tree as it is
+    public void detach() { this.costs.removeListener(this); }
+
+    @Override
+    public void onCostChanged(int edge, float oldCost, float newCost) {
+        if (newCost < oldCost) {
+            this.lower(edge, newCost);
+        } else if (this.tree.prevOf(this.graph.edgeTarget(edge)) == this.sources[edge]) {
+            this.raise(this.graph.edgeTarget(edge));
+        } else {
+            this.lastRepairSize = 0;
+        }
+    }
+
+    // the edge got cheaper, so push shorter distances out from its target for as long as they help
+    private void lower(int edge, float cost) {
+        int from = this.sources[edge];
+        int to = this.graph.edgeTarget(edge);
+        double alt = this.tree.distanceTo(from) + cost;
+        this.lastRepairSize = 0;
+        if (!(alt < this.tree.distanceTo(to))) {
+            return;
+        }
+        this.tree.set(to, from, alt);
+        this.heap.insertOrDecrease(to, alt);
+        while (!this.heap.isEmpty()) {
+            int current = this.heap.poll();
+            this.lastRepairSize++;
+            this.relaxEdges(current, false);
+        }
+    }
+
+    // the tree edge into top got dearer, so every point under it may have a longer path now
+    private void raise(int top) {
+        if (++this.generation == 0) { // the stamp wrapped around, so old stamps could collide
+            Arrays.fill(this.cut, 0);
+            this.generation = 1;
+        }
+
+        // cut the subtree loose. A point's children are the targets of its edges that it's the
+        // tree parent of, so the subtree can be walked without keeping child lists.
+        IntList subtree = this.subtree;
+        subtree.clear();
+        subtree.add(top);
+        this.cut[top] = this.generation;
+        for (int j = 0; j < subtree.size(); j++) {
+            int parent = subtree.get(j);
+            for (int e = this.graph.firstEdge(parent); e < this.graph.endEdge(parent); e++) {
+                int child = this.graph.edgeTarget(e);
+                if (this.cut[child] != this.generation && this.tree.prevOf(child) == parent) {
+                    this.cut[child] = this.generation;
+                    subtree.add(child);
+                }
+            }
+        }
+
+        // the best each point can do straight from the rest of the tree, then settle the subtree
+        for (int j = 0; j < subtree.size(); j++) {
+            int point = subtree.get(j);
+            int best = Graph.NO_POINT;
+            double bestDist = Double.POSITIVE_INFINITY;
+            for (int k = this.inOffsets[point]; k < this.inOffsets[point + 1]; k++) {
+                int e = this.inEdges[k];
+                int from = this.sources[e];
+                if (this.cut[from] == this.generation) { continue; }
+                double alt = this.tree.distanceTo(from) + this.costs.get(e);
+                if (alt < bestDist) {
+                    best = from;
+                    bestDist = alt;
+                }
+            }
+            this.tree.set(point, best, bestDist);
+            if (best != Graph.NO_POINT) {
+                this.heap.insertOrDecrease(point, bestDist);
+            }
+        }
+        while (!this.heap.isEmpty()) {
+            this.relaxEdges(this.heap.poll(), true);
+        }
+        this.lastRepairSize = subtree.size();
+    }
+
+    // onlyCut limits the search to the subtree being repaired
+    private void relaxEdges(int current, boolean onlyCut) {
+        double dist = this.tree.distanceTo(current);
+        for (int e = this.graph.firstEdge(current); e < this.graph.endEdge(current); e++) {
+            int to = this.graph.edgeTarget(e);
+            if (onlyCut && this.cut[to] != this.generation) { continue; }
+            double alt = dist + this.costs.get(e);
+            if (alt < this.tree.distanceTo(to)) {
+                this.tree.set(to, current, alt);
+                this.heap.insertOrDecrease(to, alt);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package wayfinding.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * What it currently costs to walk each edge of a {@link Graph}, for closing corridors or making
+ * them slower at runtime without rebuilding the graph. Costs start at the edges' lengths. Changes
+ * are made to a corridor (both directions of an edge) by the dense indices of its ends, and every
+ * change bumps getVersion() and is passed on to the listeners, e.g. a
+ * {@link DynamicShortestPathTree} that repairs itself. A cost can't go below the edge's length,
+ * since Router's A* heuristic relies on no edge being shorter than a straight line.
+ * EdgeCosts must not be shared between threads.
+ */
+public final class EdgeCosts {
+    public interface Listener {
+        // the edge slot's effective cost (infinite if blocked) went from oldCost to newCost
+        void onCostChanged(int edge, float oldCost, float newCost);
+    }
+
+    private final Graph graph;
+    private final float[] costs;
+    private final boolean[] blocked;
+    private final List<Listener> listeners = new ArrayList<>();
+    private long version = 0;
+    private int changed = 0; // how many edges don't cost their length
+
+    public EdgeCosts(Graph graph) {
+        this.graph = graph;
+        this.costs = new float[graph.edgeCount()];
+        this.blocked = new boolean[graph.edgeCount()];
+        for (int e = 0; e < this.costs.length; e++) { this.costs[e] = graph.edgeWeight(e); }
+    }
+
+    private EdgeCosts(EdgeCosts original) {
+        this.graph = original.graph;
+        this.costs = original.costs.clone();
+        this.blocked = original.blocked.clone();
+        this.version = original.version;
+        this.changed = original.changed;
+    }
+
+    // A copy of the costs as they are now, with no listeners, e.g. for routing on other threads
+    // while these go on changing.
+    public EdgeCosts copy() { return new EdgeCosts(this); }
+
+    public Graph getGraph() { return this.graph; }
+
+    // the cost of walking the edge slot, infinite if it's blocked
+    public float get(int edge) { return this.blocked[edge] ? Float.POSITIVE_INFINITY : this.costs[edge]; }
+
+    public boolean isBlocked(int edge) { return edge != Graph.NO_EDGE && this.blocked[edge]; }
+
+    // goes up by one every time a cost changes, so caches of routes can tell they're stale
+    public long getVersion() { return this.version; }
+
+    // whether every edge is open and costs its length, as the graph has it
+    public boolean isUnchanged() { return this.changed == 0; }
+
+    public void addListener(Listener listener) { this.listeners.add(listener); }
+    public void removeListener(Listener listener) { this.listeners.remove(listener); }
+
+    // Closes the corridor between two points. Returns false if they aren't joined.
+    public boolean block(int from, int to) { return this.setBlocked(from, to, true); }
+
+    // Reopens the corridor between two points, at whatever cost it had before it was closed.
+    public boolean unblock(int from, int to) { return this.setBlocked(from, to, false); }
+
+    // Sets what it costs to walk the corridor between two points (e.g. to steer people away from
+    // stairs). A closed corridor stays closed, but has this cost when it's reopened.
+    public boolean reweight(int from, int to, float cost) {
+        int there = this.graph.edgeBetween(from, to);
+        int back = this.graph.edgeBetween(to, from);
+        this.checkCost(there, cost);
+        this.checkCost(back, cost);
+        this.update(there, this.isBlocked(there), cost);
+        this.update(back, this.isBlocked(back), cost);
+        return there != Graph.NO_EDGE || back != Graph.NO_EDGE;
+    }
+
+    private void checkCost(int edge, float cost) {
+        if (edge != Graph.NO_EDGE && !(cost >= this.graph.edgeWeight(edge) && cost < Float.POSITIVE_INFINITY)) {
+            throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                    "cost must be finite and at least the corridor's length %f, not %f", this.graph.edgeWeight(edge), cost));
+        }
+    }
+
+    private boolean setBlocked(int from, int to, boolean blocked) {
+        int there = this.graph.edgeBetween(from, to);
+        int back = this.graph.edgeBetween(to, from);
+        this.update(there, blocked, this.costs(there));
+        this.update(back, blocked, this.costs(back));
+        return there != Graph.NO_EDGE || back != Graph.NO_EDGE;
+    }
+
+    private float costs(int edge) { return edge == Graph.NO_EDGE ? 0 : this.costs[edge]; }
+
+    private void update(int edge, boolean blocked, float cost) {
+        if (edge == Graph.NO_EDGE) {
+            return;
+        }
+        float before = this.get(edge);
+        this.blocked[edge] = blocked;
+        this.costs[edge] = cost;
+        float after = this.get(edge);
+        float length = this.graph.edgeWeight(edge);
+        this.changed += (after != length ? 1 : 0) - (before != length ? 1 : 0);
+        if (after != before) {
+            this.version++;
+            for (Listener listener : this.listeners) { listener.onCostChanged(edge, before, after); }
+        }
+    }
+}
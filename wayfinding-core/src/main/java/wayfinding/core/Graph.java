@@ -0,0 +1,322 @@
+package wayfinding.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The navigation graph for a floor, stored as a compressed sparse row (CSR) adjacency.
+ * Points are remapped from their ids in the map json to dense indices 0..size()-1 (in id order),
+ * and the outgoing edges of point i are the edge slots firstEdge(i) until endEdge(i), each with a
+ * target index and a weight. Routing over a Graph only reads primitive arrays, so it does no
+ * per-edge allocation. Each edge's compass bearing is worked out once when the graph is made, so
+ * pointing an arrow down an edge is a lookup. Graphs are immutable, use a {@link Builder} to make one.
+ */
+public final class Graph {
+    public static final int NO_POINT = -1;
+    public static final int NO_EDGE = -1;
+
+    private final int[] ids; // sorted, so indexOf can binary search
+    private final float[] xs;
+    private final float[] zs;
+    private final String[] roomNames; // null for plain nav points
+    private final float[] angleIns;
+
+    private final int[] offsets; // edges of point i are offsets[i] until offsets[i + 1]
+    private final int[] targets;
+    private final float[] weights;
+    private final float[] bearings; // degrees clockwise from +z, see edgeBearing()
+
+    private final Map<String, Integer> entries; // entry point indices by room name
+    private final SpatialIndex spatialIndex;
+
+    Graph(int[] ids, float[] xs, float[] zs, String[] roomNames, float[] angleIns,
+                  int[] offsets, int[] targets, float[] weights, Map<String, Integer> entries) {
+        this.ids = ids;
+        this.xs = xs;
+        this.zs = zs;
+        this.roomNames = roomNames;
+        this.angleIns = angleIns;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.bearings = bearings(xs, zs, offsets, targets);
+        this.entries = entries;
+        this.spatialIndex = new SpatialIndex(xs, zs);
+    }
+
+    private static float[] bearings(float[] xs, float[] zs, int[] offsets, int[] targets) {
+        float[] bearings = new float[targets.length];
+        for (int from = 0; from + 1 < offsets.length; from++) {
+            for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+                bearings[e] = bearing(xs[targets[e]] - xs[from], zs[targets[e]] - zs[from]);
+            }
+        }
+        return bearings;
+    }
+
+    // the angle in [0,360) from +z clockwise round to (dx,dz), which is the yaw that turns an arrow
+    // pointing down +z to point along (dx,dz)
+    private static float bearing(float dx, float dz) {
+        float degrees = (float) Math.toDegrees(Math.atan2(dx, dz));
+        return degrees < 0 ? degrees + 360 : degrees;
+    }
+
+    public static Builder builder() { return new Builder(); }
+
+    public int size() { return this.ids.length; }
+
+    public int edgeCount() { return this.targets.length; }
+
+    // roughly how much heap the graph's arrays take up, not counting the room name strings
+    public long estimateBytes() {
+        long n = this.ids.length;
+        long m = this.targets.length;
+        return n * (4 + 4 + 4 + 4 + 4) + (n + 1) * 4 + m * (4 + 4 + 4) + this.spatialIndex.estimateBytes();
+    }
+
+    // the dense index of the point with the given id, or NO_POINT
+    public int indexOf(int id) {
+        int index = Arrays.binarySearch(this.ids, id);
+        return index < 0 ? NO_POINT : index;
+    }
+
+    // the index of the point closest to (x,z) in map space, or NO_POINT if the graph is empty
+    public int nearestPoint(float x, float z) { return this.spatialIndex.nearest(x, z); }
+
+    // grid over the point positions, built along with the graph
+    public SpatialIndex getSpatialIndex() { return this.spatialIndex; }
+
+    public int getId(int index) { return this.ids[index]; }
+    public float getX(int index) { return this.xs[index]; }
+    public float getZ(int index) { return this.zs[index]; }
+    public String getRoomName(int index) { return this.roomNames[index]; }
+    public float getAngleIn(int index) { return this.angleIns[index]; }
+    public boolean isEntry(int index) { return this.roomNames[index] != null; }
+
+    // the index of the entry point for the given room, or NO_POINT
+    public int indexOfEntry(String roomName) {
+        Integer index = this.entries.get(roomName);
+        return index == null ? NO_POINT : index;
+    }
+
+    // names of every room with an entry point, in the order they were added
+    public Iterable<String> getRoomNames() { return Collections.unmodifiableSet(this.entries.keySet()); }
+
+    public int firstEdge(int index) { return this.offsets[index]; }
+    public int endEdge(int index) { return this.offsets[index + 1]; }
+    public int edgeTarget(int edge) { return this.targets[edge]; }
+    public float edgeWeight(int edge) { return this.weights[edge]; }
+    public float edgeBearing(int edge) { return this.bearings[edge]; }
+
+    // the edge slot from one point to another, or NO_EDGE if they aren't joined
+    public int edgeBetween(int from, int to) {
+        for (int e = this.offsets[from]; e < this.offsets[from + 1]; e++) {
+            if (this.targets[e] == to) { return e; }
+        }
+        return NO_EDGE;
+    }
+
+    // id if no point has it yet, otherwise one below the smallest id in the graph
+    public int unusedId(int id) {
+        if (this.indexOf(id) == NO_POINT) {
+            return id;
+        }
+        if (this.ids[0] == Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("Graph has no unused id below its smallest");
+        }
+        return this.ids[0] - 1;
+    }
+
+    // Returns a copy of this graph with one more point, joined to the points with the given ids by
+    // edges in both directions. This is plain array copying, so it is cheap even for a big compiled
+    // map; it's how points that live in code rather than in the map (like the root node) get added.
+    // If the map already has a point with the new point's id, the new one gets unusedId() instead.
+    public Graph withAttachedPoint(Waypoint point, int... neighbourIds) {
+        int pointId = this.unusedId(point.getId());
+        int at = -Arrays.binarySearch(this.ids, pointId) - 1;
+        int n = this.ids.length;
+        boolean[] isNeighbour = new boolean[n];
+        int neighbours = 0;
+        for (int id : neighbourIds) {
+            int index = this.indexOf(id);
+            if (index == NO_POINT) {
+                throw new IllegalArgumentException("Graph has no point with id " + id);
+            }
+            if (!isNeighbour[index]) {
+                isNeighbour[index] = true;
+                neighbours++;
+            }
+        }
+
+        int[] ids = insert(this.ids, at, pointId);
+        float[] xs = insert(this.xs, at, point.getX());
+        float[] zs = insert(this.zs, at, point.getZ());
+        float[] angleIns = insert(this.angleIns, at, point.getAngleIn());
+        String[] roomNames = new String[n + 1];
+        System.arraycopy(this.roomNames, 0, roomNames, 0, at);
+        System.arraycopy(this.roomNames, at, roomNames, at + 1, n - at);
+        roomNames[at] = point.getRoomName();
+
+        int[] offsets = new int[n + 2];
+        int[] targets = new int[this.targets.length + 2 * neighbours];
+        float[] weights = new float[targets.length];
+        int m = 0;
+        for (int i = 0; i <= n; i++) {
+            offsets[i] = m;
+            if (i == at) { // the new point's edges go out to each neighbour
+                for (int old = 0; old < n; old++) {
+                    if (!isNeighbour[old]) { continue; }
+                    int to = old < at ? old : old + 1;
+                    targets[m] = to;
+                    weights[m++] = distance(xs, zs, at, to);
+                }
+                continue;
+            }
+            int old = i < at ? i : i - 1;
+            for (int e = this.offsets[old]; e < this.offsets[old + 1]; e++) {
+                int to = this.targets[e];
+                targets[m] = to < at ? to : to + 1;
+                weights[m++] = this.weights[e];
+            }
+            if (isNeighbour[old]) {
+                targets[m] = at;
+                weights[m++] = distance(xs, zs, i, at);
+            }
+        }
+        offsets[n + 1] = m;
+
+        Map<String, Integer> entries = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : this.entries.entrySet()) {
+            int index = entry.getValue();
+            entries.put(entry.getKey(), index < at ? index : index + 1);
+        }
+        if (point.isEntry()) {
+            entries.put(point.getRoomName(), at);
+        }
+        return new Graph(ids, xs, zs, roomNames, angleIns, offsets, targets, weights, entries);
+    }
+
+    private static float distance(float[] xs, float[] zs, int from, int to) {
+        float dx = xs[from] - xs[to];
+        float dz = zs[from] - zs[to];
+        return (float) Math.sqrt(dx * dx + dz * dz);
+    }
+
+    private static int[] insert(int[] values, int at, int value) {
+        int[] out = new int[values.length + 1];
+        System.arraycopy(values, 0, out, 0, at);
+        System.arraycopy(values, at, out, at + 1, values.length - at);
+        out[at] = value;
+        return out;
+    }
+
+    private static float[] insert(float[] values, int at, float value) {
+        float[] out = new float[values.length + 1];
+        System.arraycopy(values, 0, out, 0, at);
+        System.arraycopy(values, at, out, at + 1, values.length - at);
+        out[at] = value;
+        return out;
+    }
+
+    /**
+     * Collects points and edges by id, then lays them out as a CSR graph. Duplicate edges (the map
+     * json lists most corridors in both directions, and the loader adds both directions again) and
+     * self loops are dropped. Adding a point with an id that already exists replaces it.
+     */
+    public static final class Builder {
+        private final Map<Integer, Waypoint> points = new HashMap<>();
+        private final List<Waypoint> order = new ArrayList<>(); // insertion order, for the room list
+        private long[] edges = new long[16]; // (fromId << 32) | toId
+        private int edgeCount = 0;
+
+        private Builder() {}
+
+        public Builder addPoint(Waypoint point) {
+            if (this.points.put(point.getId(), point) == null) {
+                this.order.add(point);
+            } else {
+                this.order.set(this.indexInOrder(point.getId()), point);
+            }
+            return this;
+        }
+
+        // returns false (and adds nothing) if either end of the edge hasn't been added yet
+        public boolean addEdge(int from, int to) {
+            if (!this.points.containsKey(from) || !this.points.containsKey(to)) {
+                return false;
+            }
+            if (this.edgeCount == this.edges.length) {
+                this.edges = Arrays.copyOf(this.edges, this.edgeCount * 2);
+            }
+            this.edges[this.edgeCount++] = ((long) from << 32) | (to & 0xFFFFFFFFL);
+            return true;
+        }
+
+        public Graph build() {
+            int n = this.points.size();
+            int[] ids = new int[n];
+            int j = 0;
+            for (int id : this.points.keySet()) { ids[j++] = id; }
+            Arrays.sort(ids);
+
+            float[] xs = new float[n];
+            float[] zs = new float[n];
+            String[] roomNames = new String[n];
+            float[] angleIns = new float[n];
+            for (int i = 0; i < n; i++) {
+                Waypoint p = this.points.get(ids[i]);
+                xs[i] = p.getX();
+                zs[i] = p.getZ();
+                roomNames[i] = p.getRoomName();
+                angleIns[i] = p.getAngleIn();
+            }
+            Map<String, Integer> entries = new LinkedHashMap<>();
+            for (Waypoint p : this.order) {
+                if (p.isEntry()) {
+                    entries.put(p.getRoomName(), Arrays.binarySearch(ids, p.getId()));
+                }
+            }
+
+            // remap edge ids to dense indices; packing (from, to) into one long means sorting
+            // groups edges by their source and puts duplicates next to each other
+            long[] packed = new long[this.edgeCount];
+            for (int e = 0; e < this.edgeCount; e++) {
+                int from = Arrays.binarySearch(ids, (int) (this.edges[e] >> 32));
+                int to = Arrays.binarySearch(ids, (int) this.edges[e]);
+                packed[e] = ((long) from << 32) | to;
+            }
+            Arrays.sort(packed);
+
+            int[] offsets = new int[n + 1];
+            int[] targets = new int[packed.length];
+            float[] weights = new float[packed.length];
+            int m = 0;
+            for (int e = 0; e < packed.length; e++) {
+                if (e > 0 && packed[e] == packed[e - 1]) { continue; }
+                int from = (int) (packed[e] >> 32);
+                int to = (int) packed[e];
+                if (from == to) { continue; }
+                targets[m] = to;
+                weights[m] = distance(xs, zs, from, to);
+                offsets[from + 1]++;
+                m++;
+            }
+            for (int i = 0; i < n; i++) { offsets[i + 1] += offsets[i]; }
+
+            return new Graph(ids, xs, zs, roomNames, angleIns, offsets,
+                    Arrays.copyOf(targets, m), Arrays.copyOf(weights, m), entries);
+        }
+
+        private int indexInOrder(int id) {
+            for (int j = 0; j < this.order.size(); j++) {
+                if (this.order.get(j).getId() == id) { return j; }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package wayfinding.core;
+
+import com.google.gson.Gson;
+
+import java.io.Reader;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Reads a {@link Graph} from the three JSON sources that describe a floor: entry points (nodes in
+ * the doorway of a room), nav points (the other nodes in the graph) and the edges between them.
+ */
+public final class GraphLoader {
+    private static final String TAG = "wayfinder.GraphLoader";
+    private static final Logger LOG = Logger.getLogger(TAG);
+
+    private GraphLoader() {}
+
+    // Edges in the JSON are undirected, so each one is added in both directions. Edges that refer
+    // to points which don't exist are logged and skipped. This returns the builder rather than the
+    // graph so that the caller can add any points that aren't in the json (like the root node).
+    public static Graph.Builder load(Reader entryPoints, Reader navPoints, Reader edges) {
+        Gson gson = new Gson();
+        Graph.Builder graph = Graph.builder();
+
+        for (JSONPoint p : gson.fromJson(entryPoints, JSONPoint[].class)) {
+            graph.addPoint(new Waypoint(p.id, p.x, p.z, p.roomName, p.angleIn));
+        }
+        for (JSONPoint p : gson.fromJson(navPoints, JSONPoint[].class)) {
+            graph.addPoint(new Waypoint(p.id, p.x, p.z));
+        }
+        for (JSONEdge e : gson.fromJson(edges, JSONEdge[].class)) {
+            if (!graph.addEdge(e.from, e.to) || !graph.addEdge(e.to, e.from)) {
+                LOG.warning(String.format(Locale.ENGLISH,
+                        "%s: could not assign edges %d and %d.", TAG, e.from, e.to));
+            }
+        }
+        return graph;
+    }
+}
@@ -0,0 +1,269 @@
+package wayfinding.core;
+
+import java.util.Arrays;
+
+/**
+ * Point-to-point routing over a {@link ContractionHierarchy}: a forward search from the origin
+ * that only takes up edges and a backward search from the destination that only takes down edges,
+ * run together until neither can beat the best meeting point found. Each search only ever sees a
+ * few hundred points however big the venue is, and skips ("stalls") points it can tell it reached
+ * the long way round. Like a {@link Router}, a HierarchyRouter keeps its search state between
+ * queries and must not be shared between threads, though any number of them can share a hierarchy.
+ */
+public final class HierarchyRouter {
+    private final ContractionHierarchy hierarchy;
+    private final Search forward;
+    private final Search backward;
+    private final IntList path = new IntList(64);
+    private final IntList chain = new IntList(64); // see unpackForward()
+
+    // the attached point (see ContractionHierarchy.withAttachedPoint()) and its edges, by the ranks
+    // of the points at their other ends, which seed searches that start at it or pass through it
+    private final int attachedAt;
+    private final int[] attachedOut;
+    private final double[] attachedOutWeights;
+
+    // the forward search's seeds for the current query, by rank
+    private final int[] seeds;
+    private final double[] seedOffsets;
+
+    public HierarchyRouter(ContractionHierarchy hierarchy) {
+        int n = hierarchy.getBaseGraph().size();
+        this.hierarchy = hierarchy;
+        this.forward = new Search(n);
+        this.backward = new Search(n);
+
+        this.attachedAt = hierarchy.getAttachedAt();
+        Graph g = hierarchy.getGraph();
+        int out = this.attachedAt == Graph.NO_POINT ? 0 : g.endEdge(this.attachedAt) - g.firstEdge(this.attachedAt);
+        this.attachedOut = new int[out];
+        this.attachedOutWeights = new double[out];
+        for (int j = 0; j < out; j++) {
+            int e = g.firstEdge(this.attachedAt) + j;
+            this.attachedOut[j] = hierarchy.rankOf(this.toBase(g.edgeTarget(e)));
+            this.attachedOutWeights[j] = g.edgeWeight(e);
+        }
+        this.seeds = new int[1 + out];
+        this.seedOffsets = new double[1 + out];
+    }
+
+    public ContractionHierarchy getHierarchy() { return this.hierarchy; }
+
+    // The shortest route between two points of the hierarchy's graph (with the attached point, if
+    // any). Routes to the attached point come straight from the hierarchy's routes to it. A route
+    // from it starts at its neighbours, and any other route might pass through it, so the forward
+    // search also starts at its neighbours, each as far from the origin as going there through
+    // the attached point is. One search then finds the shorter of the direct route and the one
+    // through the attached point.
+    public Route route(int origin, int destination) {
+        if (origin == Graph.NO_POINT || destination == Graph.NO_POINT) {
+            return Route.NONE;
+        }
+        if (origin == destination) {
+            return new Route(new int[] {origin}, 0);
+        }
+        int at = this.attachedAt;
+        if (destination == at) {
+            return this.routeToAttached(origin);
+        }
+        int seedCount = 0;
+        if (origin != at) {
+            this.seeds[seedCount] = this.rankOf(origin);
+            this.seedOffsets[seedCount++] = 0;
+        }
+        double viaAttached = origin == at ? 0 : this.hierarchy.distanceToAttached(origin);
+        if (viaAttached != Double.POSITIVE_INFINITY) {
+            for (int j = 0; j < this.attachedOut.length; j++) {
+                this.seeds[seedCount] = this.attachedOut[j];
+                this.seedOffsets[seedCount++] = viaAttached + this.attachedOutWeights[j];
+            }
+        }
+        double length = this.search(seedCount, this.rankOf(destination));
+        if (length == Double.POSITIVE_INFINITY) {
+            return Route.NONE;
+        }
+        // the origin's own seed is at 0, so a path from its rank never went through the attached point
+        boolean isDirect = origin != at && this.path.get(0) == this.seeds[0];
+        int before = 0; // the points from the origin to the attached point, if the route goes through it
+        if (!isDirect) {
+            for (int p = origin; p != Graph.NO_POINT; p = this.hierarchy.towardsAttached(p)) { before++; }
+        }
+        int[] points = new int[before + this.path.size()];
+        int k = 0;
+        if (!isDirect) {
+            for (int p = origin; p != Graph.NO_POINT; p = this.hierarchy.towardsAttached(p)) { points[k++] = p; }
+        }
+        for (int j = 0; j < this.path.size(); j++) { points[k++] = this.pointOf(this.path.get(j)); }
+        return new Route(points, length);
+    }
+
+    // the route from a point to the attached point, which the hierarchy already knows
+    private Route routeToAttached(int origin) {
+        double length = this.hierarchy.distanceToAttached(origin);
+        if (length == Double.POSITIVE_INFINITY) {
+            return Route.NONE;
+        }
+        int size = 0;
+        for (int p = origin; p != Graph.NO_POINT; p = this.hierarchy.towardsAttached(p)) { size++; }
+        int[] points = new int[size];
+        int k = 0;
+        for (int p = origin; p != Graph.NO_POINT; p = this.hierarchy.towardsAttached(p)) { points[k++] = p; }
+        return new Route(points, length);
+    }
+
+    // the hierarchy rank of a point in the graph with the attached point, which mustn't be it
+    private int rankOf(int index) { return this.hierarchy.rankOf(this.toBase(index)); }
+
+    // the point in the graph with the attached point that has the given rank
+    private int pointOf(int rank) { return this.toAttached(this.hierarchy.pointOf(rank)); }
+
+    private int toBase(int index) {
+        return this.attachedAt == Graph.NO_POINT || index < this.attachedAt ? index : index - 1;
+    }
+
+    private int toAttached(int index) {
+        return this.attachedAt == Graph.NO_POINT || index < this.attachedAt ? index : index + 1;
+    }
+
+    // Runs both searches, forward from the first seedCount seeds (each starting at its offset) and
+    // backward from target, and leaves the unpacked path, by rank, in this.path. Returns its
+    // length, infinite if there isn't one.
+    private double search(int seedCount, int target) {
+        ContractionHierarchy h = this.hierarchy;
+        Search f = this.forward;
+        Search b = this.backward;
+        f.start();
+        b.start();
+        for (int j = 0; j < seedCount; j++) { f.reach(this.seeds[j], this.seedOffsets[j], Graph.NO_POINT, Graph.NO_EDGE); }
+        b.reach(target, 0, Graph.NO_POINT, Graph.NO_EDGE);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meet = Graph.NO_POINT;
+        while (true) {
+            double forwardMin = f.heap.isEmpty() ? Double.POSITIVE_INFINITY : f.heap.keyOf(f.heap.peek());
+            double backwardMin = b.heap.isEmpty() ? Double.POSITIVE_INFINITY : b.heap.keyOf(b.heap.peek());
+            if (Math.min(forwardMin, backwardMin) >= best) {
+                break;
+            }
+            if (forwardMin <= backwardMin) {
+                int v = f.heap.poll();
+                if (b.has(v) && f.dist[v] + b.dist[v] < best) {
+                    best = f.dist[v] + b.dist[v];
+                    meet = v;
+                }
+                if (this.stalledForward(v)) { continue; }
+                for (int e = h.firstUp(v); e < h.endUp(v); e++) {
+                    int w = h.upTarget(e);
+                    double alt = f.dist[v] + h.upWeight(e);
+                    if (!f.has(w) || alt < f.dist[w]) { f.reach(w, alt, v, e); }
+                }
+            } else {
+                int v = b.heap.poll();
+                if (f.has(v) && f.dist[v] + b.dist[v] < best) {
+                    best = f.dist[v] + b.dist[v];
+                    meet = v;
+                }
+                if (this.stalledBackward(v)) { continue; }
+                for (int e = h.firstDown(v); e < h.endDown(v); e++) {
+                    int u = h.downSource(e);
+                    double alt = b.dist[v] + h.downWeight(e);
+                    if (!b.has(u) || alt < b.dist[u]) { b.reach(u, alt, v, e); }
+                }
+            }
+        }
+        f.heap.clear();
+        b.heap.clear();
+
+        this.path.clear();
+        if (meet != Graph.NO_POINT) {
+            this.unpackForward(meet);
+            for (int v = meet; b.parent[v] != Graph.NO_POINT; v = b.parent[v]) {
+                int next = b.parent[v];
+                this.unpack(v, next, h.downMiddle(b.edge[v]));
+            }
+        }
+        return best;
+    }
+
+    // a point is stalled if the forward search already knows a shorter way to it down from a more
+    // important point, in which case it needn't go on from there
+    private boolean stalledForward(int v) {
+        ContractionHierarchy h = this.hierarchy;
+        Search f = this.forward;
+        for (int e = h.firstDown(v); e < h.endDown(v); e++) {
+            int u = h.downSource(e);
+            if (f.has(u) && f.dist[u] + h.downWeight(e) < f.dist[v]) { return true; }
+        }
+        return false;
+    }
+
+    private boolean stalledBackward(int v) {
+        ContractionHierarchy h = this.hierarchy;
+        Search b = this.backward;
+        for (int e = h.firstUp(v); e < h.endUp(v); e++) {
+            int w = h.upTarget(e);
+            if (b.has(w) && b.dist[w] + h.upWeight(e) < b.dist[v]) { return true; }
+        }
+        return false;
+    }
+
+    // adds the forward search's path from its source up to v
+    private void unpackForward(int v) {
+        Search f = this.forward;
+        IntList chain = this.chain; // v back to the source
+        chain.clear();
+        for (int p = v; p != Graph.NO_POINT; p = f.parent[p]) { chain.add(p); }
+        this.path.add(chain.get(chain.size() - 1));
+        for (int j = chain.size() - 2; j >= 0; j--) {
+            this.unpack(chain.get(j + 1), chain.get(j), this.hierarchy.upMiddle(f.edge[chain.get(j)]));
+        }
+    }
+
+    // adds the graph points along the hierarchy edge from one point to another, after from
+    private void unpack(int from, int to, int middle) {
+        if (middle == Graph.NO_POINT) {
+            this.path.add(to);
+            return;
+        }
+        ContractionHierarchy h = this.hierarchy;
+        this.unpack(from, middle, h.downMiddle(h.findDown(middle, from)));
+        this.unpack(middle, to, h.upMiddle(h.findUp(middle, to)));
+    }
+
+    // one direction's search state, stamped by generation like Router's
+    private static final class Search {
+        final IndexedMinHeap heap;
+        final double[] dist;
+        final int[] parent; // the point this one was reached from, NO_POINT for seeds
+        final int[] edge; // the hierarchy edge it was reached along
+        final int[] seen;
+        int generation = 0;
+
+        Search(int n) {
+            this.heap = new IndexedMinHeap(n);
+            this.dist = new double[n];
+            this.parent = new int[n];
+            this.edge = new int[n];
+            this.seen = new int[n];
+        }
+
+        void start() {
+            this.heap.clear();
+            if (++this.generation == 0) {
+                Arrays.fill(this.seen, 0);
+                this.generation = 1;
+            }
+        }
+
+        boolean has(int point) { return this.seen[point] == this.generation; }
+
+        void reach(int point, double dist, int parent, int edge) {
+            if (this.has(point) && this.dist[point] <= dist) { return; }
+            this.seen[point] = this.generation;
+            this.dist[point] = dist;
+            this.parent[point] = parent;
+            this.edge[point] = edge;
+            this.heap.insertOrDecrease(point, dist);
+        }
+    }
+}
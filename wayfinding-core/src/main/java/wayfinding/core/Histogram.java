@@ -0,0 +1,85 @@
+package wayfinding.core;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non negative long values (durations, counts) cheap enough to record into every
+ * frame. Values are counted in log-linear buckets: exact below SUB_BUCKETS, then SUB_BUCKETS buckets
+ * per power of two, so percentiles are accurate to within about 6% across the whole long range
+ * with a fixed array of counts and no allocation when recording. Like {@link UpdateCounters}, a
+ * histogram is meant to be written from one thread, the one running the frame loop.
+ */
+public final class Histogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    // negative values are recorded as 0
+    public void record(long value) {
+        if (value < 0) { value = 0; }
+        this.counts[bucketOf(value)]++;
+        this.count++;
+        this.sum += value;
+        if (value < this.min) { this.min = value; }
+        if (value > this.max) { this.max = value; }
+    }
+
+    public long getCount() { return this.count; }
+    public long getMin() { return this.count == 0 ? 0 : this.min; }
+    public long getMax() { return this.count == 0 ? 0 : this.max; }
+    public double getMean() { return this.count == 0 ? 0 : (double) this.sum / this.count; }
+
+    // The smallest recorded value v such that at least the fraction p (0 to 1) of values are <= v,
+    // rounded up to the top of its bucket (but never past the largest value recorded).
+    public long getPercentile(double p) {
+        if (this.count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * this.count));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += this.counts[b];
+            if (seen >= rank) {
+                return Math.min(this.max, Math.max(this.min, upperBoundOf(b)));
+            }
+        }
+        return this.max;
+    }
+
+    public void reset() {
+        Arrays.fill(this.counts, 0);
+        this.count = 0;
+        this.sum = 0;
+        this.min = Long.MAX_VALUE;
+        this.max = Long.MIN_VALUE;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BITS
+        int shift = exponent - SUB_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    private static long lowerBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << shift;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        return bucket + 1 == BUCKETS ? Long.MAX_VALUE : lowerBoundOf(bucket + 1) - 1;
+    }
+}
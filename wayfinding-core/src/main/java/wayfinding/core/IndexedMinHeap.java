@@ -0,0 +1,108 @@
+package wayfinding.core;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap over the dense indices 0..capacity-1, keyed by a double priority, with a real
+ * decrease-key. Each index can be in the heap at most once and its position is tracked, so
+ * contains, decrease-key and poll are O(1), O(log n) and O(log n) with no boxing or allocation.
+ */
+public final class IndexedMinHeap {
+    private static final int ABSENT = -1;
+
+    private final int[] heap; // heap[slot] = index
+    private final int[] slots; // slots[index] = slot in heap, or ABSENT
+    private final double[] keys; // keys[index]
+    private int size = 0;
+
+    public IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.slots = new int[capacity];
+        this.keys = new double[capacity];
+        Arrays.fill(this.slots, ABSENT);
+    }
+
+    public int size() { return this.size; }
+
+    public boolean isEmpty() { return this.size == 0; }
+
+    public boolean contains(int index) { return this.slots[index] != ABSENT; }
+
+    public double keyOf(int index) { return this.keys[index]; }
+
+    // adds index with the given key, or lowers its key if it is already in the heap with a
+    // larger one. Returns false if the index was already in the heap with a key <= key.
+    public boolean insertOrDecrease(int index, double key) {
+        int slot = this.slots[index];
+        if (slot == ABSENT) {
+            this.keys[index] = key;
+            this.heap[this.size] = index;
+            this.slots[index] = this.size;
+            this.siftUp(this.size++);
+            return true;
+        }
+        if (key >= this.keys[index]) {
+            return false;
+        }
+        this.keys[index] = key;
+        this.siftUp(slot);
+        return true;
+    }
+
+    public int peek() { return this.heap[0]; }
+
+    // removes and returns the index with the smallest key
+    public int poll() {
+        int top = this.heap[0];
+        this.slots[top] = ABSENT;
+        if (--this.size > 0) {
+            int last = this.heap[this.size];
+            this.heap[0] = last;
+            this.slots[last] = 0;
+            this.siftDown(0);
+        }
+        return top;
+    }
+
+    // empties the heap in O(size) so it can be reused for another search
+    public void clear() {
+        for (int j = 0; j < this.size; j++) { this.slots[this.heap[j]] = ABSENT; }
+        this.size = 0;
+    }
+
+    private void siftUp(int slot) {
+        int index = this.heap[slot];
+        double key = this.keys[index];
+        while (slot > 0) {
+            int parentSlot = (slot - 1) >>> 1;
+            int parent = this.heap[parentSlot];
+            if (this.keys[parent] <= key) { break; }
+            this.heap[slot] = parent;
+            this.slots[parent] = slot;
+            slot = parentSlot;
+        }
+        this.heap[slot] = index;
+        this.slots[index] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int index = this.heap[slot];
+        double key = this.keys[index];
+        int half = this.size >>> 1;
+        while (slot < half) {
+            int childSlot = 2 * slot + 1;
+            int child = this.heap[childSlot];
+            int rightSlot = childSlot + 1;
+            if (rightSlot < this.size && this.keys[this.heap[rightSlot]] < this.keys[child]) {
+                childSlot = rightSlot;
+                child = this.heap[rightSlot];
+            }
+            if (key <= this.keys[child]) { break; }
+            this.heap[slot] = child;
+            this.slots[child] = slot;
+            slot = childSlot;
+        }
+        this.heap[slot] = index;
+        this.slots[index] = slot;
+    }
+}
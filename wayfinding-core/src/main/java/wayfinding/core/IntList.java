@@ -0,0 +1,38 @@
+package wayfinding.core;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints, for query results that callers want to reuse between calls
+ * instead of allocating a new collection each time.
+ */
+public final class IntList {
+    private int[] values;
+    private int size = 0;
+
+    public IntList() { this(16); }
+
+    public IntList(int capacity) { this.values = new int[Math.max(capacity, 1)]; }
+
+    public int size() { return this.size; }
+
+    public boolean isEmpty() { return this.size == 0; }
+
+    public int get(int j) { return this.values[j]; }
+
+    public void set(int j, int value) { this.values[j] = value; }
+
+    public void add(int value) {
+        if (this.size == this.values.length) {
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        this.values[this.size++] = value;
+    }
+
+    public void clear() { this.size = 0; }
+
+    // drops everything from index size onwards
+    public void truncate(int size) { this.size = Math.min(this.size, size); }
+
+    public int[] toArray() { return Arrays.copyOf(this.values, this.size); }
+}
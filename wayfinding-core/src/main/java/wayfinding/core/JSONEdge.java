@@ -0,0 +1,10 @@
+package wayfinding.core;
+
+// JSONEdge is just a helper class to help parse JSON using the gson library
+// It is easier to specify edges as two points, but for implementation purposes we want neighbour
+// information as opposed to double vertex format (Dijkstra's algorithm, basically)
+class JSONEdge {
+    int from, to;
+
+    JSONEdge() {} // empty constructor needed for gson
+}
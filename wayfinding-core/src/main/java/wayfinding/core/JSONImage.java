@@ -0,0 +1,9 @@
+package wayfinding.core;
+
+// JSONImage is a helper class to parse a marker manifest entry using the gson library
+class JSONImage {
+    String image;
+    float width; // metres, 0 if it isn't given
+
+    JSONImage() {} // empty constructor needed for gson
+}
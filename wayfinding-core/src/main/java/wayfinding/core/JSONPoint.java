@@ -0,0 +1,11 @@
+package wayfinding.core;
+
+// JSONPoint is just a helper class to help parse JSON using the gson library
+class JSONPoint {
+    String roomName;
+    float angleIn;
+    int id;
+    float x, z;
+
+    JSONPoint() {} // empty constructor needed for gson
+}
@@ -0,0 +1,141 @@
+package wayfinding.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Build time tool that validates the three map json sources and compiles them into one binary
+ * {@link MapFile}. Unlike {@link GraphLoader}, which logs and skips anything it can't use, the
+ * compiler fails the build on the first pass if any problem is found, listing all of them.
+ * With --contract, a {@link ContractionHierarchy} is built over the map and stored with it.
+ *
+ * <pre>
+ *   java wayfinding.core.MapCompiler [--contract] entry_points.json nav_points.json edges.json out.wfmap
+ * </pre>
+ */
+public final class MapCompiler {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private MapCompiler() {}
+
+    public static void main(String[] args) throws IOException {
+        boolean contract = args.length > 0 && args[0].equals("--contract");
+        if (contract) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (args.length != 4) {
+            System.err.println("usage: MapCompiler [--contract] entry_points.json nav_points.json edges.json out.wfmap");
+            System.exit(2);
+        }
+        List<String> problems = new ArrayList<>();
+        Graph graph = compile(args[0], args[1], args[2], problems);
+        if (!problems.isEmpty()) {
+            for (String problem : problems) { System.err.println("map error: " + problem); }
+            System.exit(1);
+        }
+
+        File out = new File(args[3]);
+        File dir = out.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        ContractionHierarchy hierarchy = contract ? ContractionHierarchy.build(graph) : null;
+        try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(out))) {
+            MapFile.write(graph, hierarchy, stream);
+        }
+        System.out.println(String.format(Locale.ENGLISH, "compiled %d points and %d edges into %s",
+                graph.size(), graph.edgeCount(), out));
+        if (hierarchy != null) {
+            System.out.println(String.format(Locale.ENGLISH, "with a contraction hierarchy of %d shortcuts",
+                    hierarchy.getShortcutCount()));
+        }
+    }
+
+    // Parses and checks the json, adding a message to problems for each thing wrong with it.
+    // Returns the graph, which is only meaningful if no problems were found.
+    public static Graph compile(String entryPointsPath, String navPointsPath, String edgesPath,
+                                List<String> problems) throws IOException {
+        JSONPoint[] entryPoints = parse(entryPointsPath, JSONPoint[].class, problems);
+        JSONPoint[] navPoints = parse(navPointsPath, JSONPoint[].class, problems);
+        JSONEdge[] edges = parse(edgesPath, JSONEdge[].class, problems);
+        Graph.Builder builder = Graph.builder();
+        if (entryPoints == null || navPoints == null || edges == null) {
+            return builder.build();
+        }
+
+        Map<Integer, String> seen = new HashMap<>(); // id -> file it was first seen in
+        Set<String> rooms = new HashSet<>();
+        for (JSONPoint p : entryPoints) {
+            checkPoint(p, entryPointsPath, seen, problems);
+            if (p.roomName == null || p.roomName.trim().isEmpty()) {
+                problems.add(String.format(Locale.ENGLISH, "%s: entry point %d has no roomName", entryPointsPath, p.id));
+            } else if (!rooms.add(p.roomName)) {
+                problems.add(String.format(Locale.ENGLISH, "%s: room \"%s\" has more than one entry point", entryPointsPath, p.roomName));
+            }
+            builder.addPoint(new Waypoint(p.id, p.x, p.z, p.roomName, p.angleIn));
+        }
+        for (JSONPoint p : navPoints) {
+            checkPoint(p, navPointsPath, seen, problems);
+            if (p.roomName != null) {
+                problems.add(String.format(Locale.ENGLISH, "%s: nav point %d has a roomName, it belongs in entry points", navPointsPath, p.id));
+            }
+            builder.addPoint(new Waypoint(p.id, p.x, p.z));
+        }
+        for (JSONEdge e : edges) {
+            if (e.from == e.to) {
+                problems.add(String.format(Locale.ENGLISH, "%s: edge from %d to itself", edgesPath, e.from));
+            } else if (!builder.addEdge(e.from, e.to) || !builder.addEdge(e.to, e.from)) {
+                problems.add(String.format(Locale.ENGLISH, "%s: edge %d to %d refers to a point that doesn't exist", edgesPath, e.from, e.to));
+            }
+        }
+        Graph graph = builder.build();
+        for (int i = 0; i < graph.size(); i++) {
+            if (graph.firstEdge(i) == graph.endEdge(i)) {
+                problems.add(String.format(Locale.ENGLISH, "point %d has no edges, so it can't be routed to", graph.getId(i)));
+            }
+        }
+        return graph;
+    }
+
+    private static void checkPoint(JSONPoint p, String path, Map<Integer, String> seen, List<String> problems) {
+        String first = seen.put(p.id, path);
+        if (first != null) {
+            problems.add(String.format(Locale.ENGLISH, "%s: point id %d is already used in %s", path, p.id, first));
+        }
+        if (Float.isNaN(p.x) || Float.isInfinite(p.x) || Float.isNaN(p.z) || Float.isInfinite(p.z)) {
+            problems.add(String.format(Locale.ENGLISH, "%s: point %d has an invalid position", path, p.id));
+        }
+    }
+
+    private static <T> T parse(String path, Class<T> type, List<String> problems) throws IOException {
+        try (Reader reader = new InputStreamReader(Files.newInputStream(Paths.get(path)), UTF_8)) {
+            T parsed = new Gson().fromJson(reader, type);
+            if (parsed == null) {
+                problems.add(path + ": file is empty");
+            }
+            return parsed;
+        } catch (JsonParseException e) {
+            problems.add(path + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package wayfinding.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The compiled binary map format: a {@link Graph}'s points, room names and CSR edges laid out as
+ * flat little endian arrays, so that loading a map is a handful of bulk copies out of a (usually
+ * memory mapped) ByteBuffer instead of parsing json. The layout is
+ *
+ * <pre>
+ *   int magic, int version, int pointCount (n), int edgeCount (m), int entryCount (k), int nameBytes
+ *   int[n] ids, float[n] xs, float[n] zs, float[n] angleIns
+ *   int[n + 1] offsets, int[m] targets, float[m] weights
+ *   k * (int pointIndex, int nameOffset, int nameLength)
+ *   byte[nameBytes] room names, utf-8
+ *   int hasHierarchy, then if it's 1 a {@link ContractionHierarchy} (version 2 on):
+ *     int upCount (u), int downCount (d), int[n] ranks
+ *     int[n + 1] upOffsets, int[u] upTargets, double[u] upWeights, int[u] upMiddles
+ *     int[n + 1] downOffsets, int[d] downSources, double[d] downWeights, int[d] downMiddles
+ * </pre>
+ *
+ * Maps are written at build time by {@link MapCompiler}. Version 1 maps (with no hierarchy
+ * section) can still be read.
+ */
+public final class MapFile {
+    public static final int MAGIC = 0x50414d57; // "WMAP" read as little endian bytes
+    public static final int VERSION = 2;
+
+    private static final int HEADER_BYTES = 6 * 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private MapFile() {}
+
+    public static Graph read(ByteBuffer source) throws IOException {
+        ByteBuffer buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a compiled map");
+        }
+        int version = buffer.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported map version " + version);
+        }
+        int n = buffer.getInt();
+        int m = buffer.getInt();
+        int k = buffer.getInt();
+        int nameBytes = buffer.getInt();
+        long expected = HEADER_BYTES + 4L * (5L * n + 1 + 2L * m + 3L * k) + nameBytes;
+        if (n < 0 || m < 0 || k < 0 || nameBytes < 0 || HEADER_BYTES + buffer.remaining() < expected) {
+            throw new IOException("Truncated map");
+        }
+
+        int[] ids = getInts(buffer, new int[n]);
+        float[] xs = getFloats(buffer, new float[n]);
+        float[] zs = getFloats(buffer, new float[n]);
+        float[] angleIns = getFloats(buffer, new float[n]);
+        int[] offsets = getInts(buffer, new int[n + 1]);
+        int[] targets = getInts(buffer, new int[m]);
+        float[] weights = getFloats(buffer, new float[m]);
+        int[] entryIndices = getInts(buffer, new int[3 * k]);
+        byte[] names = new byte[nameBytes];
+        buffer.get(names);
+
+        // one pass to make sure a corrupt file can't send routing out of bounds later on
+        if (offsets[0] != 0 || offsets[n] != m) {
+            throw new IOException("Corrupt map edge offsets");
+        }
+        for (int i = 0; i < n; i++) {
+            if (offsets[i] > offsets[i + 1] || (i > 0 && ids[i - 1] >= ids[i])) {
+                throw new IOException("Corrupt map points");
+            }
+        }
+        for (int to : targets) {
+            if (to < 0 || to >= n) {
+                throw new IOException("Corrupt map edge targets");
+            }
+        }
+
+        String[] roomNames = new String[n];
+        Map<String, Integer> entries = new LinkedHashMap<>();
+        for (int j = 0; j < k; j++) {
+            int index = entryIndices[3 * j];
+            if (index < 0 || index >= n || entryIndices[3 * j + 1] < 0
+                    || entryIndices[3 * j + 1] + entryIndices[3 * j + 2] > nameBytes) {
+                throw new IOException("Corrupt map entries");
+            }
+            String roomName = new String(names, entryIndices[3 * j + 1], entryIndices[3 * j + 2], UTF_8);
+            roomNames[index] = roomName;
+            entries.put(roomName, index);
+        }
+        return new Graph(ids, xs, zs, roomNames, angleIns, offsets, targets, weights, entries);
+    }
+
+    // Reads the contraction hierarchy stored with the map that read() returned graph for, or
+    // returns null if the map doesn't have one.
+    public static ContractionHierarchy readHierarchy(ByteBuffer source, Graph graph) throws IOException {
+        ByteBuffer buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a compiled map");
+        }
+        int version = buffer.getInt();
+        int n = buffer.getInt();
+        int m = buffer.getInt();
+        int k = buffer.getInt();
+        int nameBytes = buffer.getInt();
+        if (n != graph.size() || m != graph.edgeCount()) {
+            throw new IOException("The map isn't the one the graph was read from");
+        }
+        long section = HEADER_BYTES + 4L * (5L * n + 1 + 2L * m + 3L * k) + nameBytes;
+        if (version < 2 || buffer.remaining() < section - HEADER_BYTES + 4) {
+            return null;
+        }
+        buffer.position(buffer.position() + (int) section - HEADER_BYTES);
+        if (buffer.getInt() == 0) {
+            return null;
+        }
+        int u = buffer.getInt();
+        int d = buffer.getInt();
+        if (u < 0 || d < 0 || buffer.remaining() < 4L * (n + 2L * (n + 1)) + 16L * ((long) u + d)) {
+            throw new IOException("Truncated map hierarchy");
+        }
+        int[] ranks = getInts(buffer, new int[n]);
+        int[] upOffsets = getInts(buffer, new int[n + 1]);
+        int[] upTargets = getInts(buffer, new int[u]);
+        double[] upWeights = getDoubles(buffer, new double[u]);
+        int[] upMiddles = getInts(buffer, new int[u]);
+        int[] downOffsets = getInts(buffer, new int[n + 1]);
+        int[] downSources = getInts(buffer, new int[d]);
+        double[] downWeights = getDoubles(buffer, new double[d]);
+        int[] downMiddles = getInts(buffer, new int[d]);
+
+        boolean[] ranked = new boolean[n];
+        for (int rank : ranks) {
+            if (rank < 0 || rank >= n || ranked[rank]) {
+                throw new IOException("Corrupt map hierarchy ranks");
+            }
+            ranked[rank] = true;
+        }
+        checkHierarchyEdges(n, upOffsets, upTargets, upMiddles);
+        checkHierarchyEdges(n, downOffsets, downSources, downMiddles);
+        checkShortcuts(upOffsets, upTargets, upMiddles, downOffsets, downSources, downMiddles);
+        return new ContractionHierarchy(graph, ranks, upOffsets, upTargets, upWeights, upMiddles,
+                downOffsets, downSources, downWeights, downMiddles);
+    }
+
+    private static void checkHierarchyEdges(int n, int[] offsets, int[] others, int[] middles) throws IOException {
+        if (offsets[0] != 0 || offsets[n] != others.length) {
+            throw new IOException("Corrupt map hierarchy offsets");
+        }
+        for (int i = 0; i < n; i++) {
+            if (offsets[i] > offsets[i + 1]) {
+                throw new IOException("Corrupt map hierarchy offsets");
+            }
+        }
+        for (int e = 0; e < others.length; e++) {
+            if (others[e] < 0 || others[e] >= n || middles[e] < Graph.NO_POINT || middles[e] >= n) {
+                throw new IOException("Corrupt map hierarchy edges");
+            }
+        }
+    }
+
+    // Every edge must lead to a more important point (a lower rank), and every shortcut must skip a
+    // point less important than both its ends and stand for a down edge into that point from its
+    // start and an up edge out of it to its end. HierarchyRouter unpacks shortcuts on that basis,
+    // so a corrupt one would otherwise only fail (or recurse without end) once a route used it.
+    private static void checkShortcuts(int[] upOffsets, int[] upTargets, int[] upMiddles,
+                                       int[] downOffsets, int[] downSources, int[] downMiddles) throws IOException {
+        int n = upOffsets.length - 1;
+        for (int v = 0; v < n; v++) {
+            for (int e = upOffsets[v]; e < upOffsets[v + 1]; e++) { // v to upTargets[e]
+                int middle = upMiddles[e];
+                if (upTargets[e] >= v || (middle != Graph.NO_POINT && (middle <= v
+                        || !has(downOffsets, downSources, middle, v) || !has(upOffsets, upTargets, middle, upTargets[e])))) {
+                    throw new IOException("Corrupt map hierarchy shortcuts");
+                }
+            }
+            for (int e = downOffsets[v]; e < downOffsets[v + 1]; e++) { // downSources[e] to v
+                int middle = downMiddles[e];
+                if (downSources[e] >= v || (middle != Graph.NO_POINT && (middle <= v
+                        || !has(downOffsets, downSources, middle, downSources[e]) || !has(upOffsets, upTargets, middle, v)))) {
+                    throw new IOException("Corrupt map hierarchy shortcuts");
+                }
+            }
+        }
+    }
+
+    // whether point's edges (in CSR) include one with the other end at other
+    private static boolean has(int[] offsets, int[] others, int point, int other) {
+        for (int e = offsets[point]; e < offsets[point + 1]; e++) {
+            if (others[e] == other) { return true; }
+        }
+        return false;
+    }
+
+    public static void write(Graph graph, OutputStream out) throws IOException {
+        write(graph, null, out);
+    }
+
+    // writes the graph along with a contraction hierarchy built over it, which may be null
+    public static void write(Graph graph, ContractionHierarchy hierarchy, OutputStream out) throws IOException {
+        if (hierarchy != null && (hierarchy.getBaseGraph() != graph || hierarchy.getGraph() != graph)) {
+            throw new IllegalArgumentException("The hierarchy wasn't built over this graph");
+        }
+        int n = graph.size();
+        int m = graph.edgeCount();
+        int k = 0;
+        for (String ignored : graph.getRoomNames()) { k++; }
+
+        byte[][] names = new byte[k][];
+        int nameBytes = 0;
+        int j = 0;
+        for (String roomName : graph.getRoomNames()) {
+            names[j] = roomName.getBytes(UTF_8);
+            nameBytes += names[j++].length;
+        }
+
+        int u = hierarchy == null ? 0 : hierarchy.getUpTargets().length;
+        int d = hierarchy == null ? 0 : hierarchy.getDownSources().length;
+        int hierarchyBytes = hierarchy == null ? 0 : 4 * (2 + n + 2 * (n + 1)) + 16 * (u + d);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 4 * (5 * n + 1 + 2 * m + 3 * k) + nameBytes
+                + 4 + hierarchyBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m).putInt(k).putInt(nameBytes);
+        for (int i = 0; i < n; i++) { buffer.putInt(graph.getId(i)); }
+        for (int i = 0; i < n; i++) { buffer.putFloat(graph.getX(i)); }
+        for (int i = 0; i < n; i++) { buffer.putFloat(graph.getZ(i)); }
+        for (int i = 0; i < n; i++) { buffer.putFloat(graph.getAngleIn(i)); }
+        for (int i = 0; i < n; i++) { buffer.putInt(graph.firstEdge(i)); }
+        buffer.putInt(m);
+        for (int e = 0; e < m; e++) { buffer.putInt(graph.edgeTarget(e)); }
+        for (int e = 0; e < m; e++) { buffer.putFloat(graph.edgeWeight(e)); }
+        int nameOffset = 0;
+        j = 0;
+        for (String roomName : graph.getRoomNames()) {
+            buffer.putInt(graph.indexOfEntry(roomName)).putInt(nameOffset).putInt(names[j].length);
+            nameOffset += names[j++].length;
+        }
+        for (byte[] name : names) { buffer.put(name); }
+        buffer.putInt(hierarchy == null ? 0 : 1);
+        if (hierarchy != null) {
+            buffer.putInt(u).putInt(d);
+            putInts(buffer, hierarchy.getRanks());
+            putInts(buffer, hierarchy.getUpOffsets());
+            putInts(buffer, hierarchy.getUpTargets());
+            for (double weight : hierarchy.getUpWeights()) { buffer.putDouble(weight); }
+            putInts(buffer, hierarchy.getUpMiddles());
+            putInts(buffer, hierarchy.getDownOffsets());
+            putInts(buffer, hierarchy.getDownSources());
+            for (double weight : hierarchy.getDownWeights()) { buffer.putDouble(weight); }
+            putInts(buffer, hierarchy.getDownMiddles());
+        }
+
+        out.write(buffer.array());
+        out.flush();
+    }
+
+    // bulk copies from the buffer through an int view, which is a memcpy for matching byte orders
+    private static int[] getInts(ByteBuffer buffer, int[] out) {
+        buffer.asIntBuffer().get(out);
+        buffer.position(buffer.position() + 4 * out.length);
+        return out;
+    }
+
+    private static double[] getDoubles(ByteBuffer buffer, double[] out) {
+        buffer.asDoubleBuffer().get(out);
+        buffer.position(buffer.position() + 8 * out.length);
+        return out;
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        for (int value : values) { buffer.putInt(value); }
+    }
+
+    private static float[] getFloats(ByteBuffer buffer, float[] out) {
+        buffer.asFloatBuffer().get(out);
+        buffer.position(buffer.position() + 4 * out.length);
+        return out;
+    }
+}
@@ -0,0 +1,36 @@
+package wayfinding.core;
+
+/**
+ * An image in the augmented image database and what scanning it does. An anchor marker is fixed
+ * somewhere in the venue: it's a point in map space, joined to the nav points with the given ids
+ * so routes can start from it, and yaw is how far (in degrees, about the vertical) the map's axes
+ * are turned from the image's. Anything else is a content marker, which shows something of its own
+ * rather than the map.
+ */
+public final class Marker {
+    private final String imageName;
+    private final Waypoint point; // null for content markers
+    private final float yaw;
+    private final int[] attachIds;
+
+    private Marker(String imageName, Waypoint point, float yaw, int[] attachIds) {
+        this.imageName = imageName;
+        this.point = point;
+        this.yaw = yaw;
+        this.attachIds = attachIds;
+    }
+
+    public static Marker anchor(String imageName, Waypoint point, float yaw, int... attachIds) {
+        return new Marker(imageName, point, yaw, attachIds.clone());
+    }
+
+    public static Marker content(String imageName) {
+        return new Marker(imageName, null, 0, new int[0]);
+    }
+
+    public String getImageName() { return this.imageName; }
+    public boolean isAnchor() { return this.point != null; }
+    public Waypoint getPoint() { return this.point; }
+    public float getYaw() { return this.yaw; }
+    public int[] getAttachIds() { return this.attachIds.clone(); }
+}
@@ -0,0 +1,71 @@
+package wayfinding.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The images to build an augmented image database from, read from JSON like
+ * [{"image": "marker.jpg", "width": 0.21}]. Each image is named by its asset, which is also the
+ * name the database knows it by (see MarkerRegistry.resolve()), and width is how wide it is printed,
+ * in metres. The width can be left out, but ARCore detects an image sooner when it's given one
+ * rather than having to estimate it from several viewpoints.
+ */
+public final class MarkerManifest {
+    public static final float UNKNOWN_WIDTH = 0;
+
+    private final String[] images;
+    private final float[] widths;
+
+    private MarkerManifest(String[] images, float[] widths) {
+        this.images = images;
+        this.widths = widths;
+    }
+
+    public static MarkerManifest read(Reader json) {
+        JSONImage[] entries;
+        try {
+            entries = new Gson().fromJson(json, JSONImage[].class);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("The marker manifest isn't a list of images", e);
+        }
+        if (entries == null) {
+            entries = new JSONImage[0];
+        }
+        String[] images = new String[entries.length];
+        float[] widths = new float[entries.length];
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < entries.length; i++) {
+            JSONImage entry = entries[i];
+            if (entry == null || entry.image == null || entry.image.isEmpty()) {
+                throw new IllegalArgumentException("Every image in the marker manifest needs a name");
+            }
+            if (!seen.add(entry.image)) {
+                throw new IllegalArgumentException("The marker manifest has " + entry.image + " twice");
+            }
+            if (!(entry.width >= 0) || Float.isInfinite(entry.width)) {
+                throw new IllegalArgumentException("The width of " + entry.image + " must be a number of metres, or left out");
+            }
+            images[i] = entry.image;
+            widths[i] = entry.width;
+        }
+        return new MarkerManifest(images, widths);
+    }
+
+    public int size() { return this.images.length; }
+    public String getImage(int i) { return this.images[i]; }
+
+    // in metres, or UNKNOWN_WIDTH
+    public float getWidth(int i) { return this.widths[i]; }
+    public boolean hasWidth(int i) { return this.widths[i] != UNKNOWN_WIDTH; }
+
+    // a key that changes whenever the manifest does, for naming anything cached that's built from it
+    public String fingerprint() {
+        long hash = 31L * Arrays.hashCode(this.images) + Arrays.hashCode(this.widths);
+        return Long.toHexString(hash & 0xffffffffffffL);
+    }
+}
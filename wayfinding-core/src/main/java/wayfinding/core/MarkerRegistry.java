@@ -0,0 +1,93 @@
+package wayfinding.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link Marker}s in an augmented image database, so that a tracked image can be dispatched
+ * on. Markers are registered by image name, since that's what the database keeps, but tracked
+ * images come with their index too: the first time an index is seen its name is looked up once,
+ * and from then on resolve() is an array lookup. Markers are known by their slot, 0..size()-1 in
+ * the order they were added, so per marker state can live in plain arrays. resolve() must only be
+ * called from one thread.
+ */
+public final class MarkerRegistry {
+    public static final int NO_MARKER = -1;
+    private static final int UNSEEN = -2;
+
+    private final Marker[] markers;
+    private final Map<String, Integer> slots; // by image name
+    private final int fallback; // the slot for images that weren't added by name, or NO_MARKER
+    private int[] byImage = new int[0]; // slots by image index, UNSEEN until resolved
+
+    private MarkerRegistry(Marker[] markers, Map<String, Integer> slots, int fallback) {
+        this.markers = markers;
+        this.slots = slots;
+        this.fallback = fallback;
+    }
+
+    public static Builder builder() { return new Builder(); }
+
+    public int size() { return this.markers.length; }
+
+    public Marker get(int slot) { return this.markers[slot]; }
+
+    // the slot of the marker with the given image name (or the fallback), or NO_MARKER
+    public int slotOf(String imageName) {
+        Integer slot = this.slots.get(imageName);
+        return slot == null ? this.fallback : slot;
+    }
+
+    // The slot of the marker for a tracked image, or NO_MARKER. Only the first call for each
+    // image index looks at the name.
+    public int resolve(int imageIndex, String imageName) {
+        if (imageIndex >= this.byImage.length) {
+            int grown = this.byImage.length;
+            this.byImage = Arrays.copyOf(this.byImage, Math.max(imageIndex + 1, 2 * this.byImage.length));
+            Arrays.fill(this.byImage, grown, this.byImage.length, UNSEEN);
+        }
+        int slot = this.byImage[imageIndex];
+        if (slot == UNSEEN) {
+            slot = this.slotOf(imageName);
+            this.byImage[imageIndex] = slot;
+        }
+        return slot;
+    }
+
+    /**
+     * Collects markers, keyed by their image names, and optionally a fallback for every other
+     * image. Adding a marker with an image name that's already there replaces it.
+     */
+    public static final class Builder {
+        private final List<Marker> markers = new ArrayList<>();
+        private final Map<String, Integer> slots = new HashMap<>();
+        private int fallback = NO_MARKER;
+
+        private Builder() {}
+
+        public Builder add(Marker marker) {
+            Integer slot = this.slots.get(marker.getImageName());
+            if (slot != null) {
+                this.markers.set(slot, marker);
+            } else {
+                this.slots.put(marker.getImageName(), this.markers.size());
+                this.markers.add(marker);
+            }
+            return this;
+        }
+
+        // the marker for images that aren't added by name; it's added too, if it hasn't been
+        public Builder setFallback(Marker marker) {
+            this.add(marker);
+            this.fallback = this.slots.get(marker.getImageName());
+            return this;
+        }
+
+        public MarkerRegistry build() {
+            return new MarkerRegistry(this.markers.toArray(new Marker[0]), new HashMap<>(this.slots), this.fallback);
+        }
+    }
+}
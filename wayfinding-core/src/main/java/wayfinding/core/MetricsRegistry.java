@@ -0,0 +1,45 @@
+package wayfinding.core;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Named {@link Histogram}s, so per-frame measurements can be registered in one place and then
+ * summarised together, e.g. for a debug overlay or a dump file. Look histograms up once and keep
+ * them rather than calling histogram() every frame.
+ */
+public final class MetricsRegistry {
+    private static final String HEADER_FMT = "%-28s %8s %10s %8s %8s %8s %8s%n";
+    private static final String ROW_FMT = "%-28s %8d %10.1f %8d %8d %8d %8d%n";
+
+    private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+
+    // the histogram with the given name, made the first time it is asked for
+    public synchronized Histogram histogram(String name) {
+        Histogram histogram = this.histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            this.histograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    public synchronized Iterable<String> getNames() { return this.histograms.keySet(); }
+
+    // one line per histogram, in the order they were registered
+    public synchronized String summary() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ENGLISH, HEADER_FMT, "metric", "count", "mean", "p50", "p90", "p99", "max"));
+        for (Map.Entry<String, Histogram> entry : this.histograms.entrySet()) {
+            Histogram h = entry.getValue();
+            out.append(String.format(Locale.ENGLISH, ROW_FMT, entry.getKey(), h.getCount(), h.getMean(),
+                    h.getPercentile(0.5), h.getPercentile(0.9), h.getPercentile(0.99), h.getMax()));
+        }
+        return out.toString();
+    }
+
+    public synchronized void reset() {
+        for (Histogram histogram : this.histograms.values()) { histogram.reset(); }
+    }
+}
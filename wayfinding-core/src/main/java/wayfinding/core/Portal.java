@@ -0,0 +1,32 @@
+package wayfinding.core;
+
+/**
+ * A connection between two shards of a {@link ShardedMap}, like a lift, a staircase or a door
+ * between buildings. Portals join a point in one shard to a point in another (by their ids in the
+ * map json) and, like edges, can be walked in both directions. The cost is in the same units as
+ * edge weights (metres), so a slow lift can be made to cost more than the stairs next to it.
+ */
+public final class Portal {
+    private final String fromShard;
+    private final int fromId;
+    private final String toShard;
+    private final int toId;
+    private final float cost;
+
+    public Portal(String fromShard, int fromId, String toShard, int toId, float cost) {
+        if (!(cost >= 0)) {
+            throw new IllegalArgumentException("Portal cost must be a non negative number, not " + cost);
+        }
+        this.fromShard = fromShard;
+        this.fromId = fromId;
+        this.toShard = toShard;
+        this.toId = toId;
+        this.cost = cost;
+    }
+
+    public String getFromShard() { return this.fromShard; }
+    public int getFromId() { return this.fromId; }
+    public String getToShard() { return this.toShard; }
+    public int getToId() { return this.toId; }
+    public float getCost() { return this.cost; }
+}
@@ -0,0 +1,43 @@
+package wayfinding.core;
+
+/**
+ * A {@link Route} along with the yaw for the arrow at each point on it, read from the graph's
+ * precomputed edge bearings: bearingAt(j) points the arrow at point j towards point j + 1.
+ * The destination has no arrow, so there is one bearing fewer than there are points.
+ */
+public final class ResolvedRoute {
+    static final ResolvedRoute NONE = new ResolvedRoute(Route.NONE, new float[0]);
+
+    private final Route route;
+    private final float[] bearings;
+
+    private ResolvedRoute(Route route, float[] bearings) {
+        this.route = route;
+        this.bearings = bearings;
+    }
+
+    static ResolvedRoute of(Graph graph, Route route) {
+        if (!route.isFound()) {
+            return NONE;
+        }
+        float[] bearings = new float[route.size() - 1];
+        for (int j = 0; j < bearings.length; j++) {
+            int edge = graph.edgeBetween(route.pointAt(j), route.pointAt(j + 1));
+            if (edge == Graph.NO_EDGE) {
+                throw new IllegalArgumentException("Route doesn't follow the graph's edges at point " + j);
+            }
+            bearings[j] = graph.edgeBearing(edge);
+        }
+        return new ResolvedRoute(route, bearings);
+    }
+
+    public Route getRoute() { return this.route; }
+
+    public boolean isFound() { return this.route.isFound(); }
+
+    public int size() { return this.route.size(); }
+
+    public int pointAt(int j) { return this.route.pointAt(j); }
+
+    public float bearingAt(int j) { return this.bearings[j]; }
+}
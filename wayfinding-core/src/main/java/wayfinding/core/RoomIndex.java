@@ -0,0 +1,365 @@
+package wayfinding.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds rooms by name (or alias) as the user types. Every name and alias is normalised (lower
+ * case, with runs of anything but letters and digits turned into one space) and indexed along
+ * with each of its suffixes that start a word, so "room 3" and "3" both find "Venture Room 3".
+ * The terms live in a compressed trie laid out in flat arrays: each node covers a contiguous range
+ * of the sorted terms, so every term starting with the query is one walk down the trie away. If
+ * that doesn't turn up enough rooms, terms within one or two edits of the query (depending on its
+ * length) are found by walking the trie with a Levenshtein row per character.
+ *
+ * Rooms are ranked by how they matched (the whole name, the start of the name, the start of a
+ * later word, then by number of edits) and then by name. A RoomIndex keeps its search state
+ * between queries, so searching doesn't allocate, and like a {@link Router} it must not be shared
+ * between threads. Use a {@link Builder} to make one, or of() for a graph's rooms.
+ */
+public final class RoomIndex {
+    private static final int MAX_QUERY = 64; // longer queries are cut short
+
+    // how a room matched, best first
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int WORD_PREFIX = 2;
+    private static final int FUZZY = 3; // plus the number of edits
+
+    private final String[] names; // by room, sorted by name so ties rank alphabetically
+    private final int[] entries; // each room's entry point in the graph
+
+    // every normalised name, alias and word suffix, sorted, with the room each belongs to
+    private final char[][] terms;
+    private final int[] termRooms;
+    private final boolean[] termIsWord; // whether the term starts at a later word
+
+    // The trie: node i covers the terms termFrom[i] until termTo[i], which all start with the
+    // node's path. The last part of the path (its label) is terms[termFrom[i]][labelFrom[i] until
+    // labelTo[i]], and the node's children are the nodes childFrom[i] until childTo[i].
+    private final int[] termFrom;
+    private final int[] termTo;
+    private final int[] labelFrom;
+    private final int[] labelTo;
+    private final int[] childFrom;
+    private final int[] childTo;
+
+    // search state, reused by every query
+    private final char[] query = new char[MAX_QUERY];
+    private int queryLength;
+    private final int[] rows; // Levenshtein rows by trie depth, MAX_QUERY + 1 apart, see fuzzy()
+    private final int[] best; // the best rank each room has matched with, if seen == generation
+    private final int[] seen;
+    private final IntList found = new IntList(); // the rooms matched so far
+    private int generation = 0;
+
+    private RoomIndex(String[] names, int[] entries, char[][] terms, int[] termRooms, boolean[] termIsWord) {
+        this.names = names;
+        this.entries = entries;
+        this.terms = terms;
+        this.termRooms = termRooms;
+        this.termIsWord = termIsWord;
+
+        IntList termFrom = new IntList();
+        IntList termTo = new IntList();
+        IntList labelFrom = new IntList();
+        IntList labelTo = new IntList();
+        IntList childFrom = new IntList();
+        IntList childTo = new IntList();
+        termFrom.add(0);
+        termTo.add(terms.length);
+        labelFrom.add(0);
+        labelTo.add(0);
+        // breadth first, so that each node's children are next to each other
+        for (int node = 0; node < termFrom.size(); node++) {
+            int depth = labelTo.get(node);
+            int j = termFrom.get(node);
+            int end = termTo.get(node);
+            while (j < end && terms[j].length == depth) { j++; } // the terms that end here sort first
+            childFrom.add(termFrom.size());
+            while (j < end) {
+                char c = terms[j][depth];
+                int k = j + 1;
+                while (k < end && terms[k][depth] == c) { k++; }
+                termFrom.add(j);
+                termTo.add(k);
+                labelFrom.add(depth);
+                labelTo.add(commonPrefix(terms[j], terms[k - 1])); // the terms are sorted
+                j = k;
+            }
+            childTo.add(termFrom.size());
+        }
+        this.termFrom = termFrom.toArray();
+        this.termTo = termTo.toArray();
+        this.labelFrom = labelFrom.toArray();
+        this.labelTo = labelTo.toArray();
+        this.childFrom = childFrom.toArray();
+        this.childTo = childTo.toArray();
+
+        int longest = 0;
+        for (char[] term : terms) { longest = Math.max(longest, term.length); }
+        this.rows = new int[(longest + 1) * (MAX_QUERY + 1)];
+        this.best = new int[names.length];
+        this.seen = new int[names.length];
+    }
+
+    public static Builder builder() { return new Builder(); }
+
+    // every room in the graph by its name, without aliases
+    public static RoomIndex of(Graph graph) {
+        Builder builder = builder();
+        for (String name : graph.getRoomNames()) { builder.addRoom(name, graph.indexOfEntry(name)); }
+        return builder.build();
+    }
+
+    public int size() { return this.names.length; }
+
+    public String getName(int room) { return this.names[room]; }
+
+    public int getEntry(int room) { return this.entries[room]; }
+
+    // Puts up to limit rooms matching the query into out, best first, and returns how many. An
+    // empty query matches nothing.
+    public int search(CharSequence text, int limit, IntList out) {
+        out.clear();
+        this.queryLength = normalise(text, this.query);
+        if (this.queryLength == 0 || limit <= 0) {
+            return 0;
+        }
+        if (++this.generation == 0) { // the stamp wrapped around, so old stamps could collide
+            Arrays.fill(this.seen, 0);
+            this.generation = 1;
+        }
+        this.found.clear();
+
+        int node = this.descend();
+        if (node != -1) {
+            for (int t = this.termFrom[node]; t < this.termTo[node]; t++) {
+                int rank = this.termIsWord[t] ? WORD_PREFIX : this.terms[t].length == this.queryLength ? EXACT : PREFIX;
+                this.match(this.termRooms[t], rank);
+            }
+        }
+        int edits = this.queryLength < 4 ? 0 : this.queryLength < 7 ? 1 : 2;
+        if (this.found.size() < limit && edits > 0) {
+            for (int i = 0; i <= this.queryLength; i++) { this.rows[i] = i; }
+            this.fuzzy(0, this.queryLength, edits);
+        }
+
+        // keep the best limit rooms in order, by insertion since limit is small
+        for (int j = 0; j < this.found.size(); j++) {
+            int room = this.found.get(j);
+            int at = out.size();
+            while (at > 0 && this.ranksBefore(room, out.get(at - 1))) { at--; }
+            if (at >= limit) { continue; }
+            if (out.size() < limit) { out.add(room); }
+            for (int k = out.size() - 1; k > at; k--) { out.set(k, out.get(k - 1)); }
+            out.set(at, room);
+        }
+        return out.size();
+    }
+
+    private boolean ranksBefore(int room, int other) {
+        return this.best[room] != this.best[other] ? this.best[room] < this.best[other] : room < other;
+    }
+
+    private void match(int room, int rank) {
+        if (this.seen[room] != this.generation) {
+            this.seen[room] = this.generation;
+            this.best[room] = rank;
+            this.found.add(room);
+        } else if (rank < this.best[room]) {
+            this.best[room] = rank;
+        }
+    }
+
+    // the node whose path starts with the whole query and ends as soon as it can, or -1
+    private int descend() {
+        int node = 0;
+        int d = 0;
+        while (true) {
+            for (; d < this.labelTo[node]; d++) {
+                if (d == this.queryLength) { return node; }
+                if (this.terms[this.termFrom[node]][d] != this.query[d]) { return -1; }
+            }
+            if (d == this.queryLength) { return node; }
+            int next = -1;
+            for (int c = this.childFrom[node]; c < this.childTo[node]; c++) {
+                if (this.terms[this.termFrom[c]][d] == this.query[d]) {
+                    next = c;
+                    break;
+                }
+            }
+            if (next == -1) { return -1; }
+            node = next;
+        }
+    }
+
+    // Matches the terms under node that start with something within edits of the query. Row d of
+    // this.rows holds the edit distances between the first d chars of the node's path and each
+    // prefix of the query, so its last entry is how far the query is from that prefix of the term;
+    // closest is the nearest any shorter prefix on the way here has been. Once every entry of a row
+    // is more than edits, going deeper can't help.
+    private void fuzzy(int node, int closest, int edits) {
+        int stride = MAX_QUERY + 1;
+        int q = this.queryLength;
+        char[] label = this.terms[this.termFrom[node]];
+        for (int d = this.labelFrom[node]; d < this.labelTo[node]; d++) {
+            int previous = d * stride;
+            int row = previous + stride;
+            this.rows[row] = d + 1;
+            int lowest = d + 1;
+            for (int i = 1; i <= q; i++) {
+                int cost = this.query[i - 1] == label[d] ? 0 : 1;
+                int value = Math.min(Math.min(this.rows[previous + i] + 1, this.rows[row + i - 1] + 1),
+                        this.rows[previous + i - 1] + cost);
+                this.rows[row + i] = value;
+                lowest = Math.min(lowest, value);
+            }
+            closest = Math.min(closest, this.rows[row + q]);
+            if (lowest > edits) {
+                if (closest <= edits) {
+                    for (int t = this.termFrom[node]; t < this.termTo[node]; t++) { this.match(this.termRooms[t], FUZZY + closest); }
+                }
+                return;
+            }
+        }
+        int depth = this.labelTo[node];
+        if (closest <= edits) {
+            for (int t = this.termFrom[node]; t < this.termTo[node] && this.terms[t].length == depth; t++) {
+                this.match(this.termRooms[t], FUZZY + closest);
+            }
+        }
+        for (int c = this.childFrom[node]; c < this.childTo[node]; c++) { this.fuzzy(c, closest, edits); }
+    }
+
+    // Lower cases text into out, turning runs of anything but letters and digits into one space
+    // and dropping them at either end. Returns the normalised length, at most out.length.
+    private static int normalise(CharSequence text, char[] out) {
+        int length = 0;
+        boolean space = false;
+        for (int j = 0; j < text.length() && length < out.length; j++) {
+            char c = text.charAt(j);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && length > 0) {
+                    out[length++] = ' ';
+                    if (length == out.length) { break; }
+                }
+                out[length++] = Character.toLowerCase(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return length;
+    }
+
+    private static int commonPrefix(char[] a, char[] b) {
+        int n = Math.min(a.length, b.length);
+        int j = 0;
+        while (j < n && a[j] == b[j]) { j++; }
+        return j;
+    }
+
+    private static int compare(char[] a, char[] b) {
+        int j = commonPrefix(a, b);
+        if (j < a.length && j < b.length) { return a[j] - b[j]; }
+        return a.length - b.length;
+    }
+
+    /**
+     * Collects rooms and their aliases, then normalises and sorts them into a RoomIndex. Adding a
+     * room that's already there moves it to the new entry point.
+     */
+    public static final class Builder {
+        private final Map<String, Integer> rooms = new LinkedHashMap<>();
+        private final Map<String, List<String>> aliases = new HashMap<>();
+
+        private Builder() {}
+
+        public Builder addRoom(String name, int entry) {
+            this.rooms.put(name, entry);
+            return this;
+        }
+
+        // another name the room can be found by, e.g. "kitchen" for "Kitchenette"
+        public Builder addAlias(String name, String alias) {
+            if (!this.rooms.containsKey(name)) {
+                throw new IllegalArgumentException("No room named " + name);
+            }
+            this.aliases.computeIfAbsent(name, n -> new ArrayList<>()).add(alias);
+            return this;
+        }
+
+        public RoomIndex build() {
+            List<String> sorted = new ArrayList<>(this.rooms.keySet());
+            Collections.sort(sorted, (a, b) -> {
+                int c = a.compareToIgnoreCase(b);
+                return c != 0 ? c : a.compareTo(b);
+            });
+            String[] names = sorted.toArray(new String[0]);
+            int[] entries = new int[names.length];
+
+            List<Term> terms = new ArrayList<>();
+            for (int room = 0; room < names.length; room++) {
+                entries[room] = this.rooms.get(names[room]);
+                addTerms(names[room], room, terms);
+                List<String> aliases = this.aliases.get(names[room]);
+                if (aliases != null) {
+                    for (String alias : aliases) { addTerms(alias, room, terms); }
+                }
+            }
+            Collections.sort(terms, (a, b) -> {
+                int c = compare(a.chars, b.chars);
+                return c != 0 ? c : a.room != b.room ? a.room - b.room : Boolean.compare(a.isWord, b.isWord);
+            });
+
+            // a term that appears more than once for a room only needs its best kind
+            List<Term> unique = new ArrayList<>(terms.size());
+            for (Term term : terms) {
+                Term last = unique.isEmpty() ? null : unique.get(unique.size() - 1);
+                if (last == null || last.room != term.room || compare(last.chars, term.chars) != 0) { unique.add(term); }
+            }
+            char[][] chars = new char[unique.size()][];
+            int[] termRooms = new int[unique.size()];
+            boolean[] termIsWord = new boolean[unique.size()];
+            for (int t = 0; t < unique.size(); t++) {
+                chars[t] = unique.get(t).chars;
+                termRooms[t] = unique.get(t).room;
+                termIsWord[t] = unique.get(t).isWord;
+            }
+            return new RoomIndex(names, entries, chars, termRooms, termIsWord);
+        }
+
+        // the normalised name and each suffix of it that starts a later word
+        private static void addTerms(String name, int room, List<Term> terms) {
+            char[] normalised = new char[name.length()];
+            int length = normalise(name, normalised);
+            if (length == 0) {
+                return;
+            }
+            terms.add(new Term(Arrays.copyOf(normalised, length), room, false));
+            for (int j = 1; j < length; j++) {
+                if (normalised[j - 1] == ' ') {
+                    terms.add(new Term(Arrays.copyOfRange(normalised, j, length), room, true));
+                }
+            }
+        }
+    }
+
+    private static final class Term {
+        final char[] chars;
+        final int room;
+        final boolean isWord;
+
+        Term(char[] chars, int room, boolean isWord) {
+            this.chars = chars;
+            this.room = room;
+            this.isWord = isWord;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package wayfinding.core;
+
+/**
+ * A point-to-point route through a {@link Graph}: the dense indices of the points to walk through,
+ * from the origin to the destination (both inclusive), and the total length of the route.
+ * A route that couldn't be found has no points and an infinite length.
+ */
+public final class Route {
+    static final Route NONE = new Route(new int[0], Double.POSITIVE_INFINITY);
+
+    private final int[] points;
+    private final double length;
+
+    Route(int[] points, double length) {
+        this.points = points;
+        this.length = length;
+    }
+
+    public boolean isFound() { return this.points.length > 0; }
+
+    public int size() { return this.points.length; }
+
+    public int pointAt(int j) { return this.points[j]; }
+
+    public int getOrigin() { return this.points[0]; }
+
+    public int getDestination() { return this.points[this.points.length - 1]; }
+
+    public double getLength() { return this.length; }
+
+    public int[] toArray() { return this.points.clone(); }
+}
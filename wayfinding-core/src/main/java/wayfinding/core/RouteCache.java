@@ -0,0 +1,111 @@
+package wayfinding.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded least recently used cache of {@link ResolvedRoute}s keyed by origin and destination,
+ * so going back to a popular room (or the same one twice) doesn't search the graph or work out the
+ * arrow bearings again. Misses are routed with A* on the given {@link Router}, or with a
+ * {@link HierarchyRouter} if there is one and no edge costs have changed, or read off a
+ * {@link ShortestPathTree} rooted at the origin. The cache belongs to its router's graph, and
+ * empties itself when the router's {@link EdgeCosts} change; anything else that changes the routes
+ * must call invalidate(). Like a Router, a RouteCache must not be shared between threads.
+ */
+public final class RouteCache {
+    private final Router router;
+    private final HierarchyRouter hierarchyRouter; // null if there's no hierarchy for the graph
+    private final Map<Long, ResolvedRoute> routes;
+    private long hits = 0;
+    private long misses = 0;
+    private long costsVersion; // the version of the router's costs that the cached routes were found with
+
+    public RouteCache(Router router, final int capacity) { this(router, null, capacity); }
+
+    public RouteCache(Router router, HierarchyRouter hierarchyRouter, final int capacity) {
+        if (hierarchyRouter != null && hierarchyRouter.getHierarchy().getGraph() != router.getGraph()) {
+            throw new IllegalArgumentException("The hierarchy is for a different graph");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1, not " + capacity);
+        }
+        this.router = router;
+        this.hierarchyRouter = hierarchyRouter;
+        this.costsVersion = costsVersion(router);
+        this.routes = new LinkedHashMap<Long, ResolvedRoute>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ResolvedRoute> eldest) {
+                return this.size() > capacity;
+            }
+        };
+    }
+
+    public Graph getGraph() { return this.router.getGraph(); }
+
+    // the shortest route from origin to destination, searching for it if it isn't cached
+    public ResolvedRoute route(int origin, int destination) {
+        if (origin == Graph.NO_POINT || destination == Graph.NO_POINT) {
+            return ResolvedRoute.NONE;
+        }
+        ResolvedRoute cached = this.lookUp(origin, destination);
+        if (cached != null) {
+            return cached;
+        }
+        EdgeCosts costs = this.router.getCosts();
+        if (this.hierarchyRouter != null && (costs == null || costs.isUnchanged())) {
+            return this.store(origin, destination, this.hierarchyRouter.route(origin, destination));
+        }
+        return this.store(origin, destination, this.router.route(origin, destination));
+    }
+
+    // the route from the tree's root to destination, walking the tree if it isn't cached
+    public ResolvedRoute route(ShortestPathTree tree, int destination) {
+        int origin = tree.getRoot();
+        if (origin == Graph.NO_POINT || destination == Graph.NO_POINT) {
+            return ResolvedRoute.NONE;
+        }
+        ResolvedRoute cached = this.lookUp(origin, destination);
+        if (cached != null) {
+            return cached;
+        }
+        int[] path = tree.pathTo(destination);
+        Route route = path.length == 0 ? Route.NONE : new Route(path, tree.distanceTo(destination));
+        return this.store(origin, destination, route);
+    }
+
+    // forgets every cached route, for when the graph's routes have changed
+    public void invalidate() { this.routes.clear(); }
+
+    public int size() { return this.routes.size(); }
+    public long getHits() { return this.hits; }
+    public long getMisses() { return this.misses; }
+
+    private ResolvedRoute lookUp(int origin, int destination) {
+        long version = costsVersion(this.router);
+        if (version != this.costsVersion) {
+            this.routes.clear();
+            this.costsVersion = version;
+        }
+        ResolvedRoute cached = this.routes.get(key(origin, destination));
+        if (cached != null) {
+            this.hits++;
+        } else {
+            this.misses++;
+        }
+        return cached;
+    }
+
+    private ResolvedRoute store(int origin, int destination, Route route) {
+        ResolvedRoute resolved = ResolvedRoute.of(this.router.getGraph(), route);
+        this.routes.put(key(origin, destination), resolved);
+        return resolved;
+    }
+
+    private static long costsVersion(Router router) {
+        return router.getCosts() == null ? 0 : router.getCosts().getVersion();
+    }
+
+    private static long key(int origin, int destination) {
+        return ((long) origin << 32) | (destination & 0xFFFFFFFFL);
+    }
+}
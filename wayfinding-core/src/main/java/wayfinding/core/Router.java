@@ -0,0 +1,147 @@
+package wayfinding.core;
+
+import java.util.Arrays;
+
+/**
+ * Shortest path routing over a {@link Graph}. A Router keeps its search state (the heap and the
+ * per-point distance arrays) between queries so repeated routing doesn't allocate or reset
+ * anything proportional to the size of the graph; stale entries are recognised by a search
+ * generation stamp instead. This means a Router must not be shared between threads.
+ * Routes use the graph's edge lengths, or the current costs in an {@link EdgeCosts} if given one,
+ * in which case blocked edges are never walked.
+ */
+public final class Router {
+    private final Graph graph;
+    private final EdgeCosts costs; // null to use the graph's edge lengths
+    private final IndexedMinHeap heap;
+    private final double[] dist;
+    private final int[] prev;
+    private final int[] seen; // dist and prev are valid for a point if seen[point] == generation
+    private final int[] closed; // a point is settled if closed[point] == generation
+    private int generation = 0;
+
+    public Router(Graph graph) { this(graph, null); }
+
+    public Router(Graph graph, EdgeCosts costs) {
+        if (costs != null && costs.getGraph() != graph) {
+            throw new IllegalArgumentException("costs are for a different graph");
+        }
+        int n = graph.size();
+        this.graph = graph;
+        this.costs = costs;
+        this.heap = new IndexedMinHeap(n);
+        this.dist = new double[n];
+        this.prev = new int[n];
+        this.seen = new int[n];
+        this.closed = new int[n];
+    }
+
+    public Graph getGraph() { return this.graph; }
+
+    // the costs routes are found with, or null if they use the graph's edge lengths
+    public EdgeCosts getCosts() { return this.costs; }
+
+    // Implementation of Dijkstra's algorithm for the graph. Builds the whole tree rather than
+    // stopping once a target is found, so that the caller can come back and choose a different one.
+    // The frontier lives in an IndexedMinHeap with a real decrease-key, and edges are read straight
+    // out of the graph's CSR arrays.
+    public ShortestPathTree shortestPathTree(int root) {
+        int n = this.graph.size();
+        int[] treePrev = new int[n];
+        double[] treeDist = new double[n];
+        Arrays.fill(treePrev, Graph.NO_POINT);
+        Arrays.fill(treeDist, Double.POSITIVE_INFINITY);
+        return this.fillTree(new ShortestPathTree(root, treePrev, treeDist));
+    }
+
+    // As shortestPathTree(root), but built over the arrays of a tree from an earlier call (for
+    // this graph) rather than new ones, which is no longer valid afterwards. See BatchRouter.
+    ShortestPathTree shortestPathTree(int root, ShortestPathTree reuse) {
+        return this.fillTree(reuse.reuse(root));
+    }
+
+    private ShortestPathTree fillTree(ShortestPathTree tree) {
+        int root = tree.getRoot();
+        if (root == Graph.NO_POINT) {
+            return tree;
+        }
+        this.startSearch(root);
+        while (!this.heap.isEmpty()) {
+            int current = this.settleNext();
+            tree.set(current, this.prev[current], this.dist[current]);
+            this.relaxEdges(current, Graph.NO_POINT);
+        }
+        return tree;
+    }
+
+    // A* search from one point to another, using the straight line (x,z) distance to the
+    // destination as the heuristic. Edge weights are straight line lengths, so the heuristic is
+    // consistent and the first time the destination is settled we have its shortest route.
+    public Route route(int origin, int destination) {
+        if (origin == Graph.NO_POINT || destination == Graph.NO_POINT) {
+            return Route.NONE;
+        }
+        this.startSearch(origin);
+        while (!this.heap.isEmpty()) {
+            int current = this.settleNext();
+            if (current == destination) {
+                this.heap.clear();
+                return this.extractRoute(destination);
+            }
+            this.relaxEdges(current, destination);
+        }
+        return Route.NONE;
+    }
+
+    private void startSearch(int origin) {
+        this.heap.clear();
+        if (++this.generation == 0) { // the stamp wrapped around, so old stamps could collide
+            Arrays.fill(this.seen, 0);
+            Arrays.fill(this.closed, 0);
+            this.generation = 1;
+        }
+        this.seen[origin] = this.generation;
+        this.dist[origin] = 0;
+        this.prev[origin] = Graph.NO_POINT;
+        this.heap.insertOrDecrease(origin, 0);
+    }
+
+    private int settleNext() {
+        int current = this.heap.poll();
+        this.closed[current] = this.generation;
+        return current;
+    }
+
+    // destination is NO_POINT for a plain Dijkstra search, otherwise it is used for the heuristic
+    private void relaxEdges(int current, int destination) {
+        Graph g = this.graph;
+        for (int e = g.firstEdge(current), end = g.endEdge(current); e < end; e++) {
+            int to = g.edgeTarget(e);
+            if (this.closed[to] == this.generation) { continue; }
+            float weight = this.costs == null ? g.edgeWeight(e) : this.costs.get(e);
+            if (weight == Float.POSITIVE_INFINITY) { continue; } // blocked
+            double alt = this.dist[current] + weight;
+            if (this.seen[to] != this.generation || alt < this.dist[to]) {
+                this.seen[to] = this.generation;
+                this.dist[to] = alt;
+                this.prev[to] = current;
+                double estimate = destination == Graph.NO_POINT ? alt : alt + this.heuristic(to, destination);
+                this.heap.insertOrDecrease(to, estimate);
+            }
+        }
+    }
+
+    private double heuristic(int from, int to) {
+        float dx = this.graph.getX(from) - this.graph.getX(to);
+        float dz = this.graph.getZ(from) - this.graph.getZ(to);
+        return Math.sqrt(dx * dx + dz * dz);
+    }
+
+    private Route extractRoute(int destination) {
+        int length = 0;
+        for (int p = destination; p != Graph.NO_POINT; p = this.prev[p]) { length++; }
+        int[] points = new int[length];
+        for (int p = destination; p != Graph.NO_POINT; p = this.prev[p]) { points[--length] = p; }
+        return new Route(points, this.dist[destination]);
+    }
+}
@@ -0,0 +1,12 @@
+package wayfinding.core;
+
+import java.io.IOException;
+
+/**
+ * Where a {@link ShardedMap} gets the graph for a shard (a floor or building) from when it needs
+ * it, e.g. a compiled map asset per shard. Loading may be slow, the map calls it at most once per
+ * shard until that shard is evicted.
+ */
+public interface ShardSource {
+    Graph load(String shardId) throws IOException;
+}
@@ -0,0 +1,137 @@
+package wayfinding.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A map split into shards, each a floor or building with its own {@link Graph}, joined by
+ * {@link Portal}s. Shards are loaded from a {@link ShardSource} the first time they are needed
+ * (because the user is near a portal into them, see touch(), or a route crosses them, see
+ * {@link ShardedRouter}) and the least recently used ones are evicted once the loaded shards take
+ * more than the memory budget. The shard that was just asked for and the shard the user is in are
+ * never evicted, so a single shard bigger than the budget still works. Not thread safe.
+ */
+public final class ShardedMap {
+    private static final String TAG = "wayfinder.ShardedMap";
+    private static final Logger LOG = Logger.getLogger(TAG);
+
+    // a Router keeps a double, two ints and two stamps per point, plus its heap
+    private static final long ROUTER_BYTES_PER_POINT = 8 + 4 + 4 + 4 + (4 + 4 + 8);
+
+    private final ShardSource source;
+    private final long budgetBytes;
+    private final List<Portal> portals = new ArrayList<>();
+    private final Map<String, Shard> loaded = new LinkedHashMap<>(16, 0.75f, true); // eldest is coldest
+    private long loadedBytes = 0;
+    private String current = null; // the shard the user is in, as of the last touch()
+
+    public ShardedMap(ShardSource source, long budgetBytes) {
+        this.source = source;
+        this.budgetBytes = budgetBytes;
+    }
+
+    // portals should all be added before making a ShardedRouter for this map
+    public void addPortal(Portal portal) { this.portals.add(portal); }
+
+    public List<Portal> getPortals() { return Collections.unmodifiableList(this.portals); }
+
+    // the graph for a shard, loading it (and evicting cold shards to make room) if need be
+    public Graph get(String shardId) throws IOException { return this.shard(shardId).graph; }
+
+    public boolean isLoaded(String shardId) { return this.loaded.containsKey(shardId); }
+
+    public int getLoadedCount() { return this.loaded.size(); }
+
+    public long getLoadedBytes() { return this.loadedBytes; }
+
+    public long getBudgetBytes() { return this.budgetBytes; }
+
+    // Call as the user moves, with their position in the given shard's map space. Makes sure that
+    // shard is loaded, and preloads the shard on the other side of any portal within radius, so
+    // that walking up to the lift has the next floor ready by the time they get out of it.
+    public void touch(String shardId, float x, float z, float radius) {
+        this.current = shardId;
+        Graph graph;
+        try {
+            graph = this.get(shardId);
+        } catch (IOException e) {
+            LOG.warning(String.format(Locale.ENGLISH, "%s: unable to load shard %s, %s", TAG, shardId, e));
+            return;
+        }
+        for (Portal portal : this.portals) {
+            if (portal.getFromShard().equals(shardId) && isWithin(graph, portal.getFromId(), x, z, radius)) {
+                this.preload(portal.getToShard());
+            } else if (portal.getToShard().equals(shardId) && isWithin(graph, portal.getToId(), x, z, radius)) {
+                this.preload(portal.getFromShard());
+            }
+        }
+    }
+
+    Shard shard(String shardId) throws IOException {
+        Shard shard = this.loaded.get(shardId);
+        if (shard != null) {
+            return shard;
+        }
+        Graph graph = this.source.load(shardId);
+        shard = new Shard(graph, graph.estimateBytes() + ROUTER_BYTES_PER_POINT * graph.size());
+        this.loaded.put(shardId, shard);
+        this.loadedBytes += shard.bytes;
+        this.evictFor(shard);
+        return shard;
+    }
+
+    private void preload(String shardId) {
+        try {
+            this.shard(shardId);
+        } catch (IOException e) {
+            LOG.warning(String.format(Locale.ENGLISH, "%s: unable to preload shard %s, %s", TAG, shardId, e));
+        }
+    }
+
+    private void evictFor(Shard keep) {
+        Iterator<Map.Entry<String, Shard>> coldest = this.loaded.entrySet().iterator();
+        while (this.loadedBytes > this.budgetBytes && coldest.hasNext()) {
+            Map.Entry<String, Shard> entry = coldest.next();
+            if (entry.getValue() == keep || entry.getKey().equals(this.current)) { continue; }
+            this.loadedBytes -= entry.getValue().bytes;
+            coldest.remove();
+            LOG.fine(String.format(Locale.ENGLISH, "%s: evicted shard %s", TAG, entry.getKey()));
+        }
+    }
+
+    private static boolean isWithin(Graph graph, int id, float x, float z, float radius) {
+        int index = graph.indexOf(id);
+        if (index == Graph.NO_POINT) {
+            return false;
+        }
+        float dx = graph.getX(index) - x;
+        float dz = graph.getZ(index) - z;
+        return dx * dx + dz * dz <= radius * radius;
+    }
+
+    // a loaded shard, with a Router over it made the first time it's routed through
+    static final class Shard {
+        final Graph graph;
+        final long bytes;
+        private Router router;
+
+        Shard(Graph graph, long bytes) {
+            this.graph = graph;
+            this.bytes = bytes;
+        }
+
+        Router router() {
+            if (this.router == null) {
+                this.router = new Router(this.graph);
+            }
+            return this.router;
+        }
+    }
+}
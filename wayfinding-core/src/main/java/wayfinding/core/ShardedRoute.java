@@ -0,0 +1,36 @@
+package wayfinding.core;
+
+/**
+ * A route through a {@link ShardedMap}: one leg per shard it passes through, in order, with a
+ * portal between each leg and the next. Each leg is a {@link Route} over that shard's graph, and
+ * the graph is kept with it so the leg stays usable if the shard is evicted afterwards.
+ * A route that couldn't be found has no legs and an infinite length.
+ */
+public final class ShardedRoute {
+    static final ShardedRoute NONE = new ShardedRoute(new String[0], new Graph[0], new Route[0],
+            Double.POSITIVE_INFINITY);
+
+    private final String[] shards;
+    private final Graph[] graphs;
+    private final Route[] legs;
+    private final double length; // the legs plus the portals between them
+
+    ShardedRoute(String[] shards, Graph[] graphs, Route[] legs, double length) {
+        this.shards = shards;
+        this.graphs = graphs;
+        this.legs = legs;
+        this.length = length;
+    }
+
+    public boolean isFound() { return this.legs.length > 0; }
+
+    public int legCount() { return this.legs.length; }
+
+    public String getShard(int leg) { return this.shards[leg]; }
+
+    public Graph getGraph(int leg) { return this.graphs[leg]; }
+
+    public Route getLeg(int leg) { return this.legs[leg]; }
+
+    public double getLength() { return this.length; }
+}
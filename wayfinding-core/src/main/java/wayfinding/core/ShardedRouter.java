@@ -0,0 +1,204 @@
+package wayfinding.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Routing across the shards of a {@link ShardedMap}. The search runs over a small overlay graph
+ * whose nodes are the two ends of every portal, plus the origin and destination: a portal joins
+ * its two ends, and the cost between two nodes in the same shard is their shortest path within
+ * that shard. Those costs are only worked out (with a Dijkstra search in the shard, which loads
+ * it) when the overlay search reaches the shard, so shards the route never gets near stay
+ * unloaded. Like {@link Router}, this keeps its search state between queries and must not be
+ * shared between threads.
+ */
+public final class ShardedRouter {
+    private static final String TAG = "wayfinder.ShardedRouter";
+    private static final Logger LOG = Logger.getLogger(TAG);
+
+    private final ShardedMap map;
+    private final Portal[] portals; // portal p has overlay nodes 2p (from end) and 2p + 1 (to end)
+    private final Map<String, IntList> nodesByShard = new HashMap<>(); // portal ends in each shard
+    private final int origin;
+    private final int destination;
+
+    private final IndexedMinHeap heap;
+    private final double[] dist;
+    private final int[] prev;
+    private final boolean[] byPortal; // whether we got to a node through its portal
+    private final boolean[] closed;
+    private final ShortestPathTree[] trees; // in shard search from each node we expanded
+    private final Graph[] graphs; // the shard graph each tree is over
+
+    private String originShard;
+    private int originId;
+    private String destinationShard;
+    private int destinationId;
+
+    public ShardedRouter(ShardedMap map) {
+        this.map = map;
+        this.portals = map.getPortals().toArray(new Portal[0]);
+        for (int p = 0; p < this.portals.length; p++) {
+            this.nodesIn(this.portals[p].getFromShard()).add(2 * p);
+            this.nodesIn(this.portals[p].getToShard()).add(2 * p + 1);
+        }
+        int n = 2 * this.portals.length + 2;
+        this.origin = n - 2;
+        this.destination = n - 1;
+        this.heap = new IndexedMinHeap(n);
+        this.dist = new double[n];
+        this.prev = new int[n];
+        this.byPortal = new boolean[n];
+        this.closed = new boolean[n];
+        this.trees = new ShortestPathTree[n];
+        this.graphs = new Graph[n];
+    }
+
+    // Finds the shortest route from a point in one shard to a point in another (or the same one),
+    // with points given by their ids in the map json.
+    public ShardedRoute route(String fromShard, int fromId, String toShard, int toId) {
+        this.originShard = fromShard;
+        this.originId = fromId;
+        this.destinationShard = toShard;
+        this.destinationId = toId;
+        Arrays.fill(this.dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(this.prev, Graph.NO_POINT);
+        Arrays.fill(this.byPortal, false);
+        Arrays.fill(this.closed, false);
+        Arrays.fill(this.trees, null);
+        Arrays.fill(this.graphs, null);
+        this.heap.clear();
+
+        this.dist[this.origin] = 0;
+        this.heap.insertOrDecrease(this.origin, 0);
+        while (!this.heap.isEmpty()) {
+            int current = this.heap.poll();
+            this.closed[current] = true;
+            if (current == this.destination) {
+                return this.extractRoute();
+            }
+            if (current != this.origin) {
+                this.relax(current, current ^ 1, this.portals[current >> 1].getCost(), true);
+            }
+            // a node we walked to within its shard can't be a shortcut to anywhere else in that
+            // shard (the shard's distances obey the triangle inequality), so only expand nodes we
+            // came out of a portal at
+            if (current == this.origin || this.byPortal[current]) {
+                this.expandShard(current);
+            }
+        }
+        return ShardedRoute.NONE;
+    }
+
+    private void expandShard(int current) {
+        String shardId = this.shardOf(current);
+        ShardedMap.Shard shard;
+        try {
+            shard = this.map.shard(shardId);
+        } catch (IOException e) {
+            LOG.warning(String.format(Locale.ENGLISH, "%s: unable to load shard %s, %s", TAG, shardId, e));
+            return;
+        }
+        int from = shard.graph.indexOf(this.idOf(current));
+        if (from == Graph.NO_POINT) {
+            LOG.warning(String.format(Locale.ENGLISH, "%s: shard %s has no point %d", TAG, shardId, this.idOf(current)));
+            return;
+        }
+        ShortestPathTree tree = shard.router().shortestPathTree(from);
+        this.trees[current] = tree;
+        this.graphs[current] = shard.graph;
+
+        IntList nodes = this.nodesByShard.get(shardId);
+        for (int j = 0; nodes != null && j < nodes.size(); j++) {
+            this.relaxWithin(current, nodes.get(j), shard.graph, tree);
+        }
+        if (shardId.equals(this.destinationShard)) {
+            this.relaxWithin(current, this.destination, shard.graph, tree);
+        }
+    }
+
+    private void relaxWithin(int current, int node, Graph graph, ShortestPathTree tree) {
+        int to = graph.indexOf(this.idOf(node));
+        if (to != Graph.NO_POINT && tree.isReachable(to)) {
+            this.relax(current, node, tree.distanceTo(to), false);
+        }
+    }
+
+    private void relax(int current, int node, double cost, boolean isPortal) {
+        if (this.closed[node]) {
+            return;
+        }
+        double alt = this.dist[current] + cost;
+        if (alt < this.dist[node]) {
+            this.dist[node] = alt;
+            this.prev[node] = current;
+            this.byPortal[node] = isPortal;
+            this.heap.insertOrDecrease(node, alt);
+        }
+    }
+
+    // Walks back from the destination, turning each in shard hop into a leg (joining consecutive
+    // hops in the same shard) and starting a new leg at each portal.
+    private ShardedRoute extractRoute() {
+        this.heap.clear();
+        IntList hops = new IntList();
+        for (int node = this.destination; node != Graph.NO_POINT; node = this.prev[node]) { hops.add(node); }
+
+        List<String> shards = new ArrayList<>();
+        List<Graph> graphs = new ArrayList<>();
+        List<Route> legs = new ArrayList<>();
+        IntList points = new IntList();
+        double legLength = 0;
+        for (int j = hops.size() - 1; j > 0; j--) {
+            int from = hops.get(j);
+            int to = hops.get(j - 1);
+            if (this.byPortal[to]) {
+                continue; // the leg ends at from and the next one starts at to
+            }
+            Graph graph = this.graphs[from];
+            int[] path = this.trees[from].pathTo(graph.indexOf(this.idOf(to)));
+            if (points.isEmpty()) {
+                shards.add(this.shardOf(from));
+                graphs.add(graph);
+            }
+            for (int k = points.isEmpty() ? 0 : 1; k < path.length; k++) { points.add(path[k]); }
+            legLength += this.dist[to] - this.dist[from];
+            if (to == this.destination || this.byPortal[hops.get(j - 2)]) {
+                legs.add(new Route(points.toArray(), legLength));
+                points.clear();
+                legLength = 0;
+            }
+        }
+        return new ShardedRoute(shards.toArray(new String[0]), graphs.toArray(new Graph[0]),
+                legs.toArray(new Route[0]), this.dist[this.destination]);
+    }
+
+    private IntList nodesIn(String shardId) {
+        IntList nodes = this.nodesByShard.get(shardId);
+        if (nodes == null) {
+            nodes = new IntList();
+            this.nodesByShard.put(shardId, nodes);
+        }
+        return nodes;
+    }
+
+    private String shardOf(int node) {
+        if (node == this.origin) { return this.originShard; }
+        if (node == this.destination) { return this.destinationShard; }
+        Portal portal = this.portals[node >> 1];
+        return (node & 1) == 0 ? portal.getFromShard() : portal.getToShard();
+    }
+
+    private int idOf(int node) {
+        if (node == this.origin) { return this.originId; }
+        if (node == this.destination) { return this.destinationId; }
+        Portal portal = this.portals[node >> 1];
+        return (node & 1) == 0 ? portal.getFromId() : portal.getToId();
+    }
+}
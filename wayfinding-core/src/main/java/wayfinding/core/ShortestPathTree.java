@@ -0,0 +1,59 @@
+package wayfinding.core;
+
+import java.util.Arrays;
+
+/**
+ * The result of running Dijkstra's algorithm from a root point: for every point in the graph, the
+ * previous point on its shortest path back to the root and its distance from the root.
+ * Points are referred to by their dense index in the {@link Graph}. The tree kept by a
+ * {@link DynamicShortestPathTree} is updated in place as edge costs change.
+ */
+public final class ShortestPathTree {
+    private final int root;
+    private final int[] prev; // Graph.NO_POINT for the root and unreachable points
+    private final double[] dist; // infinite for unreachable points
+
+    ShortestPathTree(int root, int[] prev, double[] dist) {
+        this.root = root;
+        this.prev = prev;
+        this.dist = dist;
+    }
+
+    public int getRoot() { return this.root; }
+
+    // a tree for another root over the same arrays, with nothing reachable yet, so that trees can
+    // be built one after another without allocating (see Router). This tree is no longer valid.
+    ShortestPathTree reuse(int root) {
+        Arrays.fill(this.prev, Graph.NO_POINT);
+        Arrays.fill(this.dist, Double.POSITIVE_INFINITY);
+        return new ShortestPathTree(root, this.prev, this.dist);
+    }
+
+    int size() { return this.prev.length; }
+
+    void set(int index, int prev, double dist) {
+        this.prev[index] = prev;
+        this.dist[index] = dist;
+    }
+
+    public boolean isReachable(int index) {
+        return this.dist[index] != Double.POSITIVE_INFINITY;
+    }
+
+    public int prevOf(int index) { return this.prev[index]; }
+
+    public double distanceTo(int index) { return this.dist[index]; }
+
+    // indices of the points on the shortest path from the root to index (both inclusive), or an
+    // empty array if index can't be reached from the root
+    public int[] pathTo(int index) {
+        if (!this.isReachable(index)) {
+            return new int[0];
+        }
+        int length = 0;
+        for (int p = index; p != Graph.NO_POINT; p = this.prev[p]) { length++; }
+        int[] out = new int[length];
+        for (int p = index; p != Graph.NO_POINT; p = this.prev[p]) { out[--length] = p; }
+        return out;
+    }
+}
@@ -0,0 +1,176 @@
+package wayfinding.core;
+
+/**
+ * A uniform grid over the (x,z) positions of the points in a {@link Graph}, for nearest point,
+ * radius and rectangle queries without scanning every point. The cell size is picked so that a
+ * cell holds a couple of points on average; points are bucketed into cells with a counting sort,
+ * so the grid is two int arrays no matter how many points there are.
+ * Queries write matching point indices into a caller supplied {@link IntList} and don't allocate.
+ */
+public final class SpatialIndex {
+    private static final float POINTS_PER_CELL = 2f;
+    private static final float MIN_CELL_SIZE = 0.5f; // metres
+
+    private final float[] xs;
+    private final float[] zs;
+    private final float minX;
+    private final float minZ;
+    private final float cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStart; // points in cell c are cellPoints[cellStart[c]] until cellStart[c + 1]
+    private final int[] cellPoints;
+
+    SpatialIndex(float[] xs, float[] zs) {
+        this.xs = xs;
+        this.zs = zs;
+        int n = xs.length;
+
+        float minX = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, xs[i]);
+            minZ = Math.min(minZ, zs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxZ = Math.max(maxZ, zs[i]);
+        }
+        if (n == 0) {
+            minX = minZ = maxX = maxZ = 0;
+        }
+        float width = maxX - minX;
+        float depth = maxZ - minZ;
+        float cellSize = (float) Math.sqrt(width * depth * POINTS_PER_CELL / Math.max(n, 1));
+        if (!(cellSize >= MIN_CELL_SIZE)) { // also catches a degenerate (zero area) map
+            cellSize = Math.max(MIN_CELL_SIZE, Math.max(width, depth) * POINTS_PER_CELL / Math.max(n, 1));
+        }
+        this.minX = minX;
+        this.minZ = minZ;
+        this.cellSize = cellSize;
+        this.columns = (int) (width / cellSize) + 1;
+        this.rows = (int) (depth / cellSize) + 1;
+
+        int cells = this.columns * this.rows;
+        this.cellStart = new int[cells + 1];
+        this.cellPoints = new int[n];
+        for (int i = 0; i < n; i++) { this.cellStart[this.cellOf(xs[i], zs[i]) + 1]++; }
+        for (int c = 0; c < cells; c++) { this.cellStart[c + 1] += this.cellStart[c]; }
+        int[] fill = new int[cells];
+        for (int i = 0; i < n; i++) {
+            int c = this.cellOf(xs[i], zs[i]);
+            this.cellPoints[this.cellStart[c] + fill[c]++] = i;
+        }
+    }
+
+    public int size() { return this.xs.length; }
+
+    // heap taken by the grid itself, the positions belong to the graph
+    long estimateBytes() { return 4L * (this.cellStart.length + this.cellPoints.length); }
+
+    // the index of the point closest to (x,z), or Graph.NO_POINT if there are no points. Searches
+    // rings of cells outward from (x,z) until the ring is further away than the best point so far.
+    public int nearest(float x, float z) {
+        if (this.xs.length == 0) {
+            return Graph.NO_POINT;
+        }
+        int column = this.clampColumn(x);
+        int row = this.clampRow(z);
+        int nearest = Graph.NO_POINT;
+        float best = Float.POSITIVE_INFINITY;
+        int maxRing = Math.max(this.columns, this.rows);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // the closest any point in this ring (or beyond) can be to (x,z)
+            if (ring > 0) {
+                float reach = this.ringDistance(x, z, column, row, ring);
+                if (reach * reach > best) { break; }
+            }
+            for (int r = row - ring; r <= row + ring; r++) {
+                if (r < 0 || r >= this.rows) { continue; }
+                boolean edgeRow = r == row - ring || r == row + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int c = column - ring; c <= column + ring; c += Math.max(step, 1)) {
+                    if (c < 0 || c >= this.columns) { continue; }
+                    int cell = r * this.columns + c;
+                    for (int k = this.cellStart[cell], end = this.cellStart[cell + 1]; k < end; k++) {
+                        int i = this.cellPoints[k];
+                        float dx = this.xs[i] - x;
+                        float dz = this.zs[i] - z;
+                        float d = dx * dx + dz * dz;
+                        if (d < best) {
+                            best = d;
+                            nearest = i;
+                        }
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    // adds every point within radius of (x,z) to out, and returns how many were added
+    public int withinRadius(float x, float z, float radius, IntList out) {
+        int added = 0;
+        float radiusSquared = radius * radius;
+        int fromColumn = this.clampColumn(x - radius), toColumn = this.clampColumn(x + radius);
+        int fromRow = this.clampRow(z - radius), toRow = this.clampRow(z + radius);
+        for (int r = fromRow; r <= toRow; r++) {
+            for (int c = fromColumn; c <= toColumn; c++) {
+                int cell = r * this.columns + c;
+                for (int k = this.cellStart[cell], end = this.cellStart[cell + 1]; k < end; k++) {
+                    int i = this.cellPoints[k];
+                    float dx = this.xs[i] - x;
+                    float dz = this.zs[i] - z;
+                    if (dx * dx + dz * dz <= radiusSquared) {
+                        out.add(i);
+                        added++;
+                    }
+                }
+            }
+        }
+        return added;
+    }
+
+    // adds every point inside the rectangle (edges inclusive) to out, and returns how many were added
+    public int withinRect(float minX, float minZ, float maxX, float maxZ, IntList out) {
+        int added = 0;
+        int fromColumn = this.clampColumn(minX), toColumn = this.clampColumn(maxX);
+        int fromRow = this.clampRow(minZ), toRow = this.clampRow(maxZ);
+        for (int r = fromRow; r <= toRow; r++) {
+            for (int c = fromColumn; c <= toColumn; c++) {
+                int cell = r * this.columns + c;
+                for (int k = this.cellStart[cell], end = this.cellStart[cell + 1]; k < end; k++) {
+                    int i = this.cellPoints[k];
+                    if (this.xs[i] >= minX && this.xs[i] <= maxX && this.zs[i] >= minZ && this.zs[i] <= maxZ) {
+                        out.add(i);
+                        added++;
+                    }
+                }
+            }
+        }
+        return added;
+    }
+
+    private int cellOf(float x, float z) {
+        return this.clampRow(z) * this.columns + this.clampColumn(x);
+    }
+
+    private int clampColumn(float x) {
+        int column = (int) Math.floor((x - this.minX) / this.cellSize);
+        return Math.max(0, Math.min(this.columns - 1, column));
+    }
+
+    private int clampRow(float z) {
+        int row = (int) Math.floor((z - this.minZ) / this.cellSize);
+        return Math.max(0, Math.min(this.rows - 1, row));
+    }
+
+    // lower bound on the distance from (x,z) to any cell in the given ring around (column, row)
+    private float ringDistance(float x, float z, int column, int row, int ring) {
+        float left = this.minX + (column - ring + 1) * this.cellSize;
+        float right = this.minX + (column + ring) * this.cellSize;
+        float near = this.minZ + (row - ring + 1) * this.cellSize;
+        float far = this.minZ + (row + ring) * this.cellSize;
+        float dx = Math.max(0, Math.min(x - left, right - x));
+        float dz = Math.max(0, Math.min(z - near, far - z));
+        return Math.min(dx, dz);
+    }
+}
@@ -0,0 +1,105 @@
+package wayfinding.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A lightweight tracer for timing startup work as a tree of nested spans. A span is started with
+ * begin() (a top level span) or child() (nested under another span), and ended with end(), which
+ * may be called from a different thread than the one that started it, so a span can cover async
+ * work by ending when a future completes. Times are taken with System.nanoTime() and reported in
+ * milliseconds since the tracer was made. Spans are kept in the order they started.
+ */
+public final class Tracer {
+    private static final String HEADER_FMT = "%-36s %10s %10s  %s%n";
+    private static final String SPAN_FMT = "%-36s %10.1f %10s  %s%n";
+    private static final String INDENT = "  ";
+
+    private final long origin = System.nanoTime();
+    private final List<Span> spans = new ArrayList<>();
+
+    public Span begin(String name) { return this.start(name, null); }
+
+    // a snapshot of every span so far, in the order they started
+    public synchronized List<Span> getSpans() { return new ArrayList<>(this.spans); }
+
+    // One line per span, indented under its parent, with its start, duration and the thread that
+    // started it. Spans that haven't ended yet are marked as running.
+    public String summary() {
+        List<Span> spans = this.getSpans();
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ENGLISH, HEADER_FMT, "span", "start ms", "took ms", "thread"));
+        for (Span span : spans) {
+            if (span.parent == null) {
+                appendTree(out, spans, span);
+            }
+        }
+        return out.toString();
+    }
+
+    private static void appendTree(StringBuilder out, List<Span> spans, Span span) {
+        StringBuilder name = new StringBuilder();
+        for (int d = 0; d < span.depth; d++) { name.append(INDENT); }
+        name.append(span.name);
+        String took = span.isEnded()
+                ? String.format(Locale.ENGLISH, "%.1f", span.getDurationMillis()) : "running";
+        out.append(String.format(Locale.ENGLISH, SPAN_FMT, name, span.getStartMillis(), took, span.thread));
+        for (Span child : spans) {
+            if (child.parent == span) {
+                appendTree(out, spans, child);
+            }
+        }
+    }
+
+    private synchronized Span start(String name, Span parent) {
+        Span span = new Span(name, parent, Thread.currentThread().getName(), System.nanoTime());
+        this.spans.add(span);
+        return span;
+    }
+
+    /**
+     * One timed piece of work. Spans are AutoCloseable so synchronous work can be traced with
+     * try-with-resources, ending a span more than once only counts the first time.
+     */
+    public final class Span implements AutoCloseable {
+        private final String name;
+        private final Span parent;
+        private final int depth;
+        private final String thread;
+        private final long startNanos;
+        private volatile long endNanos = -1;
+
+        private Span(String name, Span parent, String thread, long startNanos) {
+            this.name = name;
+            this.parent = parent;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+            this.thread = thread;
+            this.startNanos = startNanos;
+        }
+
+        public Span child(String name) { return Tracer.this.start(name, this); }
+
+        public synchronized void end() {
+            if (this.endNanos < 0) {
+                this.endNanos = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void close() { this.end(); }
+
+        public String getName() { return this.name; }
+        public Span getParent() { return this.parent; }
+        public int getDepth() { return this.depth; }
+        public boolean isEnded() { return this.endNanos >= 0; }
+
+        public double getStartMillis() { return (this.startNanos - Tracer.this.origin) / 1e6; }
+
+        // how long the span took, or has taken so far if it hasn't ended
+        public double getDurationMillis() {
+            long end = this.isEnded() ? this.endNanos : System.nanoTime();
+            return (end - this.startNanos) / 1e6;
+        }
+    }
+}
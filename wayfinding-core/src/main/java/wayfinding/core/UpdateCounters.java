@@ -0,0 +1,49 @@
+package wayfinding.core;
+
+import java.util.Locale;
+
+/**
+ * Running totals for the per-frame node update loop, so we can show how much work a frame does
+ * and that the steady state loop doesn't allocate. Counters are plain longs because they are only
+ * written from the thread that runs the frame loop.
+ */
+public final class UpdateCounters {
+    private static final String STRING_FMT =
+            "frames: %d, skipped frames: %d, nodes evaluated: %d, renderable swaps: %d, material swaps: %d, allocations: %d";
+
+    private long frames;
+    private long skippedFrames; // frames the update was gated out of, see UpdateGate
+    private long nodesEvaluated;
+    private long renderableSwaps;
+    private long materialSwaps;
+    private long allocations;
+
+    public void countFrame() { this.frames++; }
+    public void countSkippedFrame() { this.skippedFrames++; }
+    public void countEvaluated() { this.nodesEvaluated++; }
+    public void countRenderableSwap() { this.renderableSwaps++; }
+    public void countMaterialSwap() { this.materialSwaps++; }
+    public void countAllocations(long count) { this.allocations += count; }
+
+    public long getFrames() { return this.frames; }
+    public long getSkippedFrames() { return this.skippedFrames; }
+    public long getNodesEvaluated() { return this.nodesEvaluated; }
+    public long getRenderableSwaps() { return this.renderableSwaps; }
+    public long getMaterialSwaps() { return this.materialSwaps; }
+    public long getAllocations() { return this.allocations; }
+
+    public void reset() {
+        this.frames = 0;
+        this.skippedFrames = 0;
+        this.nodesEvaluated = 0;
+        this.renderableSwaps = 0;
+        this.materialSwaps = 0;
+        this.allocations = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, STRING_FMT,
+                this.frames, this.skippedFrames, this.nodesEvaluated, this.renderableSwaps, this.materialSwaps, this.allocations);
+    }
+}
@@ -0,0 +1,86 @@
+package wayfinding.core;
+
+/**
+ * Decides whether a frame needs the per-frame node update at all. Nodes only change when the
+ * camera does, so a frame is skipped unless the camera has moved at least minTranslation metres
+ * or turned at least minRotation degrees since the last update, and at most maxRate updates a
+ * second happen (0 for no cap). The cap schedules each update 1/maxRate seconds after the last
+ * one was due rather than after it happened, so frames that arrive a little early or late (as
+ * vsync ones do) don't cost whole intervals and a 30 Hz cap at 60 fps really updates 30 times a
+ * second. Anything else that changes what the nodes show, like a
+ * new route, calls invalidate() so the next frame updates whatever the camera did. Nothing is
+ * allocated; like UpdateCounters, a gate is only used from the thread that runs the frame loop.
+ */
+public final class UpdateGate {
+    private final float minTranslationSquared;
+    private final float minRotationCos; // cos of the smallest turn that counts
+    private final long minIntervalNanos;
+
+    private boolean isInvalid = true; // the first frame always updates
+    private long nextNanos; // when the next update is due
+    private float lastX;
+    private float lastY;
+    private float lastZ;
+    private float lastForwardX; // unit vector
+    private float lastForwardY;
+    private float lastForwardZ;
+    private long updates = 0;
+    private long skips = 0;
+
+    public UpdateGate(float minTranslation, float minRotation, float maxRate) {
+        if (minTranslation < 0 || minRotation < 0 || maxRate < 0) {
+            throw new IllegalArgumentException("Thresholds can't be negative");
+        }
+        this.minTranslationSquared = minTranslation * minTranslation;
+        this.minRotationCos = (float) Math.cos(Math.toRadians(Math.min(minRotation, 180)));
+        this.minIntervalNanos = maxRate == 0 ? 0 : (long) (1e9 / maxRate);
+    }
+
+    // Whether to update for a camera at (x,y,z) looking along (forwardX,forwardY,forwardZ), at
+    // time nanos (from System.nanoTime()). If so, this is remembered as the last update's pose. A
+    // zero forward vector means the direction isn't known, so only movement counts.
+    public boolean shouldUpdate(long nanos, float x, float y, float z, float forwardX, float forwardY, float forwardZ) {
+        float length = (float) Math.sqrt(forwardX * forwardX + forwardY * forwardY + forwardZ * forwardZ);
+        if (length > 0) {
+            forwardX /= length;
+            forwardY /= length;
+            forwardZ /= length;
+        }
+        if (!this.isInvalid) {
+            if (nanos - this.nextNanos < 0) {
+                this.skips++;
+                return false;
+            }
+            float dx = x - this.lastX;
+            float dy = y - this.lastY;
+            float dz = z - this.lastZ;
+            boolean moved = dx * dx + dy * dy + dz * dz >= this.minTranslationSquared;
+            boolean turned = length > 0 && forwardX * this.lastForwardX + forwardY * this.lastForwardY
+                    + forwardZ * this.lastForwardZ <= this.minRotationCos;
+            if (!moved && !turned) {
+                this.skips++;
+                return false;
+            }
+        }
+        // keep to the schedule unless we're a whole interval behind it (after skipping frames that
+        // didn't move, say) or ahead of it (after invalidate()), which would burst or starve updates
+        long late = nanos - this.nextNanos;
+        this.nextNanos = late >= 0 && late < this.minIntervalNanos ? this.nextNanos + this.minIntervalNanos
+                : nanos + this.minIntervalNanos;
+        this.isInvalid = false;
+        this.lastX = x;
+        this.lastY = y;
+        this.lastZ = z;
+        this.lastForwardX = forwardX;
+        this.lastForwardY = forwardY;
+        this.lastForwardZ = forwardZ;
+        this.updates++;
+        return true;
+    }
+
+    // makes the next frame update, however little the camera has moved or however soon it is
+    public void invalidate() { this.isInvalid = true; }
+
+    public long getUpdates() { return this.updates; }
+    public long getSkips() { return this.skips; }
+}
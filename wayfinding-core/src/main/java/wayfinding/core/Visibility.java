@@ -0,0 +1,51 @@
+package wayfinding.core;
+
+/**
+ * The boundary and opacity maths for nodes that are only visible while the camera is inside a
+ * rectangle around them, kept in primitives so it can run every frame without allocating.
+ * Positions are (x,z) in the node's local space, where the rectangle reaches forward along +z,
+ * backward along -z, left along +x and right along -x (the x axis is flipped in the scene).
+ */
+public final class Visibility {
+    public static final int HIDDEN = -1;
+    // Opacity buckets run from 0 (clear) to OPAQUE. Each bucket needs its own material per colour,
+    // and steps of 5% are indistinguishable on the arrows, so we keep the number of buckets small.
+    public static final int OPAQUE = 20;
+
+    private Visibility() {}
+
+    // The opacity bucket for a node when the camera is at (x,z) in the node's local space, or
+    // HIDDEN if the camera is outside the node's rectangle. The node fades in over the outside
+    // half of the rectangle and is fully opaque for the inside half (which is actually only one
+    // quarter of the area, so maybe the numbers need a little rejigging).
+    public static int opacityBucket(float x, float z, float forward, float backward, float left, float right) {
+        if (x > left || x < -right || z > forward || z < -backward) {
+            return HIDDEN;
+        }
+        // the camera is (x,z) and we use the origin as the other point, so we scale each axis by
+        // the side of the rectangle the camera is on
+        float horizontal = x > 0 ? left : right;
+        float vertical = z < 0 ? backward : forward;
+        float boundary = Math.max(Math.abs(x / horizontal), Math.abs(z / vertical));
+        float opacity = 2 * (1 - boundary);
+        if (!(opacity < 1)) { // also catches the NaN from a zero sized rectangle at its origin
+            return OPAQUE;
+        }
+        return (int) (opacity * OPAQUE);
+    }
+
+    public static float opacityOf(int bucket) {
+        return bucket == HIDDEN ? 0 : (float) bucket / OPAQUE;
+    }
+
+    // x component of (dx,dz) rotated into the local space of a node yawed by an angle with the
+    // given cosine and sine, i.e. the inverse of the node's rotation about the y axis
+    public static float localX(float dx, float dz, float cos, float sin) {
+        return cos * dx - sin * dz;
+    }
+
+    // z component of the same rotation as localX
+    public static float localZ(float dx, float dz, float cos, float sin) {
+        return sin * dx + cos * dz;
+    }
+}
@@ -0,0 +1,149 @@
+package wayfinding.core;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the geometric half of the per-frame node update (the {@link ActiveSet} and each node's
+ * {@link BoundedRegion}) off the frame loop. submit() hands a camera position to the executor,
+ * which works out an opacity bucket for every node in the active set (and for its child, like an
+ * entry point's room card, from the camera in the node's own space) into a {@link Frame}; poll()
+ * then hands back the latest finished frame for the frame loop to apply to the scene. There are
+ * two frames that the worker fills in turn, and only one job runs at a time, so the frame loop can
+ * read the frame it polled until it next calls submit() while the worker fills the other one.
+ * Frame time is then the cost of applying the changes, whatever the size of the map.
+ *
+ * submit() and poll() must be called from one thread (the frame loop), and the regions only
+ * changed from it too. The worker attaches itself to the regions, so a change made to one only
+ * reaches the worker at the next submit(), which hands it to the job along with the camera
+ * position (see BoundedRegion). Nothing is allocated per job.
+ */
+public final class VisibilityWorker {
+    // Nodes join the active set within this margin of their reach and leave it beyond twice that,
+    // so a user standing on the boundary doesn't make nodes flicker in and out of the set.
+    public static final float ACTIVE_MARGIN = 1f;
+
+    private final ActiveSet activeSet;
+    private final BoundedRegion[] nodes; // by graph point
+    private final BoundedRegion[] children; // null for points without a child
+    private final Executor executor;
+    private final ArrayList<BoundedRegion> changes; // regions changed since the last submit()
+    private final Frame[] frames;
+    private final AtomicReference<Frame> finished = new AtomicReference<>();
+    private final Runnable job = this::run;
+    private volatile boolean isBusy = false;
+    private int next = 0; // the frame the next job fills
+
+    // the pose for the running job, published to it (with the regions' changes) by Executor.execute()
+    private float mapX;
+    private float mapZ;
+    private float localX;
+    private float localZ;
+
+    // nodes[i] is graph point i's region, and children[i] its child's, placed in the node's space
+    public VisibilityWorker(Graph graph, BoundedRegion[] nodes, BoundedRegion[] children, float activeMargin, Executor executor) {
+        if (nodes.length != graph.size() || children.length != graph.size()) {
+            throw new IllegalArgumentException("There must be a node and child slot for every point");
+        }
+        float reach = 0; // furthest any node's (or its child's) visible region reaches from its point
+        for (int i = 0; i < nodes.length; i++) {
+            reach = Math.max(reach, nodes[i].getReach());
+            if (children[i] != null) { reach = Math.max(reach, children[i].getReach()); }
+        }
+        this.activeSet = new ActiveSet(graph, reach, activeMargin);
+        this.nodes = nodes;
+        this.children = children;
+        this.executor = executor;
+        this.changes = new ArrayList<>(2 * nodes.length); // each region is in it at most once
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].attach(this.changes);
+            if (children[i] != null) { children[i].attach(this.changes); }
+        }
+        this.frames = new Frame[] {new Frame(graph.size()), new Frame(graph.size())};
+    }
+
+    // Whether a job is still running or its frame hasn't been polled yet, in which case submit()
+    // would do nothing. A frame must be applied before the next job starts: it has the last
+    // update for the points that just left the active set, which no later frame will have. The
+    // job publishes its frame before it stops being busy, so busy is read first.
+    public boolean isBusy() { return this.isBusy || this.finished.get() != null; }
+
+    // Starts working out the nodes for the camera at (mapX,mapZ) in map space, which is
+    // (localX,localZ) in the nodes' parent space. Returns false if isBusy().
+    public boolean submit(float mapX, float mapZ, float localX, float localZ) {
+        if (this.isBusy()) {
+            return false;
+        }
+        this.isBusy = true;
+        for (int j = 0; j < this.changes.size(); j++) { this.changes.get(j).publish(); }
+        this.changes.clear();
+        this.mapX = mapX;
+        this.mapZ = mapZ;
+        this.localX = localX;
+        this.localZ = localZ;
+        this.executor.execute(this.job);
+        return true;
+    }
+
+    // the latest frame finished since the last poll(), or null. It stays valid until submit() is
+    // called twice more.
+    public Frame poll() { return this.finished.getAndSet(null); }
+
+    private void run() {
+        Frame frame = this.frames[this.next];
+        this.next ^= 1;
+        try {
+            frame.clear();
+            IntList updated = this.activeSet.update(this.mapX, this.mapZ);
+            for (int j = 0; j < updated.size(); j++) {
+                int i = updated.get(j);
+                BoundedRegion node = this.nodes[i];
+                int bucket = node.update(this.localX, this.localZ);
+                int child = this.children[i] == null ? Visibility.HIDDEN
+                        : this.children[i].update(node.getCameraX(), node.getCameraZ());
+                frame.add(i, bucket, child, this.activeSet.contains(i));
+            }
+            this.finished.set(frame);
+        } finally {
+            this.isBusy = false;
+        }
+    }
+
+    /**
+     * One job's results: the points to update (everything in the active set, plus the points that
+     * just left it, which get one last update to hide them) and each one's opacity bucket and its
+     * child's, see BoundedRegion.update().
+     */
+    public static final class Frame {
+        private final IntList points;
+        private final byte[] buckets;
+        private final byte[] childBuckets;
+        private final boolean[] active;
+
+        Frame(int capacity) {
+            this.points = new IntList(capacity);
+            this.buckets = new byte[capacity];
+            this.childBuckets = new byte[capacity];
+            this.active = new boolean[capacity];
+        }
+
+        void clear() { this.points.clear(); }
+
+        void add(int point, int bucket, int childBucket, boolean isActive) {
+            int j = this.points.size();
+            this.points.add(point);
+            this.buckets[j] = (byte) bucket;
+            this.childBuckets[j] = (byte) childBucket;
+            this.active[j] = isActive;
+        }
+
+        public int size() { return this.points.size(); }
+        public int pointAt(int j) { return this.points.get(j); }
+        public int bucketAt(int j) { return this.buckets[j]; }
+        public int childBucketAt(int j) { return this.childBuckets[j]; }
+
+        // whether the point is still in the active set, rather than getting its last update
+        public boolean isActive(int j) { return this.active[j]; }
+    }
+}
@@ -0,0 +1,45 @@
+package wayfinding.core;
+
+import java.util.Locale;
+
+/**
+ * A single point in the map graph, in map space (metres on the floor plan).
+ * Entry points (points in the doorway of a room) also carry the name of the room and the angle
+ * that a destination arrow should face to point into it. Plain nav points have no room name.
+ */
+public final class Waypoint {
+    private static final String TAG = "wayfinder.Waypoint";
+    private static final String STRING_FMT = "%s: id is %d, (x,z) is (%f,%f), roomName is %s";
+
+    private final int id;
+    private final float x;
+    private final float z;
+    private final String roomName;
+    private final float angleIn;
+
+    public Waypoint(int id, float x, float z) {
+        this(id, x, z, null, 0);
+    }
+
+    public Waypoint(int id, float x, float z, String roomName, float angleIn) {
+        this.id = id;
+        this.x = x;
+        this.z = z;
+        this.roomName = roomName;
+        this.angleIn = angleIn;
+    }
+
+    public int getId() { return this.id; }
+    public float getX() { return this.x; }
+    public float getZ() { return this.z; }
+    public String getRoomName() { return this.roomName; }
+    public float getAngleIn() { return this.angleIn; }
+
+    public boolean isEntry() { return this.roomName != null; }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, STRING_FMT,
+            TAG, this.id, this.x, this.z, this.roomName);
+    }
+}
@@ -0,0 +1,125 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// A batch must route every pair as a Router would on its own, however the pool splits it up.
+public class BatchRouterTest {
+    private static Graph graph;
+    private static ContractionHierarchy hierarchy;
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void setUp() {
+        graph = SyntheticVenue.generate(2000, 19).toGraph();
+        hierarchy = ContractionHierarchy.build(graph);
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void routesLikeRouter() {
+        assertSameRoutes(new BatchRouter(graph, null, null, pool), new Router(graph), 1);
+    }
+
+    @Test
+    public void routesLikeRouterWithAHierarchy() {
+        assertSameRoutes(new BatchRouter(graph, null, hierarchy, pool), new Router(graph), 2);
+    }
+
+    @Test
+    public void routesWithTheCostsItWasGiven() {
+        EdgeCosts costs = new EdgeCosts(graph);
+        Random random = new Random(3);
+        for (int j = 0; j < 40; j++) {
+            int from = random.nextInt(graph.size());
+            int edge = graph.firstEdge(from);
+            if (j % 2 == 0) {
+                costs.block(from, graph.edgeTarget(edge));
+            } else {
+                costs.reweight(from, graph.edgeTarget(edge), 3 * graph.edgeWeight(edge));
+            }
+        }
+        BatchRouter batch = new BatchRouter(graph, costs, hierarchy, pool);
+        EdgeCosts before = costs.copy();
+        costs.block(0, graph.edgeTarget(graph.firstEdge(0))); // too late for the batch
+        assertSameRoutes(batch, new Router(graph, before), 4);
+    }
+
+    @Test
+    public void routesEveryOriginToEveryDestination() {
+        BatchRouter batch = new BatchRouter(graph, null, null, pool);
+        Router router = new Router(graph);
+        Random random = new Random(5);
+        int[] origins = randomPoints(random, 40);
+        int[] destinations = randomPoints(random, 60);
+        origins[7] = Graph.NO_POINT;
+        destinations[11] = Graph.NO_POINT;
+        for (int run = 0; run < 2; run++) { // the second run reuses the first's trees
+            BatchRoutes routes = batch.routeAll(origins, destinations);
+            assertEquals(origins.length * destinations.length, routes.size());
+            for (int i = 0; i < origins.length; i++) {
+                for (int j = 0; j < destinations.length; j++) {
+                    assertSameRoute(router, origins[i], destinations[j], routes, i * destinations.length + j);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnpairedPoints() {
+        new BatchRouter(graph, null, null, pool).route(new int[2], new int[3]);
+    }
+
+    private static void assertSameRoutes(BatchRouter batch, Router router, long seed) {
+        Random random = new Random(seed);
+        int[] origins = randomPoints(random, 1000);
+        int[] destinations = randomPoints(random, 1000);
+        origins[10] = Graph.NO_POINT;
+        destinations[20] = Graph.NO_POINT;
+        destinations[30] = origins[30];
+        BatchRoutes routes = batch.route(origins, destinations);
+        assertEquals(origins.length, routes.size());
+        for (int i = 0; i < origins.length; i++) { assertSameRoute(router, origins[i], destinations[i], routes, i); }
+    }
+
+    // route i of the batch is as long as the router's and is a path between the two points
+    private static void assertSameRoute(Router router, int origin, int destination, BatchRoutes routes, int i) {
+        Route expected = router.route(origin, destination);
+        String pair = origin + " to " + destination;
+        assertEquals(pair, expected.isFound(), routes.isFound(i));
+        if (!expected.isFound()) {
+            return;
+        }
+        assertEquals(pair, expected.getLength(), routes.getLength(i), 1e-3);
+        assertEquals(pair, origin, routes.pointAt(i, 0));
+        assertEquals(pair, destination, routes.pointAt(i, routes.routeSize(i) - 1));
+        EdgeCosts costs = router.getCosts();
+        double length = 0;
+        for (int k = 0; k + 1 < routes.routeSize(i); k++) {
+            int edge = graph.edgeBetween(routes.pointAt(i, k), routes.pointAt(i, k + 1));
+            assertNotEquals(pair + " has no edge at " + k, Graph.NO_EDGE, edge);
+            assertFalse(pair + " is blocked at " + k, costs != null && costs.isBlocked(edge));
+            length += costs == null ? graph.edgeWeight(edge) : costs.get(edge);
+        }
+        assertEquals(pair, routes.getLength(i), length, 1e-3);
+    }
+
+    private static int[] randomPoints(Random random, int count) {
+        int[] points = new int[count];
+        for (int j = 0; j < count; j++) { points[j] = random.nextInt(graph.size()); }
+        return points;
+    }
+}
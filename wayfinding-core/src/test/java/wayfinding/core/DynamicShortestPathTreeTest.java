@@ -0,0 +1,131 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// Repairs must leave the same tree a fresh Dijkstra over the changed costs would build.
+public class DynamicShortestPathTreeTest {
+    private Graph graph;
+    private EdgeCosts costs;
+    private int root;
+    private DynamicShortestPathTree tree;
+
+    @Before
+    public void setUp() {
+        SyntheticVenue venue = SyntheticVenue.generate(2000, 17);
+        this.graph = venue.toGraph();
+        this.costs = new EdgeCosts(this.graph);
+        this.root = this.graph.indexOf(venue.getRootId());
+        this.tree = new DynamicShortestPathTree(this.costs, this.root);
+    }
+
+    @Test
+    public void buildsTheSameTreeAsRouter() {
+        this.assertRepaired();
+    }
+
+    @Test
+    public void repairsAfterBlocking() {
+        Random random = new Random(1);
+        for (int j = 0; j < 50; j++) {
+            int edge = random.nextInt(this.graph.edgeCount());
+            this.costs.block(this.sourceOf(edge), this.graph.edgeTarget(edge));
+            this.assertRepaired();
+        }
+    }
+
+    @Test
+    public void repairsAfterUnblocking() {
+        Random random = new Random(2);
+        int[] blocked = new int[50];
+        for (int j = 0; j < blocked.length; j++) {
+            blocked[j] = random.nextInt(this.graph.edgeCount());
+            this.costs.block(this.sourceOf(blocked[j]), this.graph.edgeTarget(blocked[j]));
+        }
+        for (int edge : blocked) {
+            this.costs.unblock(this.sourceOf(edge), this.graph.edgeTarget(edge));
+            this.assertRepaired();
+        }
+        assertTrue(this.costs.isUnchanged());
+    }
+
+    @Test
+    public void repairsAfterReweighting() {
+        Random random = new Random(3);
+        for (int j = 0; j < 100; j++) {
+            int edge = random.nextInt(this.graph.edgeCount());
+            // dearer and then back to (or near) their length, so both kinds of repair run
+            float cost = this.graph.edgeWeight(edge) * (j % 2 == 0 ? 1 + 4 * random.nextFloat() : 1);
+            this.costs.reweight(this.sourceOf(edge), this.graph.edgeTarget(edge), cost);
+            this.assertRepaired();
+        }
+    }
+
+    @Test
+    public void repairsAfterMixedChanges() {
+        Random random = new Random(4);
+        for (int j = 0; j < 200; j++) {
+            int edge = random.nextInt(this.graph.edgeCount());
+            int from = this.sourceOf(edge);
+            int to = this.graph.edgeTarget(edge);
+            switch (random.nextInt(3)) {
+                case 0: this.costs.block(from, to); break;
+                case 1: this.costs.unblock(from, to); break;
+                default: this.costs.reweight(from, to, this.graph.edgeWeight(edge) * (1 + 2 * random.nextFloat()));
+            }
+            this.assertRepaired();
+        }
+    }
+
+    @Test
+    public void cutsOffAndRestoresARoom() {
+        int room = this.graph.indexOfEntry(this.graph.getRoomNames().iterator().next());
+        assertEquals(1, this.graph.endEdge(room) - this.graph.firstEdge(room)); // rooms hang off one corridor point
+        int door = this.graph.edgeTarget(this.graph.firstEdge(room));
+        double distance = this.tree.getTree().distanceTo(room);
+
+        this.costs.block(door, room);
+        assertFalse(this.tree.getTree().isReachable(room));
+        this.assertRepaired();
+
+        this.costs.unblock(door, room);
+        assertTrue(this.tree.getTree().isReachable(room));
+        assertEquals(distance, this.tree.getTree().distanceTo(room), 1e-6);
+        this.assertRepaired();
+    }
+
+    @Test
+    public void repairsLessThanTheWholeTree() {
+        int edge = this.graph.firstEdge(this.graph.size() / 2);
+        this.costs.block(this.sourceOf(edge), this.graph.edgeTarget(edge));
+        assertTrue(this.tree.getLastRepairSize() < this.graph.size());
+        this.assertRepaired();
+    }
+
+    // the repaired tree reaches what a new one does, as cheaply, along edges that cost what it says
+    private void assertRepaired() {
+        ShortestPathTree repaired = this.tree.getTree();
+        ShortestPathTree fresh = new Router(this.graph, this.costs).shortestPathTree(this.root);
+        for (int i = 0; i < this.graph.size(); i++) {
+            assertEquals("reachable " + i, fresh.isReachable(i), repaired.isReachable(i));
+            if (!fresh.isReachable(i)) { continue; }
+            assertEquals("distance to " + i, fresh.distanceTo(i), repaired.distanceTo(i), 1e-6 * (1 + fresh.distanceTo(i)));
+            if (i == this.root) { continue; }
+            int prev = repaired.prevOf(i);
+            float cost = this.costs.get(this.graph.edgeBetween(prev, i));
+            assertEquals("edge into " + i, repaired.distanceTo(i), repaired.distanceTo(prev) + cost, 1e-6 * (1 + fresh.distanceTo(i)));
+        }
+    }
+
+    private int sourceOf(int edge) {
+        int from = 0;
+        while (this.graph.endEdge(from) <= edge) { from++; }
+        return from;
+    }
+}
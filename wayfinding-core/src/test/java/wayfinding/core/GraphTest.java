@@ -0,0 +1,123 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+// The builder must lay points out by id and keep one straight-line edge per ordered pair of points.
+public class GraphTest {
+
+    @Test
+    public void indexesPointsInIdOrder() {
+        Graph graph = Graph.builder()
+                .addPoint(new Waypoint(30, 3, 0))
+                .addPoint(new Waypoint(10, 1, 0))
+                .addPoint(new Waypoint(20, 2, 0))
+                .build();
+        assertEquals(3, graph.size());
+        assertEquals(0, graph.indexOf(10));
+        assertEquals(2, graph.indexOf(30));
+        assertEquals(Graph.NO_POINT, graph.indexOf(15));
+        assertEquals(20, graph.getId(1));
+        assertEquals(2, graph.getX(1), 0);
+    }
+
+    @Test
+    public void keepsOneOfParallelEdges() {
+        Graph.Builder builder = Graph.builder()
+                .addPoint(new Waypoint(1, 0, 0))
+                .addPoint(new Waypoint(2, 3, 4));
+        builder.addEdge(1, 2);
+        builder.addEdge(1, 2);
+        builder.addEdge(2, 1);
+        builder.addEdge(1, 2);
+        Graph graph = builder.build();
+        assertEquals(2, graph.edgeCount()); // one each way
+        int a = graph.indexOf(1);
+        assertEquals(1, graph.endEdge(a) - graph.firstEdge(a));
+        assertEquals(graph.indexOf(2), graph.edgeTarget(graph.firstEdge(a)));
+        assertEquals(5, graph.edgeWeight(graph.firstEdge(a)), 1e-6); // the straight line between them
+    }
+
+    @Test
+    public void dropsSelfLoopsAndEdgesToMissingPoints() {
+        Graph.Builder builder = Graph.builder()
+                .addPoint(new Waypoint(1, 0, 0))
+                .addPoint(new Waypoint(2, 1, 0));
+        assertTrue(builder.addEdge(1, 1));
+        assertFalse(builder.addEdge(1, 3));
+        assertFalse(builder.addEdge(3, 2));
+        assertTrue(builder.addEdge(2, 1));
+        Graph graph = builder.build();
+        assertEquals(1, graph.edgeCount());
+        assertEquals(0, graph.endEdge(graph.indexOf(1)) - graph.firstEdge(graph.indexOf(1)));
+    }
+
+    @Test
+    public void groupsEdgesBySourceInTargetOrder() {
+        // a fan of points around point 0, with edges added in a scrambled order and repeated
+        Graph.Builder builder = Graph.builder().addPoint(new Waypoint(0, 0, 0));
+        for (int id = 1; id <= 8; id++) { builder.addPoint(new Waypoint(id, id, id % 3)); }
+        int[] order = {5, 2, 8, 1, 7, 3, 6, 4, 2, 5};
+        for (int id : order) {
+            builder.addEdge(0, id);
+            builder.addEdge(id, 0);
+            builder.addEdge(id, id % 8 + 1);
+        }
+        Graph graph = builder.build();
+        List<String> edges = new ArrayList<>();
+        for (int i = 0; i < graph.size(); i++) {
+            int last = -1;
+            for (int e = graph.firstEdge(i); e < graph.endEdge(i); e++) {
+                int to = graph.edgeTarget(e);
+                assertTrue("targets of " + i + " out of order", to > last);
+                last = to;
+                edges.add(graph.getId(i) + ">" + graph.getId(to));
+                float dx = graph.getX(i) - graph.getX(to);
+                float dz = graph.getZ(i) - graph.getZ(to);
+                assertEquals((float) Math.sqrt(dx * dx + dz * dz), graph.edgeWeight(e), 1e-6);
+            }
+        }
+        assertEquals(0, graph.firstEdge(0));
+        assertEquals(graph.edgeCount(), graph.endEdge(graph.size() - 1));
+        assertEquals(Arrays.asList("0>1", "0>2", "0>3", "0>4", "0>5", "0>6", "0>7", "0>8",
+                "1>0", "1>2", "2>0", "2>3", "3>0", "3>4", "4>0", "4>5",
+                "5>0", "5>6", "6>0", "6>7", "7>0", "7>8", "8>0", "8>1"), edges);
+    }
+
+    @Test
+    public void replacesAPointWithTheSameId() {
+        Graph graph = Graph.builder()
+                .addPoint(new Waypoint(1, 0, 0, "Lab", 90))
+                .addPoint(new Waypoint(2, 1, 0, "Kitchen", 0))
+                .addPoint(new Waypoint(1, 5, 5, "Library", 180))
+                .build();
+        assertEquals(2, graph.size());
+        assertEquals(5, graph.getX(graph.indexOf(1)), 0);
+        assertEquals("Library", graph.getRoomName(graph.indexOf(1)));
+        assertEquals(Graph.NO_POINT, graph.indexOfEntry("Lab"));
+        List<String> rooms = new ArrayList<>();
+        for (String room : graph.getRoomNames()) { rooms.add(room); }
+        assertEquals(Arrays.asList("Library", "Kitchen"), rooms); // where the first point 1 was added
+    }
+
+    @Test
+    public void findsEntryPointsByRoom() {
+        Graph graph = Graph.builder()
+                .addPoint(new Waypoint(7, 0, 0))
+                .addPoint(new Waypoint(3, 1, 0, "Lab", 45))
+                .build();
+        int lab = graph.indexOfEntry("Lab");
+        assertEquals(graph.indexOf(3), lab);
+        assertTrue(graph.isEntry(lab));
+        assertEquals(45, graph.getAngleIn(lab), 0);
+        assertFalse(graph.isEntry(graph.indexOf(7)));
+        assertEquals(Graph.NO_POINT, graph.indexOfEntry("Kitchen"));
+    }
+}
@@ -0,0 +1,121 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// Routes through a contraction hierarchy must be as short as Router's, with or without an attached point.
+public class HierarchyRouterTest {
+    private static Graph base;
+    private static ContractionHierarchy hierarchy;
+    private static Graph attached; // base with a point joined to its four corners, see setUp()
+    private static ContractionHierarchy attachedHierarchy;
+    private static int at; // the attached point's index in attached
+
+    @BeforeClass
+    public static void setUp() {
+        base = SyntheticVenue.generate(3000, 7).toGraph();
+        hierarchy = ContractionHierarchy.build(base);
+
+        // a point in the middle of the venue with corridors straight to its corners, which makes
+        // it a short cut between them that routes across the venue go through
+        float maxX = 0;
+        float maxZ = 0;
+        for (int i = 0; i < base.size(); i++) {
+            maxX = Math.max(maxX, base.getX(i));
+            maxZ = Math.max(maxZ, base.getZ(i));
+        }
+        int id = base.getId(0) - 1; // ids are in order, so this one is free
+        attached = base.withAttachedPoint(new Waypoint(id, maxX / 2, maxZ / 2),
+                base.getId(base.nearestPoint(0, 0)), base.getId(base.nearestPoint(maxX, maxZ)),
+                base.getId(base.nearestPoint(0, maxZ)), base.getId(base.nearestPoint(maxX, 0)));
+        attachedHierarchy = hierarchy.withAttachedPoint(attached);
+        at = attached.indexOf(id);
+    }
+
+    @Test
+    public void routesLikeRouter() {
+        HierarchyRouter router = new HierarchyRouter(hierarchy);
+        Router expected = new Router(base);
+        Random random = new Random(1);
+        for (int j = 0; j < 2000; j++) {
+            assertSameRoute(base, expected, router, random.nextInt(base.size()), random.nextInt(base.size()));
+        }
+    }
+
+    @Test
+    public void routesToAndFromItself() {
+        HierarchyRouter router = new HierarchyRouter(hierarchy);
+        Router expected = new Router(base);
+        for (int i = 0; i < base.size(); i += 97) { assertSameRoute(base, expected, router, i, i); }
+    }
+
+    @Test
+    public void routesFromTheAttachedPoint() {
+        HierarchyRouter router = new HierarchyRouter(attachedHierarchy);
+        Router expected = new Router(attached);
+        for (int i = 0; i < attached.size(); i += 7) { assertSameRoute(attached, expected, router, at, i); }
+    }
+
+    @Test
+    public void routesToTheAttachedPoint() {
+        HierarchyRouter router = new HierarchyRouter(attachedHierarchy);
+        Router expected = new Router(attached);
+        for (int i = 0; i < attached.size(); i += 7) { assertSameRoute(attached, expected, router, i, at); }
+        assertSameRoute(attached, expected, router, at, at);
+    }
+
+    @Test
+    public void routesThroughTheAttachedPoint() {
+        HierarchyRouter router = new HierarchyRouter(attachedHierarchy);
+        Router expected = new Router(attached);
+        Random random = new Random(2);
+        int through = 0;
+        for (int j = 0; j < 5000; j++) {
+            Route route = assertSameRoute(attached, expected, router, random.nextInt(attached.size()), random.nextInt(attached.size()));
+            for (int k = 1; k + 1 < route.size(); k++) {
+                if (route.pointAt(k) == at) { through++; }
+            }
+        }
+        assertTrue("no route went through the attached point", through > 0);
+    }
+
+    @Test
+    public void keepsTheBaseGraph() {
+        assertEquals(base.size() + 1, attachedHierarchy.getGraph().size());
+        assertEquals(base, attachedHierarchy.getBaseGraph());
+        assertNotEquals(Graph.NO_POINT, at);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnotherGraph() {
+        hierarchy.withAttachedPoint(SyntheticVenue.generate(3000, 8).toGraph());
+    }
+
+    // the hierarchy's route is as long as Router's and is a real path between the two points
+    private static Route assertSameRoute(Graph graph, Router expected, HierarchyRouter router, int origin, int destination) {
+        Route want = expected.route(origin, destination);
+        Route got = router.route(origin, destination);
+        String pair = origin + " to " + destination;
+        assertEquals(pair, want.isFound(), got.isFound());
+        if (!got.isFound()) {
+            return got;
+        }
+        assertEquals(pair, want.getLength(), got.getLength(), 1e-3);
+        assertEquals(pair, origin, got.getOrigin());
+        assertEquals(pair, destination, got.getDestination());
+        double length = 0;
+        for (int k = 0; k + 1 < got.size(); k++) {
+            int edge = graph.edgeBetween(got.pointAt(k), got.pointAt(k + 1));
+            assertNotEquals(pair + " has no edge at " + k, Graph.NO_EDGE, edge);
+            length += graph.edgeWeight(edge);
+        }
+        assertEquals(pair, got.getLength(), length, 1e-3);
+        return got;
+    }
+}
@@ -0,0 +1,97 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+// The heap must hand back indices in key order, counting each index once at its lowest key.
+public class IndexedMinHeapTest {
+
+    @Test
+    public void pollsInKeyOrder() {
+        IndexedMinHeap heap = new IndexedMinHeap(6);
+        double[] keys = {5, 1, 4, 2, 3, 0};
+        for (int i = 0; i < keys.length; i++) { assertTrue(heap.insertOrDecrease(i, keys[i])); }
+        assertEquals(6, heap.size());
+        assertEquals(5, heap.peek());
+        int[] polled = new int[keys.length];
+        for (int j = 0; j < polled.length; j++) { polled[j] = heap.poll(); }
+        assertEquals(Arrays.toString(new int[] {5, 1, 3, 4, 2, 0}), Arrays.toString(polled));
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void decreasesKeys() {
+        IndexedMinHeap heap = new IndexedMinHeap(4);
+        heap.insertOrDecrease(0, 10);
+        heap.insertOrDecrease(1, 20);
+        heap.insertOrDecrease(2, 30);
+        heap.insertOrDecrease(3, 40);
+        assertTrue(heap.insertOrDecrease(3, 5));
+        assertTrue(heap.insertOrDecrease(2, 15));
+        assertEquals(4, heap.size()); // still once each
+        assertEquals(5, heap.keyOf(3), 0);
+        assertEquals(3, heap.poll());
+        assertEquals(0, heap.poll());
+        assertEquals(2, heap.poll());
+        assertEquals(1, heap.poll());
+    }
+
+    @Test
+    public void keepsTheLowerKey() {
+        IndexedMinHeap heap = new IndexedMinHeap(2);
+        heap.insertOrDecrease(0, 3);
+        heap.insertOrDecrease(1, 4);
+        assertFalse(heap.insertOrDecrease(0, 3));
+        assertFalse(heap.insertOrDecrease(0, 8));
+        assertEquals(3, heap.keyOf(0), 0);
+        assertEquals(0, heap.poll());
+    }
+
+    @Test
+    public void reinsertsAfterPollingAndClearing() {
+        IndexedMinHeap heap = new IndexedMinHeap(3);
+        heap.insertOrDecrease(0, 1);
+        heap.insertOrDecrease(1, 2);
+        assertEquals(0, heap.poll());
+        assertFalse(heap.contains(0));
+        assertTrue(heap.insertOrDecrease(0, 7));
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.contains(0));
+        assertFalse(heap.contains(1));
+        assertTrue(heap.insertOrDecrease(1, 9));
+        assertEquals(1, heap.size());
+        assertEquals(1, heap.poll());
+    }
+
+    @Test
+    public void matchesASortUnderRandomDecreases() {
+        Random random = new Random(2);
+        int n = 500;
+        IndexedMinHeap heap = new IndexedMinHeap(n);
+        double[] lowest = new double[n];
+        Arrays.fill(lowest, Double.POSITIVE_INFINITY);
+        for (int j = 0; j < 5000; j++) {
+            int i = random.nextInt(n);
+            double key = random.nextDouble() * 1000;
+            assertEquals("decrease of " + i, key < lowest[i], heap.insertOrDecrease(i, key));
+            lowest[i] = Math.min(lowest[i], key);
+        }
+        double last = Double.NEGATIVE_INFINITY;
+        int polled = 0;
+        while (!heap.isEmpty()) {
+            int i = heap.poll();
+            assertTrue("out of order at " + polled, lowest[i] >= last);
+            assertEquals(lowest[i], heap.keyOf(i), 0);
+            last = lowest[i];
+            polled++;
+        }
+        assertEquals(n, polled);
+    }
+}
@@ -0,0 +1,193 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// Maps must come back from a MapFile as they were written, and a corrupt one must not load.
+public class MapFileTest {
+    private static Graph graph;
+    private static ContractionHierarchy hierarchy;
+
+    @BeforeClass
+    public static void setUp() {
+        graph = SyntheticVenue.generate(1000, 3).toGraph();
+        hierarchy = ContractionHierarchy.build(graph);
+    }
+
+    @Test
+    public void readsWhatItWrote() throws IOException {
+        byte[] bytes = write(graph, hierarchy);
+        Graph read = MapFile.read(ByteBuffer.wrap(bytes));
+        assertSameGraph(graph, read);
+        assertSameHierarchy(hierarchy, MapFile.readHierarchy(ByteBuffer.wrap(bytes), read));
+    }
+
+    @Test
+    public void readsAMapWithoutAHierarchy() throws IOException {
+        byte[] bytes = write(graph, null);
+        Graph read = MapFile.read(ByteBuffer.wrap(bytes));
+        assertSameGraph(graph, read);
+        assertNull(MapFile.readHierarchy(ByteBuffer.wrap(bytes), read));
+    }
+
+    @Test
+    public void readsVersionOneMaps() throws IOException {
+        // version 1 is version 2 without the hierarchy flag at the end
+        byte[] v2 = write(graph, null);
+        byte[] v1 = Arrays.copyOf(v2, v2.length - 4);
+        ByteBuffer.wrap(v1).order(ByteOrder.LITTLE_ENDIAN).putInt(4, 1);
+        Graph read = MapFile.read(ByteBuffer.wrap(v1));
+        assertSameGraph(graph, read);
+        assertNull(MapFile.readHierarchy(ByteBuffer.wrap(v1), read));
+    }
+
+    @Test
+    public void rejectsCorruptHeaders() throws IOException {
+        byte[] bytes = write(graph, hierarchy);
+        assertRejected(withInt(bytes, 0, 0)); // magic
+        assertRejected(withInt(bytes, 4, MapFile.VERSION + 1));
+        assertRejected(withInt(bytes, 8, -1)); // point count
+        assertRejected(Arrays.copyOf(bytes, bytes.length / 2));
+        assertRejected(new byte[0]);
+    }
+
+    @Test
+    public void rejectsCorruptEdges() throws IOException {
+        byte[] bytes = write(graph, hierarchy);
+        int n = graph.size();
+        int offsets = 24 + 4 * 4 * n;
+        int targets = offsets + 4 * (n + 1);
+        assertRejected(withInt(bytes, offsets + 4, graph.edgeCount() + 1));
+        assertRejected(withInt(bytes, targets, n));
+        assertRejected(withInt(bytes, targets, -1));
+        assertRejected(withInt(bytes, 24, graph.getId(1))); // ids out of order
+    }
+
+    @Test
+    public void rejectsCorruptHierarchyRanks() throws IOException {
+        byte[] bytes = write(graph, hierarchy);
+        int ranks = hierarchyStart(bytes) + 3 * 4;
+        assertRejected(withInt(bytes, ranks, graph.size()));
+        assertRejected(withInt(bytes, ranks, ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(ranks + 4)));
+    }
+
+    @Test
+    public void rejectsCorruptShortcuts() throws IOException {
+        byte[] bytes = write(graph, hierarchy);
+        int n = graph.size();
+        int u = hierarchy.getUpTargets().length;
+        int[] upOffsets = hierarchy.getUpOffsets();
+        int[] upMiddles = hierarchy.getUpMiddles();
+        int middles = hierarchyStart(bytes) + 3 * 4 + 4 * n + 4 * (n + 1) + 4 * u + 8 * u;
+
+        int shortcuts = 0;
+        for (int v = 0; v < n && shortcuts < 20; v++) {
+            for (int e = upOffsets[v]; e < upOffsets[v + 1]; e++) {
+                if (upMiddles[e] == Graph.NO_POINT) { continue; }
+                shortcuts++;
+                // skipping a point more important than its start
+                assertRejected(withInt(bytes, middles + 4 * e, 0));
+                // skipping a less important point it has no edges to
+                int other = lessImportantStranger(v, hierarchy.getUpTargets()[e]);
+                if (other != Graph.NO_POINT) { assertRejected(withInt(bytes, middles + 4 * e, other)); }
+            }
+        }
+        assertTrue("the map has too few shortcuts to test", shortcuts >= 20);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesAHierarchyOverAnotherGraph() throws IOException {
+        write(SyntheticVenue.generate(1000, 4).toGraph(), hierarchy);
+    }
+
+    // a point less important than from that isn't joined to both from and to, or NO_POINT
+    private static int lessImportantStranger(int from, int to) {
+        int[] downOffsets = hierarchy.getDownOffsets();
+        int[] downSources = hierarchy.getDownSources();
+        int[] upOffsets = hierarchy.getUpOffsets();
+        int[] upTargets = hierarchy.getUpTargets();
+        for (int middle = graph.size() - 1; middle > from; middle--) {
+            boolean fromJoined = false;
+            boolean toJoined = false;
+            for (int e = downOffsets[middle]; e < downOffsets[middle + 1]; e++) { fromJoined |= downSources[e] == from; }
+            for (int e = upOffsets[middle]; e < upOffsets[middle + 1]; e++) { toJoined |= upTargets[e] == to; }
+            if (!fromJoined || !toJoined) { return middle; }
+        }
+        return Graph.NO_POINT;
+    }
+
+    private static byte[] write(Graph graph, ContractionHierarchy hierarchy) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MapFile.write(graph, hierarchy, out);
+        return out.toByteArray();
+    }
+
+    // where the hierarchy flag is, just after the room names
+    private static int hierarchyStart(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int n = buffer.getInt(8);
+        int m = buffer.getInt(12);
+        int k = buffer.getInt(16);
+        int nameBytes = buffer.getInt(20);
+        return 24 + 4 * (5 * n + 1 + 2 * m + 3 * k) + nameBytes;
+    }
+
+    private static byte[] withInt(byte[] bytes, int position, int value) {
+        byte[] copy = bytes.clone();
+        ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(position, value);
+        return copy;
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            Graph read = MapFile.read(ByteBuffer.wrap(bytes));
+            MapFile.readHierarchy(ByteBuffer.wrap(bytes), read);
+            fail("a corrupt map was read");
+        } catch (IOException expected) {
+            // as it should be
+        }
+    }
+
+    private static void assertSameGraph(Graph expected, Graph actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getId(i), actual.getId(i));
+            assertEquals(expected.getX(i), actual.getX(i), 0);
+            assertEquals(expected.getZ(i), actual.getZ(i), 0);
+            assertEquals(expected.getAngleIn(i), actual.getAngleIn(i), 0);
+            assertEquals(expected.getRoomName(i), actual.getRoomName(i));
+            assertEquals(expected.firstEdge(i), actual.firstEdge(i));
+            assertEquals(expected.endEdge(i), actual.endEdge(i));
+        }
+        for (int e = 0; e < expected.edgeCount(); e++) {
+            assertEquals(expected.edgeTarget(e), actual.edgeTarget(e));
+            assertEquals(expected.edgeWeight(e), actual.edgeWeight(e), 0);
+        }
+        for (String room : expected.getRoomNames()) { assertEquals(expected.indexOfEntry(room), actual.indexOfEntry(room)); }
+    }
+
+    private static void assertSameHierarchy(ContractionHierarchy expected, ContractionHierarchy actual) {
+        assertArrayEquals(expected.getRanks(), actual.getRanks());
+        assertArrayEquals(expected.getUpOffsets(), actual.getUpOffsets());
+        assertArrayEquals(expected.getUpTargets(), actual.getUpTargets());
+        assertArrayEquals(expected.getUpWeights(), actual.getUpWeights(), 0);
+        assertArrayEquals(expected.getUpMiddles(), actual.getUpMiddles());
+        assertArrayEquals(expected.getDownOffsets(), actual.getDownOffsets());
+        assertArrayEquals(expected.getDownSources(), actual.getDownSources());
+        assertArrayEquals(expected.getDownWeights(), actual.getDownWeights(), 0);
+        assertArrayEquals(expected.getDownMiddles(), actual.getDownMiddles());
+    }
+}
@@ -0,0 +1,134 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// Rooms are found by name, alias, the start of any word and near misses, best matches first.
+public class RoomIndexTest {
+    private RoomIndex index;
+    private final IntList out = new IntList();
+
+    @Before
+    public void setUp() {
+        this.index = RoomIndex.builder()
+                .addRoom("Lab", 1)
+                .addRoom("Lab Annex", 2)
+                .addRoom("Computer Lab", 3)
+                .addRoom("Venture Room 3", 4)
+                .addRoom("Venture Room 12", 5)
+                .addRoom("Kitchenette", 6)
+                .addRoom("Reception", 7)
+                .addRoom("Meeting Room A", 8)
+                .addAlias("Kitchenette", "kitchen")
+                .addAlias("Reception", "Front Desk")
+                .build();
+    }
+
+    @Test
+    public void ranksWholeNamesThenPrefixesThenWords() {
+        assertFound("lab", "Lab", "Lab Annex", "Computer Lab");
+    }
+
+    @Test
+    public void findsPrefixesInOrder() {
+        assertFound("vent", "Venture Room 12", "Venture Room 3");
+        assertFound("lab a", "Lab Annex");
+    }
+
+    @Test
+    public void findsTheStartOfLaterWords() {
+        assertFound("3", "Venture Room 3");
+        assertFound("room", "Meeting Room A", "Venture Room 12", "Venture Room 3");
+    }
+
+    @Test
+    public void findsAliases() {
+        assertFound("kitchen", "Kitchenette");
+        assertFound("front", "Reception");
+        assertFound("desk", "Reception");
+    }
+
+    @Test
+    public void ignoresCaseAndPunctuation() {
+        assertFound("MEETING-room  a", "Meeting Room A");
+        assertFound("lab ", "Lab", "Lab Annex", "Computer Lab");
+    }
+
+    @Test
+    public void findsNearMisses() {
+        assertFound("recepton", "Reception"); // a letter missing
+        assertFound("kitchenete", "Kitchenette");
+        assertFound("metting", "Meeting Room A"); // a letter wrong
+        assertFound("vneture room", "Venture Room 12", "Venture Room 3"); // two letters swapped
+    }
+
+    @Test
+    public void ranksNearMissesLast() {
+        // "room a" and "room 1" are a letter off "room 3"
+        assertFound("room 3", "Venture Room 3", "Meeting Room A", "Venture Room 12");
+        // and near misses as close as each other go by name
+        assertFound("labx", "Computer Lab", "Lab", "Lab Annex");
+    }
+
+    @Test
+    public void onlyLooksForNearMissesToFillTheLimit() {
+        assertEquals(1, this.index.search("room 3", 1, this.out));
+        assertEquals("Venture Room 3", this.index.getName(this.out.get(0)));
+    }
+
+    @Test
+    public void onlyToleratesMistakesInLongerQueries() {
+        assertFound("lbb");
+        assertFound("xyz");
+    }
+
+    @Test
+    public void keepsToTheLimit() {
+        assertEquals(2, this.index.search("lab", 2, this.out));
+        assertEquals("Lab", this.index.getName(this.out.get(0)));
+        assertEquals("Lab Annex", this.index.getName(this.out.get(1)));
+        assertEquals(0, this.index.search("lab", 0, this.out));
+    }
+
+    @Test
+    public void findsNothingForAnEmptyQuery() {
+        assertFound("");
+        assertFound(" - ");
+    }
+
+    @Test
+    public void mapsRoomsToTheirEntries() {
+        this.index.search("kitchen", 1, this.out);
+        assertEquals(6, this.index.getEntry(this.out.get(0)));
+    }
+
+    @Test
+    public void findsEveryRoomOfAGraphByName() {
+        Graph graph = SyntheticVenue.generate(2000, 21).toGraph();
+        RoomIndex rooms = RoomIndex.of(graph);
+        int count = 0;
+        for (String name : graph.getRoomNames()) {
+            assertEquals(name, 1, rooms.search(name, 1, this.out));
+            assertEquals(name, rooms.getName(this.out.get(0)));
+            assertEquals(name, graph.indexOfEntry(name), rooms.getEntry(this.out.get(0)));
+            count++;
+        }
+        assertEquals(count, rooms.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesAliasesForUnknownRooms() {
+        RoomIndex.builder().addRoom("Lab", 1).addAlias("Kitchen", "kitchenette");
+    }
+
+    // the query finds exactly these rooms, in this order
+    private void assertFound(String query, String... rooms) {
+        this.index.search(query, 10, this.out);
+        String[] found = new String[this.out.size()];
+        for (int j = 0; j < found.length; j++) { found[j] = this.index.getName(this.out.get(j)); }
+        assertArrayEquals(query, rooms, found);
+    }
+}
@@ -0,0 +1,156 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// Cached routes must be the routes the router finds, kept for the most recently used pairs only.
+public class RouteCacheTest {
+    private static Graph graph;
+
+    @BeforeClass
+    public static void setUp() {
+        graph = SyntheticVenue.generate(1000, 16).toGraph();
+    }
+
+    @Test
+    public void routesLikeTheRouter() {
+        RouteCache cache = new RouteCache(new Router(graph), 64);
+        Router router = new Router(graph);
+        Random random = new Random(1);
+        for (int j = 0; j < 200; j++) {
+            int origin = random.nextInt(graph.size());
+            int destination = random.nextInt(graph.size());
+            Route expected = router.route(origin, destination);
+            ResolvedRoute route = cache.route(origin, destination);
+            assertArrayEquals(expected.toArray(), route.getRoute().toArray());
+            assertEquals(expected.getLength(), route.getRoute().getLength(), 0);
+        }
+    }
+
+    @Test
+    public void readsRoutesOffATree() {
+        Router router = new Router(graph);
+        RouteCache cache = new RouteCache(router, 64);
+        ShortestPathTree tree = router.shortestPathTree(0);
+        for (int i = 0; i < graph.size(); i += 13) {
+            ResolvedRoute route = cache.route(tree, i);
+            assertArrayEquals(tree.pathTo(i), route.getRoute().toArray());
+            assertEquals(tree.distanceTo(i), route.getRoute().getLength(), 0);
+            assertSame(route, cache.route(0, i)); // the same pair, however it was found
+        }
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        RouteCache cache = new RouteCache(new Router(graph), 4);
+        ResolvedRoute first = cache.route(1, 200);
+        assertSame(first, cache.route(1, 200));
+        assertNotSame(first, cache.route(200, 1));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedRoute() {
+        RouteCache cache = new RouteCache(new Router(graph), 3);
+        ResolvedRoute a = cache.route(1, 10);
+        ResolvedRoute b = cache.route(1, 20);
+        cache.route(1, 30);
+        assertSame(a, cache.route(1, 10)); // now 1 to 20 is the coldest
+        cache.route(1, 40);
+        assertEquals(3, cache.size());
+        assertSame(a, cache.route(1, 10));
+        assertNotSame(b, cache.route(1, 20));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void forgetsEverythingOnInvalidate() {
+        RouteCache cache = new RouteCache(new Router(graph), 8);
+        ResolvedRoute route = cache.route(5, 500);
+        cache.route(6, 600);
+        cache.invalidate();
+        assertEquals(0, cache.size());
+        assertNotSame(route, cache.route(5, 500));
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void forgetsRoutesWhenTheCostsChange() {
+        EdgeCosts costs = new EdgeCosts(graph);
+        RouteCache cache = new RouteCache(new Router(graph, costs), 8);
+        ResolvedRoute route = cache.route(5, 500);
+        assertEquals(1, cache.size());
+        costs.block(route.pointAt(1), route.pointAt(2));
+        ResolvedRoute around = cache.route(5, 500);
+        assertNotSame(route, around);
+        assertEquals(1, cache.size());
+        Route expected = new Router(graph, costs).route(5, 500);
+        assertArrayEquals(expected.toArray(), around.getRoute().toArray());
+        assertSame(around, cache.route(5, 500)); // and nothing else changed since
+    }
+
+    @Test
+    public void routesWithTheHierarchyUntilTheCostsChange() {
+        EdgeCosts costs = new EdgeCosts(graph);
+        Router router = new Router(graph, costs);
+        RouteCache cache = new RouteCache(router, new HierarchyRouter(ContractionHierarchy.build(graph)), 64);
+        Random random = new Random(2);
+        for (int j = 0; j < 100; j++) {
+            int origin = random.nextInt(graph.size());
+            int destination = random.nextInt(graph.size());
+            assertEquals(router.route(origin, destination).getLength(), cache.route(origin, destination).getRoute().getLength(), 1e-3);
+        }
+        ResolvedRoute route = cache.route(5, 500);
+        costs.block(route.pointAt(1), route.pointAt(2)); // the hierarchy doesn't know about this
+        assertArrayEquals(router.route(5, 500).toArray(), cache.route(5, 500).getRoute().toArray());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesAHierarchyOverAnotherGraph() {
+        Graph other = SyntheticVenue.generate(1000, 17).toGraph();
+        new RouteCache(new Router(graph), new HierarchyRouter(ContractionHierarchy.build(other)), 8);
+    }
+
+    @Test
+    public void resolvesNoRouteToNowhere() {
+        RouteCache cache = new RouteCache(new Router(graph), 8);
+        assertFalse(cache.route(Graph.NO_POINT, 3).isFound());
+        assertFalse(cache.route(3, Graph.NO_POINT).isFound());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void pointsEachArrowAtTheNextPoint() {
+        // north, east, south and then back west, where +z is north and +x is east
+        Graph.Builder builder = Graph.builder()
+                .addPoint(new Waypoint(1, 0, 0))
+                .addPoint(new Waypoint(2, 0, 1))
+                .addPoint(new Waypoint(3, 1, 1))
+                .addPoint(new Waypoint(4, 1, 0))
+                .addPoint(new Waypoint(5, 0, 0.5f));
+        int[] ids = {1, 2, 3, 4, 5};
+        for (int j = 0; j + 1 < ids.length; j++) { builder.addEdge(ids[j], ids[j + 1]); }
+        Graph square = builder.build();
+        ResolvedRoute route = new RouteCache(new Router(square), 2).route(square.indexOf(1), square.indexOf(5));
+        assertEquals(5, route.size());
+        assertEquals(0, route.bearingAt(0), 1e-3);
+        assertEquals(90, route.bearingAt(1), 1e-3);
+        assertEquals(180, route.bearingAt(2), 1e-3);
+        assertEquals(360 - 63.435, route.bearingAt(3), 1e-3); // west and a little north
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesAnEmptyCache() {
+        new RouteCache(new Router(graph), 0);
+    }
+}
@@ -0,0 +1,129 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+// A* routes must be as short as the Dijkstra tree's, and real paths through the graph.
+public class RouterTest {
+
+    @Test
+    public void routesLikeTheTreeOnRandomVenues() {
+        for (long seed = 1; seed <= 5; seed++) {
+            Graph graph = randomVenue(30, 20, seed);
+            Router router = new Router(graph);
+            Random random = new Random(seed);
+            for (int k = 0; k < 10; k++) {
+                int origin = random.nextInt(graph.size());
+                ShortestPathTree tree = router.shortestPathTree(origin);
+                for (int j = 0; j < 50; j++) {
+                    int destination = random.nextInt(graph.size());
+                    assertSameRoute(graph, tree, destination, router.route(origin, destination));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findsNoRouteToACutOffPoint() {
+        Graph.Builder builder = Graph.builder()
+                .addPoint(new Waypoint(1, 0, 0))
+                .addPoint(new Waypoint(2, 1, 0))
+                .addPoint(new Waypoint(3, 5, 5));
+        builder.addEdge(1, 2);
+        builder.addEdge(2, 1);
+        builder.addEdge(3, 1); // one way, out of 3
+        Graph graph = builder.build();
+        Router router = new Router(graph);
+        Route route = router.route(graph.indexOf(1), graph.indexOf(3));
+        assertFalse(route.isFound());
+        assertEquals(0, route.size());
+        assertEquals(Double.POSITIVE_INFINITY, route.getLength(), 0);
+        assertFalse(router.shortestPathTree(graph.indexOf(1)).isReachable(graph.indexOf(3)));
+        assertTrue(router.route(graph.indexOf(3), graph.indexOf(2)).isFound());
+        assertFalse(router.route(Graph.NO_POINT, graph.indexOf(2)).isFound());
+        assertFalse(router.route(graph.indexOf(1), Graph.NO_POINT).isFound());
+    }
+
+    @Test
+    public void routesAPointToItself() {
+        Graph graph = randomVenue(5, 5, 9);
+        Route route = new Router(graph).route(7, 7);
+        assertArrayEquals(new int[] {7}, route.toArray());
+        assertEquals(0, route.getLength(), 0);
+    }
+
+    @Test
+    public void reusesItsStateBetweenSearches() {
+        // the same query gives the same route after other searches have run in between
+        Graph graph = randomVenue(20, 20, 4);
+        Router router = new Router(graph);
+        Route first = router.route(0, graph.size() - 1);
+        router.shortestPathTree(graph.size() / 2);
+        router.route(graph.size() - 1, 3);
+        Route again = router.route(0, graph.size() - 1);
+        assertArrayEquals(first.toArray(), again.toArray());
+        assertEquals(first.getLength(), again.getLength(), 0);
+    }
+
+    // the route is as long as the tree's path to its destination, and each step is an edge
+    private static void assertSameRoute(Graph graph, ShortestPathTree tree, int destination, Route route) {
+        String pair = tree.getRoot() + " to " + destination;
+        assertEquals(pair, tree.isReachable(destination), route.isFound());
+        if (!route.isFound()) {
+            return;
+        }
+        assertEquals(pair, tree.getRoot(), route.getOrigin());
+        assertEquals(pair, destination, route.getDestination());
+        assertEquals(pair, tree.distanceTo(destination), route.getLength(), 1e-3);
+        double length = 0;
+        for (int k = 0; k + 1 < route.size(); k++) {
+            int edge = edgeBetween(graph, route.pointAt(k), route.pointAt(k + 1));
+            assertTrue(pair + " has no edge at " + k, edge >= 0);
+            length += graph.edgeWeight(edge);
+        }
+        assertEquals(pair, route.getLength(), length, 1e-3);
+    }
+
+    private static int edgeBetween(Graph graph, int from, int to) {
+        for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++) {
+            if (graph.edgeTarget(e) == to) { return e; }
+        }
+        return -1;
+    }
+
+    // A jittered grid of points joined to their neighbours, with a fifth of the corridors missing
+    // (some only one way) so routes have to go round and some points can't be reached.
+    static Graph randomVenue(int columns, int rows, long seed) {
+        Random random = new Random(seed);
+        Graph.Builder builder = Graph.builder();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                builder.addPoint(new Waypoint(r * columns + c, c + 0.4f * random.nextFloat(), r + 0.4f * random.nextFloat()));
+            }
+        }
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                int id = r * columns + c;
+                if (c + 1 < columns) { addCorridor(builder, random, id, id + 1); }
+                if (r + 1 < rows) { addCorridor(builder, random, id, id + columns); }
+                if (c + 1 < columns && r + 1 < rows && random.nextInt(4) == 0) { addCorridor(builder, random, id, id + columns + 1); }
+            }
+        }
+        return builder.build();
+    }
+
+    private static void addCorridor(Graph.Builder builder, Random random, int a, int b) {
+        int roll = random.nextInt(10);
+        if (roll < 2) {
+            return;
+        }
+        if (roll != 2) { builder.addEdge(a, b); }
+        if (roll != 3) { builder.addEdge(b, a); }
+    }
+}
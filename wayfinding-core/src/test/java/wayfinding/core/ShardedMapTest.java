@@ -0,0 +1,143 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// Shards must load once when first needed and leave least recently used first, never the
+// shard the user is in.
+public class ShardedMapTest {
+    private final List<String> loads = new ArrayList<>();
+    private long shardBytes; // every shard here is the same size
+
+    @Before
+    public void setUp() throws IOException {
+        ShardedMap map = this.newMap(Long.MAX_VALUE);
+        map.get("a");
+        this.shardBytes = map.getLoadedBytes();
+        this.loads.clear();
+    }
+
+    @Test
+    public void loadsEachShardOnce() throws IOException {
+        ShardedMap map = this.newMap(Long.MAX_VALUE);
+        assertFalse(map.isLoaded("a"));
+        Graph a = map.get("a");
+        assertSame(a, map.get("a"));
+        map.get("b");
+        assertEquals(2, map.getLoadedCount());
+        assertEquals(2 * this.shardBytes, map.getLoadedBytes());
+        assertEquals("[a, b]", this.loads.toString());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedShard() throws IOException {
+        ShardedMap map = this.newMap(this.shardBytes * 5 / 2); // room for two shards
+        map.get("a");
+        map.get("b");
+        map.get("c");
+        assertLoaded(map, "b", "c");
+        map.get("b"); // now c is the coldest
+        map.get("d");
+        assertLoaded(map, "b", "d");
+        map.get("a");
+        assertLoaded(map, "d", "a");
+        assertEquals("[a, b, c, d, a]", this.loads.toString());
+        assertEquals(2 * this.shardBytes, map.getLoadedBytes());
+    }
+
+    @Test
+    public void keepsTheCurrentShard() throws IOException {
+        ShardedMap map = this.newMap(this.shardBytes * 5 / 2);
+        map.touch("a", 100, 100, 1); // nowhere near a portal
+        map.get("b");
+        map.get("c"); // a is the coldest, but the user is in it
+        assertLoaded(map, "a", "c");
+        map.get("d");
+        assertLoaded(map, "a", "d");
+        map.touch("d", 100, 100, 1);
+        map.get("b");
+        assertLoaded(map, "d", "b");
+    }
+
+    @Test
+    public void loadsAShardBiggerThanTheBudget() throws IOException {
+        ShardedMap map = this.newMap(this.shardBytes / 2);
+        map.get("a");
+        assertLoaded(map, "a");
+        map.get("b");
+        assertLoaded(map, "b");
+        assertTrue(map.getLoadedBytes() > map.getBudgetBytes());
+    }
+
+    @Test
+    public void preloadsShardsBehindNearbyPortals() {
+        ShardedMap map = this.newMap(Long.MAX_VALUE);
+        map.addPortal(new Portal("a", 0, "b", 0, 10)); // at (0,0) in a
+        map.addPortal(new Portal("c", 24, "a", 24, 10)); // at (4,4) in a
+        map.touch("a", 1, 0, 2);
+        assertLoaded(map, "a", "b");
+        map.touch("a", 4, 3, 2);
+        assertLoaded(map, "a", "b", "c");
+        map.touch("b", 0, 0, 2); // walked back through to b
+        assertEquals("[a, b, c]", this.loads.toString());
+    }
+
+    @Test
+    public void survivesAShardThatWontLoad() {
+        ShardedMap map = this.newMap(Long.MAX_VALUE);
+        map.addPortal(new Portal("a", 0, "missing", 0, 10));
+        map.touch("a", 0, 0, 2);
+        map.touch("missing", 0, 0, 2);
+        assertLoaded(map, "a");
+        try {
+            map.get("missing");
+            throw new AssertionError("a missing shard loaded");
+        } catch (IOException expected) {
+            // as it should be
+        }
+    }
+
+    private ShardedMap newMap(long budgetBytes) {
+        return new ShardedMap(shardId -> {
+            if (shardId.equals("missing")) {
+                throw new IOException("No shard " + shardId);
+            }
+            this.loads.add(shardId);
+            return grid(5, 5);
+        }, budgetBytes);
+    }
+
+    // exactly these shards are loaded
+    private static void assertLoaded(ShardedMap map, String... shardIds) {
+        for (String shardId : shardIds) { assertTrue(shardId + " isn't loaded", map.isLoaded(shardId)); }
+        assertEquals(shardIds.length, map.getLoadedCount());
+    }
+
+    // a square grid a metre apart with ids 0..columns*rows-1, each point joined to its neighbours
+    private static Graph grid(int columns, int rows) {
+        Graph.Builder builder = Graph.builder();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) { builder.addPoint(new Waypoint(r * columns + c, c, r)); }
+        }
+        for (int id = 0; id < columns * rows; id++) {
+            if ((id + 1) % columns != 0) {
+                builder.addEdge(id, id + 1);
+                builder.addEdge(id + 1, id);
+            }
+            if (id + columns < columns * rows) {
+                builder.addEdge(id, id + columns);
+                builder.addEdge(id + columns, id);
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,292 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// Routes across shards must be as short as a search over all the shards as one graph would find,
+// and split into legs that are real paths joined by portals.
+public class ShardedRouterTest {
+    private static final String[] SHARDS = {"f0", "f1", "f2", "wings", "annex"};
+
+    private static final Map<String, Graph> graphs = new HashMap<>();
+    private static Portal[] portals;
+
+    // the shards as one graph, for the reference search: shard s's point i is offsets[s] + i
+    private static int[] offsets;
+    private static int[][] adjacency;
+    private static double[][] costs;
+
+    @BeforeClass
+    public static void setUp() {
+        graphs.put("f0", floor(12, 10, 0, 1));
+        graphs.put("f1", floor(12, 10, 0, 2));
+        graphs.put("f2", floor(12, 10, 0, 3));
+        // two halves with no corridor between them, so getting from one to the other means
+        // leaving the shard and coming back in
+        graphs.put("wings", floor(6, 6, 100, 4));
+        graphs.put("annex", floor(5, 5, 0, 5)); // no portals at all
+
+        Random random = new Random(6);
+        portals = new Portal[] {
+            portal(random, "f0", "f1", 12), // lifts
+            portal(random, "f0", "f1", 3), // stairs, cheaper but somewhere else
+            portal(random, "f1", "f0", 20),
+            portal(random, "f1", "f2", 12),
+            portal(random, "f2", "f1", 4),
+            new Portal("f0", 5, "wings", 0, 1), // into the left half
+            new Portal("wings", 35, "f0", 110, 1), // out of the right half
+            new Portal("f2", 0, "f2", 119, 2), // a chute across the top floor
+        };
+
+        offsets = new int[SHARDS.length + 1];
+        for (int s = 0; s < SHARDS.length; s++) { offsets[s + 1] = offsets[s] + graphs.get(SHARDS[s]).size(); }
+        int n = offsets[SHARDS.length];
+        int[] degrees = new int[n];
+        for (int s = 0; s < SHARDS.length; s++) {
+            Graph graph = graphs.get(SHARDS[s]);
+            for (int i = 0; i < graph.size(); i++) { degrees[offsets[s] + i] = graph.endEdge(i) - graph.firstEdge(i); }
+        }
+        for (Portal portal : portals) {
+            degrees[node(portal.getFromShard(), portal.getFromId())]++;
+            degrees[node(portal.getToShard(), portal.getToId())]++;
+        }
+        adjacency = new int[n][];
+        costs = new double[n][];
+        for (int v = 0; v < n; v++) {
+            adjacency[v] = new int[degrees[v]];
+            costs[v] = new double[degrees[v]];
+            degrees[v] = 0;
+        }
+        for (int s = 0; s < SHARDS.length; s++) {
+            Graph graph = graphs.get(SHARDS[s]);
+            for (int i = 0; i < graph.size(); i++) {
+                for (int e = graph.firstEdge(i); e < graph.endEdge(i); e++) {
+                    addEdge(degrees, offsets[s] + i, offsets[s] + graph.edgeTarget(e), graph.edgeWeight(e));
+                }
+            }
+        }
+        for (Portal portal : portals) {
+            int from = node(portal.getFromShard(), portal.getFromId());
+            int to = node(portal.getToShard(), portal.getToId());
+            addEdge(degrees, from, to, portal.getCost());
+            addEdge(degrees, to, from, portal.getCost());
+        }
+    }
+
+    @Test
+    public void routesLikeASearchOverTheWholeMap() {
+        ShardedRouter router = new ShardedRouter(newMap(Long.MAX_VALUE));
+        Random random = new Random(1);
+        for (int j = 0; j < 300; j++) {
+            String fromShard = SHARDS[random.nextInt(4)];
+            String toShard = SHARDS[random.nextInt(4)];
+            assertSameRoute(router, fromShard, randomId(random, fromShard), toShard, randomId(random, toShard));
+        }
+    }
+
+    @Test
+    public void routesWithinAShard() {
+        ShardedMap map = newMap(Long.MAX_VALUE);
+        ShardedRouter router = new ShardedRouter(map);
+        Random random = new Random(2);
+        for (int j = 0; j < 100; j++) {
+            assertSameRoute(router, "f1", randomId(random, "f1"), "f1", randomId(random, "f1"));
+        }
+        ShardedRoute route = router.route("f0", 30, "f0", 30);
+        assertEquals(1, route.legCount());
+        assertEquals(1, route.getLeg(0).size());
+        assertEquals(0, route.getLength(), 0);
+    }
+
+    @Test
+    public void leavesAShardToGetAcrossIt() {
+        ShardedRouter router = new ShardedRouter(newMap(Long.MAX_VALUE));
+        ShardedRoute route = assertSameRoute(router, "wings", 6, "wings", 29);
+        assertEquals(3, route.legCount());
+        assertEquals("wings", route.getShard(0));
+        assertEquals("f0", route.getShard(1));
+        assertEquals("wings", route.getShard(2));
+    }
+
+    @Test
+    public void findsNoRouteToOrFromAnUnreachableShard() {
+        ShardedMap map = newMap(Long.MAX_VALUE);
+        ShardedRouter router = new ShardedRouter(map);
+        ShardedRoute route = router.route("f0", 0, "annex", 0);
+        assertFalse(route.isFound());
+        assertEquals(0, route.legCount());
+        assertEquals(Double.POSITIVE_INFINITY, route.getLength(), 0);
+        assertFalse(map.isLoaded("annex")); // nothing leads there, so it was never needed
+        assertFalse(router.route("annex", 0, "f2", 7).isFound());
+        assertFalse(router.route("f0", 0, "basement", 0).isFound());
+        assertFalse(router.route("f0", 0, "f1", 12345).isFound());
+        assertSameRoute(router, "annex", 0, "annex", 24); // but within the annex is fine
+    }
+
+    @Test
+    public void routesWhileShardsAreEvicted() throws IOException {
+        // room for about one shard, so each new shard the search reaches evicts the last one
+        ShardedMap map = newMap(1);
+        ShardedRouter router = new ShardedRouter(map);
+        Random random = new Random(3);
+        for (int j = 0; j < 50; j++) {
+            assertSameRoute(router, "f0", randomId(random, "f0"), "f2", randomId(random, "f2"));
+        }
+        assertTrue(map.getLoadedCount() <= 2);
+    }
+
+    // the route is as long as the reference search's, and each leg is a path in its shard that
+    // ends where a portal to the next leg starts
+    private static ShardedRoute assertSameRoute(ShardedRouter router, String fromShard, int fromId, String toShard, int toId) {
+        ShardedRoute route = router.route(fromShard, fromId, toShard, toId);
+        String pair = fromShard + ":" + fromId + " to " + toShard + ":" + toId;
+        double expected = distance(node(fromShard, fromId), node(toShard, toId));
+        assertEquals(pair, expected != Double.POSITIVE_INFINITY, route.isFound());
+        if (!route.isFound()) {
+            return route;
+        }
+        assertEquals(pair, expected, route.getLength(), 1e-3);
+        assertEquals(pair, fromShard, route.getShard(0));
+        assertEquals(pair, toShard, route.getShard(route.legCount() - 1));
+
+        double length = 0;
+        for (int k = 0; k < route.legCount(); k++) {
+            Graph graph = route.getGraph(k);
+            Route leg = route.getLeg(k);
+            assertTrue(pair + " has an empty leg " + k, leg.isFound());
+            double legLength = 0;
+            for (int j = 0; j + 1 < leg.size(); j++) {
+                int edge = edgeBetween(graph, leg.pointAt(j), leg.pointAt(j + 1));
+                assertTrue(pair + " leg " + k + " has no edge at " + j, edge >= 0);
+                legLength += graph.edgeWeight(edge);
+            }
+            assertEquals(pair + " leg " + k, leg.getLength(), legLength, 1e-3);
+            length += legLength;
+            if (k > 0) {
+                length += portalCost(route.getShard(k - 1), route.getGraph(k - 1).getId(route.getLeg(k - 1).getDestination()),
+                        route.getShard(k), graph.getId(leg.getOrigin()), pair + " leg " + k);
+            }
+        }
+        assertEquals(pair, fromId, route.getGraph(0).getId(route.getLeg(0).getOrigin()));
+        int last = route.legCount() - 1;
+        assertEquals(pair, toId, route.getGraph(last).getId(route.getLeg(last).getDestination()));
+        assertEquals(pair, route.getLength(), length, 1e-3);
+        return route;
+    }
+
+    // the cheapest portal straight from one point to the other
+    private static double portalCost(String fromShard, int fromId, String toShard, int toId, String message) {
+        double cost = Double.POSITIVE_INFINITY;
+        for (Portal portal : portals) {
+            if ((portal.getFromShard().equals(fromShard) && portal.getFromId() == fromId && portal.getToShard().equals(toShard) && portal.getToId() == toId)
+                    || (portal.getToShard().equals(fromShard) && portal.getToId() == fromId && portal.getFromShard().equals(toShard) && portal.getFromId() == toId)) {
+                cost = Math.min(cost, portal.getCost());
+            }
+        }
+        assertTrue(message + " isn't joined to the last by a portal", cost != Double.POSITIVE_INFINITY);
+        return cost;
+    }
+
+    // plain Dijkstra over the whole map as one graph
+    private static double distance(int from, int to) {
+        if (from < 0 || to < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double[] dist = new double[adjacency.length];
+        boolean[] done = new boolean[adjacency.length];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[from] = 0;
+        while (true) {
+            int current = -1;
+            for (int v = 0; v < dist.length; v++) {
+                if (!done[v] && dist[v] != Double.POSITIVE_INFINITY && (current < 0 || dist[v] < dist[current])) { current = v; }
+            }
+            if (current < 0 || current == to) {
+                return current < 0 ? Double.POSITIVE_INFINITY : dist[to];
+            }
+            done[current] = true;
+            for (int j = 0; j < adjacency[current].length; j++) {
+                int next = adjacency[current][j];
+                dist[next] = Math.min(dist[next], dist[current] + costs[current][j]);
+            }
+        }
+    }
+
+    private static int node(String shardId, int id) {
+        int s = Arrays.asList(SHARDS).indexOf(shardId);
+        int index = s < 0 ? Graph.NO_POINT : graphs.get(shardId).indexOf(id);
+        return index == Graph.NO_POINT ? -1 : offsets[s] + index;
+    }
+
+    private static void addEdge(int[] degrees, int from, int to, double cost) {
+        adjacency[from][degrees[from]] = to;
+        costs[from][degrees[from]++] = cost;
+    }
+
+    private static int edgeBetween(Graph graph, int from, int to) {
+        for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++) {
+            if (graph.edgeTarget(e) == to) { return e; }
+        }
+        return -1;
+    }
+
+    private static int randomId(Random random, String shardId) {
+        Graph graph = graphs.get(shardId);
+        return graph.getId(random.nextInt(graph.size()));
+    }
+
+    private static Portal portal(Random random, String fromShard, String toShard, float cost) {
+        return new Portal(fromShard, randomId(random, fromShard), toShard, randomId(random, toShard), cost);
+    }
+
+    private static ShardedMap newMap(long budgetBytes) {
+        ShardedMap map = new ShardedMap(shardId -> {
+            Graph graph = graphs.get(shardId);
+            if (graph == null) {
+                throw new IOException("No shard " + shardId);
+            }
+            return graph;
+        }, budgetBytes);
+        for (Portal portal : portals) { map.addPortal(portal); }
+        return map;
+    }
+
+    // A jittered grid of points with ids 0..columns*rows-1, joined to their neighbours with a tenth
+    // of the corridors missing. If gap isn't 0, the right half is moved gap metres over and has no
+    // corridors to the left half.
+    private static Graph floor(int columns, int rows, float gap, long seed) {
+        Random random = new Random(seed);
+        Graph.Builder builder = Graph.builder();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                float x = c + (gap != 0 && c >= columns / 2 ? gap : 0);
+                builder.addPoint(new Waypoint(r * columns + c, x + 0.4f * random.nextFloat(), r + 0.4f * random.nextFloat()));
+            }
+        }
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                int id = r * columns + c;
+                boolean split = gap != 0 && c + 1 == columns / 2;
+                if (c + 1 < columns && !split && random.nextInt(10) != 0) {
+                    builder.addEdge(id, id + 1);
+                    builder.addEdge(id + 1, id);
+                }
+                if (r + 1 < rows && random.nextInt(10) != 0) {
+                    builder.addEdge(id, id + columns);
+                    builder.addEdge(id + columns, id);
+                }
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,126 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+// Grid queries must find exactly what a scan of every point finds.
+public class SpatialIndexTest {
+    private final IntList out = new IntList();
+
+    @Test
+    public void matchesAScanOfUniformPoints() {
+        this.assertMatchesScan(randomPoints(2000, 1, false), 2);
+    }
+
+    @Test
+    public void matchesAScanOfClusteredPoints() {
+        // most points in one corner, so many cells are empty and a few are crowded
+        this.assertMatchesScan(randomPoints(2000, 3, true), 4);
+    }
+
+    @Test
+    public void matchesAScanOfALine() {
+        float[][] points = randomPoints(300, 5, false);
+        Arrays.fill(points[1], 7); // every point on z = 7, a map with no area
+        this.assertMatchesScan(points, 6);
+    }
+
+    @Test
+    public void findsNothingInAnEmptyIndex() {
+        SpatialIndex index = new SpatialIndex(new float[0], new float[0]);
+        assertEquals(Graph.NO_POINT, index.nearest(1, 1));
+        assertEquals(0, index.withinRadius(0, 0, 100, this.out));
+        assertEquals(0, index.withinRect(-100, -100, 100, 100, this.out));
+    }
+
+    @Test
+    public void includesPointsOnTheEdges() {
+        SpatialIndex index = new SpatialIndex(new float[] {0, 3, 10}, new float[] {0, 4, 0});
+        assertEquals(2, index.withinRadius(0, 0, 5, this.out)); // (3,4) is exactly 5 away
+        this.out.clear();
+        assertEquals(2, index.withinRect(0, 0, 3, 4, this.out));
+    }
+
+    private void assertMatchesScan(float[][] points, long seed) {
+        float[] xs = points[0];
+        float[] zs = points[1];
+        SpatialIndex index = new SpatialIndex(xs, zs);
+        assertEquals(xs.length, index.size());
+        Random random = new Random(seed);
+        for (int j = 0; j < 500; j++) {
+            // queries from a little outside the venue too
+            float x = -20 + 140 * random.nextFloat();
+            float z = -20 + 140 * random.nextFloat();
+            String at = "(" + x + "," + z + ")";
+
+            int nearest = index.nearest(x, z);
+            assertEquals(at, distanceSquared(xs, zs, nearestByScan(xs, zs, x, z), x, z), distanceSquared(xs, zs, nearest, x, z), 0);
+
+            float radius = 15 * random.nextFloat();
+            this.out.clear();
+            int added = index.withinRadius(x, z, radius, this.out);
+            assertEquals(at, this.out.size(), added);
+            int[] expected = new int[xs.length];
+            int count = 0;
+            for (int i = 0; i < xs.length; i++) {
+                if (distanceSquared(xs, zs, i, x, z) <= radius * radius) { expected[count++] = i; }
+            }
+            assertArrayEquals(at + " within " + radius, Arrays.copyOf(expected, count), sorted(this.out));
+
+            float maxX = x + 30 * random.nextFloat();
+            float maxZ = z + 30 * random.nextFloat();
+            this.out.clear();
+            added = index.withinRect(x, z, maxX, maxZ, this.out);
+            assertEquals(at, this.out.size(), added);
+            count = 0;
+            for (int i = 0; i < xs.length; i++) {
+                if (xs[i] >= x && xs[i] <= maxX && zs[i] >= z && zs[i] <= maxZ) { expected[count++] = i; }
+            }
+            assertArrayEquals(at + " to (" + maxX + "," + maxZ + ")", Arrays.copyOf(expected, count), sorted(this.out));
+        }
+    }
+
+    private static int nearestByScan(float[] xs, float[] zs, float x, float z) {
+        int nearest = Graph.NO_POINT;
+        float best = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < xs.length; i++) {
+            float d = distanceSquared(xs, zs, i, x, z);
+            if (d < best) {
+                best = d;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    private static float distanceSquared(float[] xs, float[] zs, int i, float x, float z) {
+        float dx = xs[i] - x;
+        float dz = zs[i] - z;
+        return dx * dx + dz * dz;
+    }
+
+    private static int[] sorted(IntList list) {
+        int[] values = list.toArray();
+        Arrays.sort(values);
+        return values;
+    }
+
+    // xs and zs of points spread over a 100m square, or bunched towards its corner
+    private static float[][] randomPoints(int count, long seed, boolean clustered) {
+        Random random = new Random(seed);
+        float[] xs = new float[count];
+        float[] zs = new float[count];
+        for (int i = 0; i < count; i++) {
+            float u = random.nextFloat();
+            float v = random.nextFloat();
+            xs[i] = 100 * (clustered ? u * u * u : u);
+            zs[i] = 100 * (clustered ? v * v * v : v);
+        }
+        return new float[][] {xs, zs};
+    }
+}
@@ -0,0 +1,109 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+// Frames must only update once the camera has moved or turned far enough, and no faster than the cap.
+public class UpdateGateTest {
+    private static final long MS = 1000000;
+
+    @Test
+    public void updatesTheFirstFrame() {
+        UpdateGate gate = new UpdateGate(0.1f, 5, 30);
+        assertTrue(gate.shouldUpdate(0, 0, 0, 0, 0, 0, -1));
+        assertFalse(gate.shouldUpdate(100 * MS, 0, 0, 0, 0, 0, -1));
+        assertEquals(1, gate.getUpdates());
+        assertEquals(1, gate.getSkips());
+    }
+
+    @Test
+    public void updatesOnceTheCameraHasMovedFarEnough() {
+        UpdateGate gate = new UpdateGate(0.1f, 5, 0);
+        gate.shouldUpdate(0, 0, 0, 0, 0, 0, -1);
+        assertFalse(gate.shouldUpdate(1 * MS, 0.06f, 0, 0, 0, 0, -1));
+        assertFalse(gate.shouldUpdate(2 * MS, 0.06f, 0.06f, 0, 0, 0, -1)); // still under 0.1 from the start
+        assertTrue(gate.shouldUpdate(3 * MS, 0.06f, 0.06f, 0.06f, 0, 0, -1));
+        // measured from the last update, not the last frame
+        assertFalse(gate.shouldUpdate(4 * MS, 0.06f, 0.06f, 0.15f, 0, 0, -1));
+        assertTrue(gate.shouldUpdate(5 * MS, 0.06f, 0.06f, 0.17f, 0, 0, -1));
+    }
+
+    @Test
+    public void updatesOnceTheCameraHasTurnedFarEnough() {
+        UpdateGate gate = new UpdateGate(0.1f, 5, 0);
+        gate.shouldUpdate(0, 0, 0, 0, 0, 0, -1);
+        assertFalse(gate.shouldUpdate(1 * MS, 0, 0, 0, sin(4), 0, -cos(4)));
+        assertTrue(gate.shouldUpdate(2 * MS, 0, 0, 0, sin(6), 0, -cos(6)));
+        assertFalse(gate.shouldUpdate(3 * MS, 0, 0, 0, sin(9), 0, -cos(9)));
+        // looking up counts too, and the forward vector needn't be a unit one
+        assertTrue(gate.shouldUpdate(4 * MS, 0, 0, 0, 3 * sin(6), 3 * sin(6), -3 * cos(6)));
+    }
+
+    @Test
+    public void onlyCountsMovementWithoutAForwardVector() {
+        UpdateGate gate = new UpdateGate(0.1f, 5, 0);
+        gate.shouldUpdate(0, 0, 0, 0, 0, 0, -1);
+        assertFalse(gate.shouldUpdate(1 * MS, 0, 0, 0, 0, 0, 0));
+        assertTrue(gate.shouldUpdate(2 * MS, 0.2f, 0, 0, 0, 0, 0));
+    }
+
+    @Test
+    public void keepsToTheRateCap() {
+        UpdateGate gate = new UpdateGate(0, 0, 10); // every frame moves enough, so only the cap applies
+        assertTrue(gate.shouldUpdate(0, 0, 0, 0, 0, 0, -1));
+        assertFalse(gate.shouldUpdate(50 * MS, 1, 0, 0, 0, 0, -1));
+        assertFalse(gate.shouldUpdate(99 * MS, 2, 0, 0, 0, 0, -1));
+        assertTrue(gate.shouldUpdate(100 * MS, 3, 0, 0, 0, 0, -1));
+        assertFalse(gate.shouldUpdate(150 * MS, 4, 0, 0, 0, 0, -1));
+        assertTrue(gate.shouldUpdate(500 * MS, 5, 0, 0, 0, 0, -1));
+        assertEquals(3, gate.getUpdates());
+        assertEquals(3, gate.getSkips());
+    }
+
+    @Test
+    public void keepsToTheCapRateWithJitteryFrames() {
+        // 60 fps frames that come up to a millisecond early or late, under a 30 Hz cap
+        UpdateGate gate = new UpdateGate(0, 0, 30);
+        Random random = new Random(1);
+        for (int frame = 0; frame < 600; frame++) {
+            long nanos = frame * 1000000000L / 60 + (random.nextInt(2001) - 1000) * 1000L;
+            gate.shouldUpdate(nanos, frame, 0, 0, 0, 0, -1);
+        }
+        assertEquals(300, gate.getUpdates());
+    }
+
+    @Test
+    public void startsAfreshAfterAPause() {
+        UpdateGate gate = new UpdateGate(0, 0, 10);
+        gate.shouldUpdate(0, 0, 0, 0, 0, 0, -1);
+        assertTrue(gate.shouldUpdate(1000 * MS, 1, 0, 0, 0, 0, -1));
+        // the next is due a whole interval later, not straight away to catch up
+        assertFalse(gate.shouldUpdate(1050 * MS, 2, 0, 0, 0, 0, -1));
+        assertTrue(gate.shouldUpdate(1100 * MS, 3, 0, 0, 0, 0, -1));
+        // a frame a little late doesn't push the one after back
+        assertTrue(gate.shouldUpdate(1230 * MS, 4, 0, 0, 0, 0, -1));
+        assertTrue(gate.shouldUpdate(1300 * MS, 5, 0, 0, 0, 0, -1));
+    }
+
+    @Test
+    public void updatesAfterInvalidateWhateverTheCamera() {
+        UpdateGate gate = new UpdateGate(0.1f, 5, 10);
+        gate.shouldUpdate(0, 0, 0, 0, 0, 0, -1);
+        gate.invalidate();
+        assertTrue(gate.shouldUpdate(1 * MS, 0, 0, 0, 0, 0, -1)); // no movement, and well inside the cap
+        assertFalse(gate.shouldUpdate(200 * MS, 0, 0, 0, 0, 0, -1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesNegativeThresholds() {
+        new UpdateGate(-1, 5, 30);
+    }
+
+    private static float sin(float degrees) { return (float) Math.sin(Math.toRadians(degrees)); }
+    private static float cos(float degrees) { return (float) Math.cos(Math.toRadians(degrees)); }
+}
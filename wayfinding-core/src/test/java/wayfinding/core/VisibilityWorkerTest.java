@@ -0,0 +1,163 @@
+package wayfinding.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// The worker must hand back the frame the frame loop would have worked out itself, and never
+// write to a frame the frame loop can still read.
+public class VisibilityWorkerTest {
+    private static final float[][] WALK = {{1, 1}, {3, 2}, {6, 5}, {12, 11}, {17, 18}, {2, 1}};
+
+    private Graph graph;
+    private final List<Runnable> queue = new ArrayList<>(); // jobs submitted but not run yet
+
+    @Before
+    public void setUp() {
+        Graph.Builder builder = Graph.builder();
+        for (int id = 0; id < 100; id++) { builder.addPoint(new Waypoint(id, 2 * (id % 10), 2 * (id / 10))); }
+        this.graph = builder.build();
+    }
+
+    @Test
+    public void worksOutWhatTheFrameLoopWould() {
+        VisibilityWorker worker = this.newWorker(Runnable::run);
+        Expected expected = new Expected();
+        for (float[] at : WALK) {
+            assertTrue(worker.submit(at[0], at[1], at[0], at[1]));
+            assertEquals(expected.frame(at[0], at[1]), describe(worker.poll()));
+        }
+    }
+
+    @Test
+    public void handsOverFinishedFramesOnly() {
+        VisibilityWorker worker = this.newWorker(this.queue::add);
+        assertTrue(worker.submit(1, 1, 1, 1));
+        assertTrue(worker.isBusy());
+        assertFalse(worker.submit(3, 2, 3, 2)); // one job at a time
+        assertEquals(1, this.queue.size());
+        assertNull(worker.poll());
+
+        this.queue.remove(0).run();
+        VisibilityWorker.Frame frame = worker.poll();
+        assertNotNull(frame);
+        assertFalse(worker.isBusy());
+        assertNull(worker.poll()); // each frame is handed over once
+    }
+
+    @Test
+    public void staysBusyUntilItsFrameIsPolled() {
+        VisibilityWorker worker = this.newWorker(this.queue::add);
+        Expected expected = new Expected();
+        worker.submit(6, 5, 6, 5);
+        this.queue.remove(0).run();
+        // the finished frame has the last update for points leaving the set, so it can't be
+        // skipped over by starting another job
+        assertTrue(worker.isBusy());
+        assertFalse(worker.submit(12, 11, 12, 11));
+        assertTrue(this.queue.isEmpty());
+        assertEquals(expected.frame(6, 5), describe(worker.poll()));
+        assertFalse(worker.isBusy());
+        assertTrue(worker.submit(12, 11, 12, 11));
+    }
+
+    @Test
+    public void fillsTheOtherFrameWhileOneIsRead() {
+        VisibilityWorker worker = this.newWorker(this.queue::add);
+        Expected expected = new Expected();
+
+        worker.submit(1, 1, 1, 1);
+        this.queue.remove(0).run();
+        VisibilityWorker.Frame first = worker.poll();
+        String firstFrame = expected.frame(1, 1);
+        assertEquals(firstFrame, describe(first));
+
+        // the frame loop is still applying the first frame while the next job runs
+        worker.submit(6, 5, 6, 5);
+        this.queue.remove(0).run();
+        assertEquals(firstFrame, describe(first));
+        VisibilityWorker.Frame second = worker.poll();
+        assertNotSame(first, second);
+        assertEquals(expected.frame(6, 5), describe(second));
+
+        // and the job after that reuses the first frame rather than allocating another
+        worker.submit(12, 11, 12, 11);
+        this.queue.remove(0).run();
+        VisibilityWorker.Frame third = worker.poll();
+        assertSame(first, third);
+        assertEquals(expected.frame(12, 11), describe(third));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesMissingNodes() {
+        new VisibilityWorker(this.graph, new BoundedRegion[3], new BoundedRegion[this.graph.size()], 1, Runnable::run);
+    }
+
+    private VisibilityWorker newWorker(Executor executor) {
+        return new VisibilityWorker(this.graph, nodes(this.graph), children(this.graph), 1, executor);
+    }
+
+    // a node at every point, hidden at every seventh, each with a child in front of it at every third
+    private static BoundedRegion[] nodes(Graph graph) {
+        BoundedRegion[] nodes = new BoundedRegion[graph.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new BoundedRegion(3, 1, 2, 2);
+            nodes[i].setPlacement(graph.getX(i), graph.getZ(i));
+            nodes[i].setYaw(45 * i);
+            nodes[i].setVisible(i % 7 != 0);
+        }
+        return nodes;
+    }
+
+    private static BoundedRegion[] children(Graph graph) {
+        BoundedRegion[] children = new BoundedRegion[graph.size()];
+        for (int i = 0; i < children.length; i += 3) {
+            children[i] = new BoundedRegion(1.5f, 0.5f, 1, 1);
+            children[i].setPlacement(0, -0.5f);
+            children[i].setVisible(true);
+        }
+        return children;
+    }
+
+    private static String describe(VisibilityWorker.Frame frame) {
+        StringBuilder text = new StringBuilder();
+        for (int j = 0; j < frame.size(); j++) {
+            text.append(frame.pointAt(j)).append(':').append(frame.bucketAt(j)).append('/')
+                    .append(frame.childBucketAt(j)).append(frame.isActive(j) ? "" : " leaving").append('\n');
+        }
+        return text.toString();
+    }
+
+    // the frame loop's own update, run over its own copy of the nodes
+    private final class Expected {
+        private final BoundedRegion[] nodes = nodes(VisibilityWorkerTest.this.graph);
+        private final BoundedRegion[] children = children(VisibilityWorkerTest.this.graph);
+        private final ActiveSet activeSet = new ActiveSet(VisibilityWorkerTest.this.graph, this.nodes[0].getReach(), 1);
+
+        String frame(float x, float z) {
+            StringBuilder text = new StringBuilder();
+            IntList updated = this.activeSet.update(x, z);
+            assertTrue("nothing near " + x + "," + z, updated.size() > 0);
+            for (int j = 0; j < updated.size(); j++) {
+                int i = updated.get(j);
+                int bucket = this.nodes[i].update(x, z);
+                int child = this.children[i] == null ? Visibility.HIDDEN
+                        : this.children[i].update(this.nodes[i].getCameraX(), this.nodes[i].getCameraZ());
+                text.append(i).append(':').append(bucket).append('/').append(child)
+                        .append(this.activeSet.contains(i) ? "" : " leaving").append('\n');
+            }
+            return text.toString();
+        }
+    }
+}
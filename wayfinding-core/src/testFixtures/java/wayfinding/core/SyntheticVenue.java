@@ -0,0 +1,167 @@
+package wayfinding.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Generates corridor-and-room venues of any size for the tests and
+ * benchmarks. The venue is a square grid of
+ * corridors with a junction point every CORRIDOR_LENGTH metres, POINTS_PER_CORRIDOR nav points
+ * along each corridor between junctions, and a room off every one of those nav points (on
+ * alternating sides of the corridor), so it looks like the real map json just a lot bigger.
+ * The grid is made just big enough to have at least the number of points asked for.
+ * Positions are jittered a little with the given seed so no two venues of a size are identical.
+ */
+public final class SyntheticVenue {
+    private static final int POINTS_PER_CORRIDOR = 3;
+    private static final float SPACING = 2f; // metres between points along a corridor
+    private static final float CORRIDOR_LENGTH = SPACING * (POINTS_PER_CORRIDOR + 1);
+    private static final float ROOM_DEPTH = 1f; // how far an entry point sits off the corridor
+    private static final float JITTER = 0.2f;
+
+    private final int[] ids;
+    private final float[] xs;
+    private final float[] zs;
+    private final String[] roomNames;
+    private final float[] angleIns;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private int points = 0;
+    private int edges = 0;
+
+    private SyntheticVenue(int capacity, int edgeCapacity) {
+        this.ids = new int[capacity];
+        this.xs = new float[capacity];
+        this.zs = new float[capacity];
+        this.roomNames = new String[capacity];
+        this.angleIns = new float[capacity];
+        this.edgeFrom = new int[edgeCapacity];
+        this.edgeTo = new int[edgeCapacity];
+    }
+
+    public static SyntheticVenue generate(int minPoints, long seed) {
+        int side = 1;
+        while (pointsFor(side) < minPoints) { side++; }
+        int corridors = 2 * side * (side - 1);
+        SyntheticVenue venue = new SyntheticVenue(pointsFor(side), corridors * (2 * POINTS_PER_CORRIDOR + 1));
+        Random random = new Random(seed);
+
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                venue.addPoint(i * CORRIDOR_LENGTH, j * CORRIDOR_LENGTH, null, 0, random);
+            }
+        }
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                int junction = i * side + j;
+                if (i + 1 < side) { venue.addCorridor(junction, junction + side, true, random); }
+                if (j + 1 < side) { venue.addCorridor(junction, junction + 1, false, random); }
+            }
+        }
+        return venue;
+    }
+
+    private static int pointsFor(int side) {
+        return side * side + 2 * side * (side - 1) * 2 * POINTS_PER_CORRIDOR;
+    }
+
+    // nav points from one junction to the next (along x or z), each with a room off it
+    private void addCorridor(int from, int to, boolean alongX, Random random) {
+        int previous = from;
+        for (int p = 1; p <= POINTS_PER_CORRIDOR; p++) {
+            float offset = p * SPACING;
+            float x = this.xs[from] + (alongX ? offset : 0);
+            float z = this.zs[from] + (alongX ? 0 : offset);
+            int nav = this.addPoint(x, z, null, 0, random);
+            this.addEdge(previous, nav);
+
+            float side = p % 2 == 0 ? ROOM_DEPTH : -ROOM_DEPTH;
+            float angleIn = alongX ? (side > 0 ? 0 : 180) : (side > 0 ? 90 : 270);
+            int room = this.addPoint(x + (alongX ? 0 : side), z + (alongX ? side : 0),
+                    "Room " + (this.points + 1), angleIn, random);
+            this.addEdge(nav, room);
+            previous = nav;
+        }
+        this.addEdge(previous, to);
+    }
+
+    private int addPoint(float x, float z, String roomName, float angleIn, Random random) {
+        int index = this.points++;
+        this.ids[index] = index + 1; // ids start at 1, like the map json
+        this.xs[index] = x + (random.nextFloat() - 0.5f) * JITTER;
+        this.zs[index] = z + (random.nextFloat() - 0.5f) * JITTER;
+        this.roomNames[index] = roomName;
+        this.angleIns[index] = angleIn;
+        return index;
+    }
+
+    private void addEdge(int from, int to) {
+        this.edgeFrom[this.edges] = from;
+        this.edgeTo[this.edges++] = to;
+    }
+
+    public int size() { return this.points; }
+
+    // the id of the junction in the corner of the grid, a stand in for the root node
+    public int getRootId() { return this.ids[0]; }
+
+    public int getId(int index) { return this.ids[index]; }
+
+    public Graph toGraph() {
+        Graph.Builder builder = Graph.builder();
+        for (int i = 0; i < this.points; i++) {
+            builder.addPoint(new Waypoint(this.ids[i], this.xs[i], this.zs[i], this.roomNames[i], this.angleIns[i]));
+        }
+        for (int e = 0; e < this.edges; e++) {
+            builder.addEdge(this.ids[this.edgeFrom[e]], this.ids[this.edgeTo[e]]);
+            builder.addEdge(this.ids[this.edgeTo[e]], this.ids[this.edgeFrom[e]]);
+        }
+        return builder.build();
+    }
+
+    // the venue as a compiled map, see MapFile
+    public ByteBuffer toMapFile() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            MapFile.write(this.toGraph(), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    // the venue in the same json format as entry_points.json, nav_points.json and edges.json
+    public String entryPointsJson() { return this.pointsJson(true); }
+    public String navPointsJson() { return this.pointsJson(false); }
+
+    public String edgesJson() {
+        StringBuilder json = new StringBuilder("[");
+        for (int e = 0; e < this.edges; e++) {
+            json.append(e == 0 ? "\n" : ",\n")
+                    .append("  {\"from\": ").append(this.ids[this.edgeFrom[e]])
+                    .append(", \"to\": ").append(this.ids[this.edgeTo[e]]).append('}');
+        }
+        return json.append("\n]\n").toString();
+    }
+
+    private String pointsJson(boolean entries) {
+        StringBuilder json = new StringBuilder("[");
+        boolean first = true;
+        for (int i = 0; i < this.points; i++) {
+            if ((this.roomNames[i] != null) != entries) { continue; }
+            json.append(first ? "\n" : ",\n").append("  {");
+            if (entries) {
+                json.append("\"roomName\": \"").append(this.roomNames[i])
+                        .append("\", \"angleIn\": ").append(this.angleIns[i]).append(", ");
+            }
+            json.append("\"id\": ").append(this.ids[i])
+                    .append(", \"x\": ").append(this.xs[i])
+                    .append(", \"z\": ").append(this.zs[i]).append('}');
+            first = false;
+        }
+        return json.append("\n]\n").toString();
+    }
+}